@@ -7,10 +7,13 @@ package ch.hearc.ig.guideresto.business;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.function.Supplier;
 
 public class CompleteEvaluation extends Evaluation {
 
     private String comment;
+    /** Charge le commentaire (CLOB) au premier accès, null s'il est déjà chargé */
+    private volatile Supplier<String> commentLoader;
     private String username;
     private Set<Grade> grades;
 
@@ -29,12 +32,37 @@ public class CompleteEvaluation extends Evaluation {
         this.grades = new HashSet();
     }
 
+    /**
+     * Chargement unique même si plusieurs threads lisent l'évaluation en cache en même temps.
+     */
     public String getComment() {
+        if (commentLoader != null) {
+            synchronized (this) {
+                Supplier<String> loader = commentLoader;
+                if (loader != null) {
+                    comment = loader.get();
+                    // écriture volatile après le commentaire : il est visible sans verrou
+                    commentLoader = null;
+                }
+            }
+        }
         return comment;
     }
 
-    public void setComment(String comment) {
+    public synchronized void setComment(String comment) {
         this.comment = comment;
+        this.commentLoader = null;
+    }
+
+    /**
+     * Le commentaire sera lu par le chargeur lors du premier appel à getComment().
+     */
+    public void setCommentLoader(Supplier<String> commentLoader) {
+        this.commentLoader = commentLoader;
+    }
+
+    public boolean isCommentLoaded() {
+        return commentLoader == null;
     }
 
     public String getUsername() {
@@ -3,6 +3,7 @@ package ch.hearc.ig.guideresto.business;
 import org.apache.commons.collections4.CollectionUtils;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.function.Supplier;
 
 /**
  * @author cedric.baudet
@@ -12,6 +13,8 @@ public class Restaurant implements IBusinessObject {
     private Integer id;
     private String name;
     private String description;
+    /** Charge la description (CLOB) au premier accès, null si elle est déjà chargée */
+    private volatile Supplier<String> descriptionLoader;
     private String website;
     private Set<Evaluation> evaluations;
     private Localisation address;
@@ -20,6 +23,7 @@ public class Restaurant implements IBusinessObject {
     public Restaurant() {}
 
     public Restaurant(Integer id, String name, String description, String website, String street, City city, RestaurantType type) {
+        this.id = id;
         this.name = name;
         this.description = description;
         this.website = website;
@@ -29,6 +33,7 @@ public class Restaurant implements IBusinessObject {
     }
 
     public Restaurant(Integer id, String name, String description, String website, Localisation address, RestaurantType type) {
+        this.id = id;
         this.name = name;
         this.description = description;
         this.website = website;
@@ -64,12 +69,38 @@ public class Restaurant implements IBusinessObject {
         this.name = name;
     }
 
+    /**
+     * Objet partagé par le cache : un seul thread appelle le chargeur, les autres attendent
+     * sa valeur.
+     */
     public String getDescription() {
+        if (descriptionLoader != null) {
+            synchronized (this) {
+                Supplier<String> loader = descriptionLoader;
+                if (loader != null) {
+                    description = loader.get();
+                    // publie description aux lectures qui voient le chargeur à null
+                    descriptionLoader = null;
+                }
+            }
+        }
         return description;
     }
 
-    public void setDescription(String description) {
+    public synchronized void setDescription(String description) {
         this.description = description;
+        this.descriptionLoader = null;
+    }
+
+    /**
+     * La description sera lue par le chargeur lors du premier appel à getDescription().
+     */
+    public void setDescriptionLoader(Supplier<String> descriptionLoader) {
+        this.descriptionLoader = descriptionLoader;
+    }
+
+    public boolean isDescriptionLoaded() {
+        return descriptionLoader == null;
     }
 
     public String getWebsite() {
@@ -1,6 +1,11 @@
 package ch.hearc.ig.guideresto.persistence;
 
 import ch.hearc.ig.guideresto.business.IBusinessObject;
+import ch.hearc.ig.guideresto.persistence.cache.Caches;
+import ch.hearc.ig.guideresto.persistence.cache.IntCache;
+import ch.hearc.ig.guideresto.persistence.cache.BloomFilter;
+import ch.hearc.ig.guideresto.persistence.cache.InvalidationBus;
+import ch.hearc.ig.guideresto.persistence.cache.NegativeCache;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -8,12 +13,50 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public abstract class AbstractMapper<T extends IBusinessObject> {
 
     protected static final Logger logger = LogManager.getLogger();
 
+    /** Lignes lues par {@link #streamAll()} avant de charger ensemble leurs relations */
+    private static final int STREAM_CHUNK_SIZE = 500;
+
+    /**
+     * Cache borné des objets chargés, partagé par toutes les instances du mapper
+     * (voir {@link Caches} pour la taille par entité).
+     */
+    protected final IntCache<T> cache;
+    /**
+     * Identifiants connus comme absents de la base (voir {@link NegativeCache})
+     */
+    protected final NegativeCache absentIds;
+    private final String entityName;
+    /** true une fois la construction du filtre des identifiants planifiée pour l'entité */
+    private boolean filterScheduled;
+
+    /**
+     * @param entityName le nom de l'entité, clé du cache et de sa taille dans cache.properties
+     */
+    protected AbstractMapper(String entityName) {
+        this.cache = Caches.forEntity(entityName);
+        this.absentIds = NegativeCache.forEntity(entityName);
+        this.entityName = entityName;
+    }
+
     public abstract T findById(int id);
     public abstract Set<T> findAll();
     public abstract T create(T object);
@@ -21,23 +64,285 @@ public abstract class AbstractMapper<T extends IBusinessObject> {
     public abstract boolean delete(T object);
     public abstract boolean deleteById(int id);
 
-    protected abstract String getSequenceQuery();
+    /**
+     * @return le nom de la séquence qui fournit les identifiants (ex: "SEQ_RESTAURANTS")
+     */
+    protected abstract String getSequenceName();
     protected abstract String getExistsQuery();
     protected abstract String getCountQuery();
 
+    /**
+     * @return la requête qui lit tous les identifiants, pour le filtre de Bloom des
+     * identifiants existants ; null si le mapper n'en a pas
+     */
+    protected String getIdsQuery() {
+        return null;
+    }
+
+    /**
+     * @return le début de la requête de {@link #findByIds}, jusqu'au mot-clé IN exclu de la
+     * liste (ex: "SELECT ... FROM LIKES WHERE numero IN") ; null si le mapper n'en a pas, les
+     * objets sont alors lus un par un
+     */
+    protected String getFindByIdsQuery() {
+        return null;
+    }
+
+    /**
+     * Construit l'objet de la ligne courante d'une requête de {@link #getFindByIdsQuery()}.
+     * Ses relations sont demandées à batch plutôt que lues une par une.
+     * Appelée seulement si le mapper déclare {@link #getFindByIdsQuery()} ou
+     * {@link #getStreamAllQuery()} : il doit alors la redéfinir.
+     * @param rs le résultat, positionné sur la ligne
+     * @param batch le chargeur groupé de la lecture en cours
+     */
+    protected T mapRow(ResultSet rs, BatchLoader batch) throws SQLException {
+        throw new IllegalStateException(getClass().getSimpleName()
+                + " déclare une requête groupée sans redéfinir mapRow");
+    }
+
+    /**
+     * @return la requête qui parcourt toute la table pour {@link #streamAll()}, avec les colonnes
+     * lues par {@link #mapRow} ; null si le mapper n'en a pas, le flux reprend alors findAll
+     */
+    protected String getStreamAllQuery() {
+        return null;
+    }
+
+    /**
+     * Charge les collections d'objets lus ensemble (ex: les notes d'évaluations), après
+     * {@link #findByIds} et pour chaque paquet de {@link #streamAll()}. Ne fait rien par défaut.
+     * @param addToCache false pour un paquet de streamAll : les éléments des collections ne
+     * sont pas mis en cache, comme les objets qui les portent
+     */
+    protected void loadCollections(Collection<T> objects, boolean addToCache) {
+    }
+
+    /**
+     * Lit plusieurs objets par leurs identifiants. Ceux déjà en cache sont repris tels quels,
+     * ceux connus comme absents ne sont pas cherchés ; les autres sont lus par listes IN
+     * (voir {@link InClause}), puis leurs relations sont chargées de la même manière.
+     * @param ids les identifiants voulus
+     * @return les objets trouvés, par identifiant ; les identifiants inexistants n'y sont pas
+     */
+    public Map<Integer, T> findByIds(Collection<Integer> ids) {
+        BatchLoader batch = new BatchLoader();
+        Map<Integer, T> found = findByIds(ids, batch);
+        batch.dispatch();
+        return found;
+    }
+
+    /**
+     * Comme {@link #findByIds(Collection)}, mais les relations des objets lus sont seulement
+     * demandées à batch : elles sont chargées au {@link BatchLoader#dispatch()} de l'appelant.
+     */
+    protected Map<Integer, T> findByIds(Collection<Integer> ids, BatchLoader batch) {
+        Map<Integer, T> found = new HashMap<>();
+        if (getFindByIdsQuery() == null) {
+            for (Integer id : ids) {
+                T object = id == null ? null : findById(id);
+                if (object != null) {
+                    found.put(id, object);
+                }
+            }
+            return found;
+        }
+
+        List<Integer> missing = new ArrayList<>();
+        for (Integer id : ids) {
+            if (id == null || found.containsKey(id)) {
+                continue;
+            }
+            T cached = cache.get(id);
+            if (cached != null) {
+                found.put(id, cached);
+            } else if (!isKnownAbsent(id)) {
+                missing.add(id);
+            }
+        }
+        if (missing.isEmpty()) {
+            return found;
+        }
+
+        long stamp = absentIds.stamp();
+        try (Connection connection = ConnectionUtils.getReadConnection()) {
+            for (List<Integer> chunk : InClause.chunks(missing)) {
+                int size = InClause.bucketSize(chunk.size());
+                try (PreparedStatement stmt = connection.prepareStatement(findByIdsQuery(size))) {
+                    InClause.bind(stmt, 1, chunk, size);
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            int id = rs.getInt("numero");
+                            T object = cache.get(id);
+                            if (object == null) {
+                                object = mapRow(rs, batch);
+                                // en cache avant le dispatch : les relations qui le référencent le retrouvent
+                                cache.put(id, object);
+                            }
+                            found.put(id, object);
+                        }
+                    }
+                }
+            }
+        } catch (SQLException ex) {
+            logger.error("Lecture groupée de {} : {}", entityName, ex.getMessage());
+            return found;
+        }
+
+        for (int id : missing) {
+            if (!found.containsKey(id)) {
+                absentIds.recordAbsent(id, stamp);
+            }
+        }
+        loadCollections(found.values(), true);
+        return found;
+    }
+
+    /**
+     * Parcourt toute la table sans la charger en mémoire : les lignes sont lues au fil du flux
+     * sur un curseur ouvert, par paquets dont les relations sont chargées ensemble (voir
+     * {@link BatchLoader}). Les objets déjà en cache sont repris ; les autres n'y sont pas
+     * ajoutés, pas plus que leurs collections (voir {@link #loadCollections}), pour qu'un
+     * parcours complet n'en chasse pas les objets souvent relus. Leurs relations (restaurant
+     * d'une évaluation, critère d'une note…) sont lues par {@link #findByIds} et mises en cache
+     * comme à toute lecture : elles sont partagées par de nombreuses lignes.
+     * <p>
+     * {@link #mapRow} ne doit donc pas mettre en cache l'objet qu'il construit ; findByIds s'en
+     * charge pour ses propres lectures.
+     * <p>
+     * Le flux tient une connexion jusqu'à sa fermeture : l'utiliser dans un try-with-resources.
+     * Une erreur SQL pendant le parcours est levée en IllegalStateException.
+     * @return les objets de la table, dans l'ordre du curseur
+     */
+    public Stream<T> streamAll() {
+        String query = getStreamAllQuery();
+        if (query == null) {
+            return findAll().stream();
+        }
+        Connection connection = ConnectionUtils.getReadConnection();
+        PreparedStatement stmt = null;
+        try {
+            if (connection == null) {
+                throw new SQLException("Aucune connexion disponible");
+            }
+            stmt = connection.prepareStatement(query);
+            Cursor cursor = new Cursor(connection, stmt, stmt.executeQuery());
+            return StreamSupport.stream(cursor, false).onClose(cursor::close);
+        } catch (SQLException ex) {
+            logger.error("Parcours de {} impossible : {}", entityName, ex.getMessage());
+            closeQuietly(stmt);
+            closeQuietly(connection);
+            return Stream.empty();
+        }
+    }
+
+    private static void closeQuietly(AutoCloseable resource) {
+        if (resource != null) {
+            try {
+                resource.close();
+            } catch (Exception ex) {
+                logger.warn("Fermeture impossible : {}", ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Curseur de {@link #streamAll()} : lit un paquet de lignes quand le précédent est consommé.
+     */
+    private final class Cursor extends Spliterators.AbstractSpliterator<T> {
+
+        private final Connection connection;
+        private final PreparedStatement stmt;
+        private final ResultSet rs;
+        private final Deque<T> buffer = new ArrayDeque<>();
+        private boolean exhausted;
+        private boolean closed;
+
+        private Cursor(Connection connection, PreparedStatement stmt, ResultSet rs) {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            this.connection = connection;
+            this.stmt = stmt;
+            this.rs = rs;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            if (buffer.isEmpty() && !exhausted) {
+                fill();
+            }
+            T next = buffer.poll();
+            if (next == null) {
+                return false;
+            }
+            action.accept(next);
+            return true;
+        }
+
+        private void fill() {
+            if (closed) {
+                throw new IllegalStateException("Parcours de " + entityName + " déjà fermé");
+            }
+            List<T> chunk = new ArrayList<>(STREAM_CHUNK_SIZE);
+            BatchLoader batch = new BatchLoader();
+            try {
+                while (chunk.size() < STREAM_CHUNK_SIZE) {
+                    if (!rs.next()) {
+                        exhausted = true;
+                        break;
+                    }
+                    T object = cache.get(rs.getInt("numero"));
+                    chunk.add(object != null ? object : mapRow(rs, batch));
+                }
+            } catch (SQLException ex) {
+                throw new IllegalStateException("Parcours de " + entityName + " interrompu : " + ex.getMessage(), ex);
+            }
+            loadCollections(chunk, false);
+            batch.dispatch();
+            buffer.addAll(chunk);
+            if (exhausted) {
+                // 🔹 Fin du curseur : la connexion est rendue sans attendre la fermeture du flux
+                close();
+            }
+        }
+
+        private void close() {
+            if (!closed) {
+                closed = true;
+                closeQuietly(rs);
+                closeQuietly(stmt);
+                closeQuietly(connection);
+            }
+        }
+    }
+
+    /**
+     * Une variante du SQL par taille de liste IN, déclarée sous "Entité.findByIds[taille]"
+     */
+    private String findByIdsQuery(int size) {
+        return StatementRegistry.register(entityName + ".findByIds[" + size + "]",
+                getFindByIdsQuery() + " (" + InClause.placeholders(size) + ")");
+    }
+
     /**
      * Vérifie si un objet avec l'ID donné existe.
      * @param id the ID to check
      * @return true si l'objet existe, false sinon
      */
     public boolean exists(int id) {
-        Connection connection = ConnectionUtils.getConnection();
-
-        try (PreparedStatement stmt = connection.prepareStatement(getExistsQuery())) {
+        if (isKnownAbsent(id)) {
+            return false;
+        }
+        long stamp = absentIds.stamp();
+        try (Connection connection = ConnectionUtils.getReadConnection();
+             PreparedStatement stmt = connection.prepareStatement(getExistsQuery())) {
             stmt.setInt(1, id);
 
             try (ResultSet rs = stmt.executeQuery()) {
-                return rs.next();
+                if (rs.next()) {
+                    return true;
+                }
+                absentIds.recordAbsent(id, stamp);
+                return false;
             }
         } catch (SQLException ex) {
             logger.error("SQLException: {}", ex.getMessage());
@@ -50,9 +355,8 @@ public abstract class AbstractMapper<T extends IBusinessObject> {
      * @return
      */
     public int count() {
-        Connection connection = ConnectionUtils.getConnection();
-
-        try (PreparedStatement stmt = connection.prepareStatement(getCountQuery());
+        try (Connection connection = ConnectionUtils.getReadConnection();
+             PreparedStatement stmt = connection.prepareStatement(getCountQuery());
              ResultSet rs = stmt.executeQuery()) {
 
             if (rs.next()) {
@@ -66,41 +370,182 @@ public abstract class AbstractMapper<T extends IBusinessObject> {
     }
 
     /**
-     * Obtient la valeur de la séquence actuelle en base de données
-     * @return Le nombre de villes
-     * @En cas d'erreur SQL
+     * Obtient une nouvelle valeur de la séquence, servie depuis le bloc réservé en mémoire
+     * (voir {@link SequenceAllocator})
+     * @return un nouvel identifiant, ou 0 en cas d'erreur SQL
      */
     public Integer getSequenceValue() {
-        Connection connection = ConnectionUtils.getConnection();
-
-        try (PreparedStatement stmt = connection.prepareStatement(getSequenceQuery());
-             ResultSet rs = stmt.executeQuery()) {
-
-            if (rs.next()) {
-                return rs.getInt(1);
-            }
-            return 0;
+        try {
+            return getSequenceAllocator().next();
         } catch (SQLException ex) {
             logger.error("SQLException: {}", ex.getMessage());
             return 0;
         }
     }
 
+    /**
+     * @return l'allocateur par blocs de la séquence de ce mapper
+     */
+    protected SequenceAllocator getSequenceAllocator() {
+        return SequenceAllocator.forSequence(getSequenceName());
+    }
+
+    /**
+     * Fournit count identifiants depuis l'allocateur de la séquence.
+     * @param connection la connexion de la transaction en cours, qui réserve aussi les blocs
+     *                   manquants : aucune autre connexion n'est empruntée au pool
+     * @param count le nombre d'identifiants voulus
+     * @return les identifiants réservés
+     */
+    protected int[] allocateIds(Connection connection, int count) throws SQLException {
+        return getSequenceAllocator().next(connection, count);
+    }
+
+    /**
+     * Insère un lot d'objets dans la transaction de l'appelant (voir {@link UnitOfWork}).
+     * Par défaut objet par objet avec {@link #create} ; les mappers qui le peuvent redéfinissent
+     * cette méthode pour un seul batch JDBC, avec des identifiants attribués depuis la séquence.
+     * @param connection la connexion de la transaction en cours
+     * @param objects les objets à insérer
+     * @throws SQLException si un objet n'a pas pu être inséré
+     */
+    protected void insertBatch(Connection connection, List<T> objects) throws SQLException {
+        for (T object : objects) {
+            if (create(object) == null) {
+                throw new SQLException("Insertion impossible : " + object);
+            }
+        }
+    }
+
+    /**
+     * Met à jour un lot d'objets dans la transaction de l'appelant. Par défaut objet par objet
+     * avec {@link #update} ; redéfinie pour un seul batch JDBC.
+     * @param connection la connexion de la transaction en cours
+     * @param objects les objets à mettre à jour
+     * @throws SQLException si un objet n'a pas pu être mis à jour
+     */
+    protected void updateBatch(Connection connection, List<T> objects) throws SQLException {
+        for (T object : objects) {
+            if (!update(object)) {
+                throw new SQLException("Mise à jour impossible : " + object);
+            }
+        }
+    }
+
+    /**
+     * Supprime un lot d'objets dans la transaction de l'appelant. Par défaut objet par objet
+     * avec {@link #delete} ; redéfinie pour un seul batch JDBC.
+     * @param connection la connexion de la transaction en cours
+     * @param objects les objets à supprimer
+     * @throws SQLException si une suppression a échoué ; un objet déjà supprimé est seulement signalé
+     */
+    protected void deleteBatch(Connection connection, List<T> objects) throws SQLException {
+        for (T object : objects) {
+            if (!delete(object)) {
+                // delete renvoie aussi false sur erreur SQL : la transaction est alors marquée à annuler
+                if (TransactionManager.isRollbackOnly()) {
+                    throw new SQLException("Suppression impossible : " + object);
+                }
+                logger.warn("Objet déjà supprimé : {}", object);
+            }
+        }
+    }
+
+    /**
+     * Vérifie qu'un batch a modifié une ligne par objet. Oracle peut répondre
+     * SUCCESS_NO_INFO, auquel cas rien n'est vérifiable.
+     */
+    protected static void checkBatch(int[] counts, String operation) throws SQLException {
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] == 0) {
+                throw new SQLException(operation + " : aucune ligne touchée pour l'élément " + i + " du lot");
+            }
+        }
+    }
+
+    /**
+     * Renvoie l'objet en cache ou le charge avec loader, sans requête pour un identifiant
+     * connu comme absent. Une absence constatée par loader est retenue.
+     * @param id l'ID de l'objet
+     * @param loader lit l'objet en base, renvoie null s'il n'existe pas
+     * @return l'objet, ou null s'il n'existe pas
+     */
+    protected T findCached(int id, IntFunction<T> loader) {
+        // une seule recherche dans le cache : un accès compte pour un hit ou un miss
+        return cache.get(id, key -> {
+            if (isKnownAbsent(key)) {
+                return null;
+            }
+            long stamp = absentIds.stamp();
+            T value = loader.apply(key);
+            if (value == null) {
+                absentIds.recordAbsent(key, stamp);
+            }
+            return value;
+        });
+    }
+
+    /**
+     * @return true si l'objet est certainement absent de la base. La première lecture planifie
+     * les constructions du filtre de Bloom des identifiants, qui se font ensuite à intervalle
+     * fixe hors des lectures ; en attendant le premier, la base répond.
+     */
+    protected boolean isKnownAbsent(int id) {
+        if (!filterScheduled) {
+            absentIds.scheduleFilterBuilds(this::buildIdFilter);
+            filterScheduled = true;
+        }
+        return absentIds.isAbsent(id);
+    }
+
+    /**
+     * Lit tous les identifiants sur le primaire (un réplica en retard oublierait les derniers créés),
+     * dans le thread de construction des filtres (voir {@link NegativeCache#scheduleFilterBuilds}).
+     */
+    private void buildIdFilter() {
+        BloomFilter bloom = null;
+        int maxId = Integer.MIN_VALUE;
+        long stamp = absentIds.stamp();
+        String query = getIdsQuery();
+        try {
+            if (query != null) {
+                try (Connection connection = ConnectionUtils.getConnection();
+                     PreparedStatement countStmt = connection.prepareStatement(getCountQuery());
+                     PreparedStatement stmt = connection.prepareStatement(query)) {
+                    try (ResultSet rs = countStmt.executeQuery()) {
+                        bloom = absentIds.newFilter(rs.next() ? rs.getInt(1) : 0);
+                    }
+                    stmt.setFetchSize(1000);
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            int id = rs.getInt(1);
+                            bloom.put(id);
+                            maxId = Math.max(maxId, id);
+                        }
+                    }
+                }
+            }
+        } catch (SQLException | RuntimeException ex) {
+            logger.error("Filtre des identifiants de {} non construit : {}", entityName, ex.getMessage());
+            bloom = null;
+        } finally {
+            absentIds.install(bloom, maxId, stamp);
+        }
+    }
+
     /**
      * Vérifie si le cache est actuellement vide
      * @return true si le cache ne contient aucun objet, false sinon
      */
     protected boolean isCacheEmpty() {
-        // TODO à implémenter par vos soins
-        throw new UnsupportedOperationException("Vous devez implémenter votre cache vous-même !");
+        return cache.isEmpty();
     }
 
     /**
      * Vide le cache
      */
     protected void resetCache() {
-        // TODO à implémenter par vos soins
-        throw new UnsupportedOperationException("Vous devez implémenter votre cache vous-même !");
+        cache.clear();
     }
 
     /**
@@ -108,8 +553,35 @@ public abstract class AbstractMapper<T extends IBusinessObject> {
      * @param objet l'objet à ajouter
      */
     protected void addToCache(T objet) {
-        // TODO à implémenter par vos soins
-        throw new UnsupportedOperationException("Vous devez implémenter votre cache vous-même !");
+        if (objet != null && objet.getId() != null) {
+            cache.put(objet.getId(), objet);
+        }
+    }
+
+    /**
+     * Annonce l'écriture d'un objet aux autres instances de l'application, qui le retirent
+     * de leur cache après le commit (voir {@link InvalidationBus}), le retire des
+     * identifiants absents et signale l'écriture à la transaction
+     * (voir {@link TransactionManager#recordWrite()})
+     * @param id l'ID de l'objet créé, modifié ou supprimé
+     */
+    protected void publishWrite(Integer id) {
+        if (id != null) {
+            TransactionManager.recordWrite();
+            // un objet écrit n'est plus absent, ni pour cette transaction ni après son commit
+            absentIds.recordPresent(id);
+            TransactionManager.afterCommit(() -> absentIds.recordPresent(id));
+            InvalidationBus.getInstance().publish(entityName, id);
+        }
+    }
+
+    /**
+     * Annonce l'écriture d'un lot d'objets (voir {@link #publishWrite(Integer)})
+     */
+    protected void publishWrites(List<T> objects) {
+        for (T object : objects) {
+            publishWrite(object.getId());
+        }
     }
 
     /**
@@ -117,7 +589,8 @@ public abstract class AbstractMapper<T extends IBusinessObject> {
      * @param id l'ID de l'objet à retirer du cache
      */
     protected void removeFromCache(Integer id) {
-        // TODO à implémenter par vos soins
-        throw new UnsupportedOperationException("Vous devez implémenter votre cache vous-même !");
+        if (id != null) {
+            cache.remove(id);
+        }
     }
 }
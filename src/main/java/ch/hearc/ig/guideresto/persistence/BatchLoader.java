@@ -0,0 +1,83 @@
+package ch.hearc.ig.guideresto.persistence;
+
+import ch.hearc.ig.guideresto.business.IBusinessObject;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Regroupe les lectures par identifiant faites pendant le chargement d'une liste.
+ * <p>
+ * Au lieu d'un findById par ligne (le restaurant de chaque évaluation, le critère de chaque
+ * note), le mapper demande l'objet avec {@link #load} et reçoit le résultat plus tard :
+ * {@link #dispatch()} lit tous les identifiants demandés à un même mapper avec un seul
+ * {@link AbstractMapper#findByIds}. Les objets chargés peuvent à leur tour demander leurs
+ * relations, lues au tour suivant.
+ * <p>
+ * Un chargeur sert le temps d'une lecture, dans un seul thread. Non synchronisé.
+ */
+public final class BatchLoader {
+
+    private final Map<AbstractMapper<?>, Pending<?>> pending = new LinkedHashMap<>();
+
+    /**
+     * Demande un objet, lu au prochain {@link #dispatch()}.
+     * @param mapper le mapper de l'objet
+     * @param id son identifiant
+     * @param then reçoit l'objet, ou null s'il n'existe pas
+     * @throws IllegalArgumentException si mapper est null (mapper non initialisé)
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends IBusinessObject> void load(AbstractMapper<T> mapper, int id, Consumer<? super T> then) {
+        if (mapper == null) {
+            // sinon l'erreur n'apparaîtrait qu'au dispatch, loin du mapper mal construit
+            throw new IllegalArgumentException("Aucun mapper pour charger l'objet " + id + " : dépendance non injectée");
+        }
+        Pending<T> requests = (Pending<T>) pending.computeIfAbsent(mapper, m -> new Pending<>(mapper));
+        requests.callbacks.computeIfAbsent(id, k -> new ArrayList<>()).add(then);
+    }
+
+    /**
+     * @return true si aucune lecture n'est en attente
+     */
+    public boolean isEmpty() {
+        return pending.isEmpty();
+    }
+
+    /**
+     * Lit les objets demandés, une requête groupée par mapper, jusqu'à ce qu'il n'y ait plus
+     * de demande en attente.
+     */
+    public void dispatch() {
+        while (!pending.isEmpty()) {
+            List<Pending<?>> round = new ArrayList<>(pending.values());
+            pending.clear();
+            for (Pending<?> requests : round) {
+                requests.run(this);
+            }
+        }
+    }
+
+    private static final class Pending<T extends IBusinessObject> {
+
+        private final AbstractMapper<T> mapper;
+        private final Map<Integer, List<Consumer<? super T>>> callbacks = new LinkedHashMap<>();
+
+        private Pending(AbstractMapper<T> mapper) {
+            this.mapper = mapper;
+        }
+
+        private void run(BatchLoader batch) {
+            Map<Integer, T> found = mapper.findByIds(callbacks.keySet(), batch);
+            callbacks.forEach((id, consumers) -> {
+                T object = found.get(id);
+                for (Consumer<? super T> consumer : consumers) {
+                    consumer.accept(object);
+                }
+            });
+        }
+    }
+}
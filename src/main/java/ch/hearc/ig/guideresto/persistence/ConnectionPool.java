@@ -0,0 +1,348 @@
+package ch.hearc.ig.guideresto.persistence;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pool de connexions borné.
+ * <ul>
+ *     <li>au plus maxSize connexions physiques, dont minSize ouvertes au démarrage</li>
+ *     <li>l'emprunt attend au plus borrowTimeoutMillis avant d'échouer</li>
+ *     <li>les connexions idle sont validées en tâche de fond toutes les keepAliveIntervalMillis ;
+ *     les connexions mortes sont remplacées sans attendre qu'un emprunteur tombe dessus</li>
+ *     <li>une connexion idle qui n'a pas été validée depuis keepAliveIntervalMillis est revalidée avant d'être prêtée</li>
+ *     <li>une connexion gardée plus de leakDetectionThresholdMillis est signalée dans les logs</li>
+ *     <li>chaque connexion garde ses statementCacheSize derniers PreparedStatement (voir {@link StatementCache})</li>
+ * </ul>
+ * La fabrique de connexions est interchangeable, ce qui permet de tester le pool
+ * contre une base embarquée au lieu d'Oracle.
+ */
+public class ConnectionPool implements AutoCloseable {
+
+    private static final Logger logger = LogManager.getLogger();
+
+    /**
+     * Ouvre une nouvelle connexion physique.
+     */
+    @FunctionalInterface
+    public interface ConnectionFactory {
+        Connection connect() throws SQLException;
+    }
+
+    private final PoolConfig config;
+    private final ConnectionFactory factory;
+    private final Semaphore permits;
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final Set<PooledConnection> borrowed = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService housekeeper;
+    private final Metrics metrics = new Metrics();
+    private volatile boolean closed;
+
+    public ConnectionPool(PoolConfig config) {
+        this(config, () -> DriverManager.getConnection(config.getUrl(), config.getUsername(), config.getPassword()));
+    }
+
+    public ConnectionPool(PoolConfig config, ConnectionFactory factory) {
+        config.validate();
+        this.config = config;
+        this.factory = factory;
+        this.permits = new Semaphore(config.getMaxSize(), true);
+
+        if (config.getLeakDetectionThresholdMillis() > 0 || config.getKeepAliveIntervalMillis() > 0) {
+            this.housekeeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "guideresto-pool-housekeeper");
+                thread.setDaemon(true);
+                return thread;
+            });
+        } else {
+            this.housekeeper = null;
+        }
+        if (config.getLeakDetectionThresholdMillis() > 0) {
+            long period = Math.max(1, config.getLeakDetectionThresholdMillis() / 2);
+            this.housekeeper.scheduleAtFixedRate(this::detectLeaks, period, period, TimeUnit.MILLISECONDS);
+        }
+        if (config.getKeepAliveIntervalMillis() > 0) {
+            long period = config.getKeepAliveIntervalMillis();
+            this.housekeeper.scheduleWithFixedDelay(this::keepAlive, period, period, TimeUnit.MILLISECONDS);
+        }
+
+        fillToMinimum();
+    }
+
+    /**
+     * Emprunte une connexion. L'appelant doit la fermer (try-with-resources)
+     * pour la rendre au pool.
+     * @return une connexion valide
+     * @throws SQLTimeoutException si aucune connexion ne se libère à temps
+     * @throws SQLException si le pool est fermé ou si la connexion ne peut être ouverte
+     */
+    public Connection borrow() throws SQLException {
+        if (closed) {
+            throw new SQLException("Le pool de connexions est fermé");
+        }
+
+        try {
+            if (!permits.tryAcquire(config.getBorrowTimeoutMillis(), TimeUnit.MILLISECONDS)) {
+                throw new SQLTimeoutException("Aucune connexion disponible après "
+                        + config.getBorrowTimeoutMillis() + " ms (maxSize=" + config.getMaxSize() + ")");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Attente d'une connexion interrompue", e);
+        }
+
+        try {
+            PooledConnection pooled;
+            while ((pooled = idle.pollFirst()) != null) {
+                if (isRecentlyValidated(pooled) || isUsable(pooled)) {
+                    return checkout(pooled);
+                }
+                logger.warn("Connexion invalide retirée du pool");
+                pooled.closePhysical();
+                metrics.reconnects.increment();
+                scheduleRefill();
+            }
+            return checkout(open());
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Rend une connexion au pool. Appelée par le proxy lors du close().
+     */
+    void release(PooledConnection pooled) {
+        borrowed.remove(pooled);
+        try {
+            if (closed || pooled.isBroken() || !reset(pooled)) {
+                pooled.closePhysical();
+                if (!closed) {
+                    metrics.reconnects.increment();
+                    scheduleRefill();
+                }
+            } else {
+                // le rollback vient de réussir : la connexion est vivante
+                pooled.markValidated();
+                idle.offerFirst(pooled);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    public int getActiveCount() {
+        return borrowed.size();
+    }
+
+    public PoolConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * @return les compteurs d'ouverture de connexions du pool
+     */
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        if (housekeeper != null) {
+            housekeeper.shutdownNow();
+        }
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            pooled.closePhysical();
+        }
+        // les connexions empruntées seront fermées lors de leur retour
+    }
+
+    private PooledConnection open() throws SQLException {
+        long start = System.nanoTime();
+        Connection connection;
+        try {
+            connection = factory.connect();
+            connection.setAutoCommit(false);
+        } catch (SQLException e) {
+            metrics.connectFailures.increment();
+            throw e;
+        }
+        long elapsedMicros = (System.nanoTime() - start) / 1_000;
+        metrics.connects.increment();
+        metrics.connectMicros.add(elapsedMicros);
+        metrics.maxConnectMicros.accumulate(elapsedMicros);
+        return new PooledConnection(connection, config.getStatementCacheSize());
+    }
+
+    private Connection checkout(PooledConnection pooled) {
+        pooled.markBorrowed(config.getLeakDetectionThresholdMillis() > 0);
+        borrowed.add(pooled);
+        return pooled.newHandle(this);
+    }
+
+    private boolean isRecentlyValidated(PooledConnection pooled) {
+        return config.getKeepAliveIntervalMillis() > 0
+                && System.currentTimeMillis() - pooled.getLastValidatedAt() < config.getKeepAliveIntervalMillis();
+    }
+
+    private boolean isUsable(PooledConnection pooled) {
+        try {
+            boolean valid = !pooled.getPhysical().isClosed()
+                    && pooled.getPhysical().isValid(config.getValidationTimeoutSeconds());
+            if (valid) {
+                pooled.markValidated();
+            }
+            return valid;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Annule le travail non validé laissé par l'emprunteur et remet la connexion dans son état initial.
+     */
+    private boolean reset(PooledConnection pooled) {
+        Connection physical = pooled.getPhysical();
+        try {
+            if (physical.isClosed()) {
+                return false;
+            }
+            if (!physical.getAutoCommit()) {
+                physical.rollback();
+            } else {
+                physical.setAutoCommit(false);
+            }
+            return true;
+        } catch (SQLException e) {
+            logger.warn("Impossible de réinitialiser la connexion rendue : {}", e.getMessage());
+            return false;
+        }
+    }
+
+    private void fillToMinimum() {
+        while (!closed && idle.size() + borrowed.size() < config.getMinSize()) {
+            try {
+                idle.offerLast(open());
+            } catch (SQLException e) {
+                logger.error("Impossible d'ouvrir les connexions minimales du pool : {}", e.getMessage());
+                return;
+            }
+        }
+    }
+
+    /**
+     * Remplace les connexions perdues en tâche de fond, pour que ce ne soit pas
+     * le prochain emprunteur qui paie l'ouverture.
+     */
+    private void scheduleRefill() {
+        if (housekeeper != null && !closed) {
+            try {
+                housekeeper.execute(this::fillToMinimum);
+            } catch (RuntimeException e) {
+                logger.debug("Remplacement de connexion non planifié : {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Valide une à une les connexions idle les plus anciennes et remplace celles qui sont mortes.
+     * Chaque connexion est retirée du pool le temps de sa validation, un emprunteur
+     * ne peut donc pas la recevoir en même temps.
+     */
+    private void keepAlive() {
+        int toCheck = idle.size();
+        for (int i = 0; i < toCheck && !closed; i++) {
+            PooledConnection pooled = idle.pollLast();
+            if (pooled == null) {
+                break;
+            }
+            if (isRecentlyValidated(pooled) || isUsable(pooled)) {
+                idle.offerLast(pooled);
+            } else {
+                logger.warn("Connexion morte détectée en tâche de fond, remplacement");
+                pooled.closePhysical();
+                metrics.reconnects.increment();
+            }
+        }
+        fillToMinimum();
+    }
+
+    private void detectLeaks() {
+        long now = System.currentTimeMillis();
+        for (PooledConnection pooled : borrowed) {
+            if (!pooled.isLeakReported()
+                    && now - pooled.getBorrowedAt() > config.getLeakDetectionThresholdMillis()) {
+                pooled.setLeakReported(true);
+                logger.warn("Fuite de connexion probable : empruntée depuis {} ms",
+                        now - pooled.getBorrowedAt(), pooled.getBorrowTrace());
+            }
+        }
+    }
+
+    /**
+     * Compteurs d'ouverture de connexions, pour suivre la latence de connexion
+     * et la fréquence des reconnexions.
+     */
+    public static final class Metrics {
+
+        private final LongAdder connects = new LongAdder();
+        private final LongAdder connectFailures = new LongAdder();
+        private final LongAdder reconnects = new LongAdder();
+        private final LongAdder connectMicros = new LongAdder();
+        private final LongAccumulator maxConnectMicros = new LongAccumulator(Math::max, 0);
+
+        /**
+         * @return le nombre de connexions physiques ouvertes
+         */
+        public long getConnectCount() {
+            return connects.sum();
+        }
+
+        public long getConnectFailureCount() {
+            return connectFailures.sum();
+        }
+
+        /**
+         * @return le nombre de connexions écartées car mortes ou cassées
+         */
+        public long getReconnectCount() {
+            return reconnects.sum();
+        }
+
+        public double getAverageConnectMillis() {
+            long count = getConnectCount();
+            return count == 0 ? 0.0 : connectMicros.sum() / 1_000.0 / count;
+        }
+
+        public double getMaxConnectMillis() {
+            return maxConnectMicros.get() / 1_000.0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("connects=%d, failures=%d, reconnects=%d, avgConnect=%.1f ms, maxConnect=%.1f ms",
+                    getConnectCount(), getConnectFailureCount(), getReconnectCount(),
+                    getAverageConnectMillis(), getMaxConnectMillis());
+        }
+    }
+}
@@ -12,47 +12,224 @@ public class ConnectionUtils {
 
     private static final Logger logger = LogManager.getLogger();
 
-    private static Connection connection;
+    private static volatile ConnectionPool pool;
+    private static volatile ConnectionPool replicaPool;
+    private static volatile boolean replicaConfigured = true;
+    private static volatile long readYourWritesMillis = 2_000;
+
+    /** Fin de la fenêtre pendant laquelle le thread relit sur le primaire après une écriture */
+    private static final ThreadLocal<Long> primaryReadsUntil = new ThreadLocal<>();
+    /** Profondeur des appels withPrimaryReads() en cours sur le thread */
+    private static final ThreadLocal<Integer> primaryReadsDepth = new ThreadLocal<>();
+
+    /**
+     * Travail de lecture exécuté sur le primaire.
+     */
+    @FunctionalInterface
+    public interface PrimaryReadWork<R> {
+        R execute() throws SQLException;
+    }
 
     private ConnectionUtils() {
     }
 
+    /**
+     * Emprunte une connexion au pool. Elle doit être fermée après usage
+     * (try-with-resources) pour être rendue au pool.
+     * Si une transaction est ouverte sur le thread courant, c'est sa connexion qui est
+     * retournée : la fermer n'a alors aucun effet.
+     * @return une connexion, ou null si le pool n'a pas pu fournir de connexion
+     */
     public static Connection getConnection() {
+        Connection txConnection = TransactionManager.currentConnection();
+        if (txConnection != null) {
+            return txConnection;
+        }
         try {
-            if (connection == null || connection.isClosed()) {
-                createConnection();
-            }
+            return getPool().borrow();
         } catch (SQLException e) {
-            logger.error("Erreur en vérifiant la connexion : {}", e.getMessage(), e);
+            logger.error("Erreur lors de l'emprunt d'une connexion : {}", e.getMessage(), e);
+            return null;
         }
-        return connection;
     }
 
-    public static void closeConnection() {
+    /**
+     * Emprunte une connexion pour une lecture (finders, count, exists).
+     * La lecture part sur le réplica en lecture seule, sauf :
+     * <ul>
+     *     <li>dans une transaction, qui garde sa connexion sur le primaire</li>
+     *     <li>juste après une écriture du même thread (database.routing.readYourWritesMillis)</li>
+     *     <li>dans un bloc {@link #withPrimaryReads(PrimaryReadWork)}</li>
+     *     <li>si aucun réplica n'est configuré ou s'il ne répond pas</li>
+     * </ul>
+     * @return une connexion, ou null si aucun pool n'a pu fournir de connexion
+     */
+    public static Connection getReadConnection() {
+        if (TransactionManager.isActive() || mustReadFromPrimary()) {
+            return getConnection();
+        }
+        ConnectionPool replica = getReplicaPool();
+        if (replica == null) {
+            return getConnection();
+        }
         try {
-            if (connection != null && !connection.isClosed()) {
-                connection.close();
-                connection = null;
-            }
+            return replica.borrow();
         } catch (SQLException e) {
-            logger.error("Erreur lors de la fermeture de la connexion : {}", e.getMessage(), e);
+            logger.warn("Réplica indisponible, lecture sur le primaire : {}", e.getMessage());
+            return getConnection();
         }
     }
 
-    private static void createConnection() {
+    /**
+     * Exécute des lectures sur le primaire, par exemple pour relire un objet
+     * que l'on vient de modifier sans attendre la réplication.
+     * @param work le travail à exécuter
+     * @return le résultat du travail
+     * @throws SQLException si le travail échoue
+     */
+    public static <R> R withPrimaryReads(PrimaryReadWork<R> work) throws SQLException {
+        Integer depth = primaryReadsDepth.get();
+        primaryReadsDepth.set(depth == null ? 1 : depth + 1);
         try {
-            ResourceBundle dbProps = ResourceBundle.getBundle("database");
-            String url = dbProps.getString("database.url");
-            String username = dbProps.getString("database.username");
-            String password = dbProps.getString("database.password");
+            return work.execute();
+        } finally {
+            if (depth == null) {
+                primaryReadsDepth.remove();
+            } else {
+                primaryReadsDepth.set(depth);
+            }
+        }
+    }
+
+    /**
+     * Signale une écriture validée par le thread courant : ses lectures restent sur le
+     * primaire pendant readYourWritesMillis, le temps que le réplica rattrape son retard.
+     */
+    static void markWritten() {
+        if (readYourWritesMillis > 0) {
+            primaryReadsUntil.set(System.currentTimeMillis() + readYourWritesMillis);
+        }
+    }
+
+    private static boolean mustReadFromPrimary() {
+        if (primaryReadsDepth.get() != null) {
+            return true;
+        }
+        Long until = primaryReadsUntil.get();
+        if (until == null) {
+            return false;
+        }
+        if (System.currentTimeMillis() < until) {
+            return true;
+        }
+        primaryReadsUntil.remove();
+        return false;
+    }
+
+    /**
+     * Ferme les pools (primaire et réplica) et toutes leurs connexions inactives.
+     */
+    public static void closeConnection() {
+        ConnectionPool current = pool;
+        pool = null;
+        if (current != null) {
+            current.close();
+        }
+        ConnectionPool replica = replicaPool;
+        replicaPool = null;
+        if (replica != null) {
+            replica.close();
+        }
+    }
+
+    /**
+     * Remplace le pool courant, par exemple par un pool branché sur une base embarquée pour les tests.
+     * @param newPool le pool à utiliser
+     */
+    public static synchronized void setPool(ConnectionPool newPool) {
+        ConnectionPool previous = pool;
+        pool = newPool;
+        if (previous != null && previous != newPool) {
+            previous.close();
+        }
+    }
 
-            connection = DriverManager.getConnection(url, username, password);
-            connection.setAutoCommit(false);
+    /**
+     * Remplace le pool du réplica. Un pool null renvoie toutes les lectures sur le primaire.
+     * @param newPool le pool à utiliser pour les lectures
+     */
+    public static synchronized void setReplicaPool(ConnectionPool newPool) {
+        ConnectionPool previous = replicaPool;
+        replicaPool = newPool;
+        replicaConfigured = newPool != null;
+        if (previous != null && previous != newPool) {
+            previous.close();
+        }
+    }
+
+    /**
+     * @param millis durée pendant laquelle un thread relit sur le primaire après une écriture (0 = jamais)
+     */
+    public static void setReadYourWritesMillis(long millis) {
+        readYourWritesMillis = millis;
+    }
 
-        } catch (SQLException ex) {
-            logger.error("Erreur SQL lors de la création de la connexion : {}", ex.getMessage(), ex);
+    public static ConnectionPool getPool() {
+        ConnectionPool current = pool;
+        if (current == null) {
+            synchronized (ConnectionUtils.class) {
+                current = pool;
+                if (current == null) {
+                    current = createPool();
+                    pool = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * @return le pool du réplica, ou null si aucun réplica n'est configuré
+     */
+    public static ConnectionPool getReplicaPool() {
+        ConnectionPool current = replicaPool;
+        if (current == null && replicaConfigured) {
+            synchronized (ConnectionUtils.class) {
+                current = replicaPool;
+                if (current == null && replicaConfigured) {
+                    current = createReplicaPool();
+                    replicaPool = current;
+                    replicaConfigured = current != null;
+                }
+            }
+        }
+        return current;
+    }
+
+    private static ConnectionPool createPool() {
+        try {
+            ResourceBundle dbProps = ResourceBundle.getBundle("database");
+            readYourWritesMillis = PoolConfig.readLong(dbProps, "database.routing.readYourWritesMillis", readYourWritesMillis);
+            return new ConnectionPool(PoolConfig.fromBundle(dbProps, "database"));
         } catch (MissingResourceException ex) {
             logger.error("Impossible de trouver le fichier de propriétés : {}", ex.getMessage(), ex);
+            throw ex;
+        }
+    }
+
+    private static ConnectionPool createReplicaPool() {
+        ResourceBundle dbProps = ResourceBundle.getBundle("database");
+        String enabled = PoolConfig.readString(dbProps, "database.routing.replicaReads");
+        if (PoolConfig.readString(dbProps, "database.replica.url") == null
+                || (enabled != null && !Boolean.parseBoolean(enabled.trim()))) {
+            return null;
         }
+        PoolConfig config = PoolConfig.fromBundle(dbProps, "database.replica");
+        logger.info("Lectures routées vers le réplica {}", config.getUrl());
+        return new ConnectionPool(config, () -> {
+            Connection connection = DriverManager.getConnection(config.getUrl(), config.getUsername(), config.getPassword());
+            connection.setReadOnly(true);
+            return connection;
+        });
     }
 }
@@ -0,0 +1,193 @@
+package ch.hearc.ig.guideresto.persistence;
+
+import oracle.jdbc.OracleStatement;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.MissingResourceException;
+import java.util.ResourceBundle;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Profil de lecture d'une requête nommée : taille de fetch, prefetch des LOB et nombre maximal de lignes.
+ * <p>
+ * Les profils sont déclarés dans fetch-profiles.properties sous le nom de la requête
+ * (voir {@link StatementRegistry}), par exemple :
+ * <pre>
+ * Restaurant.findAll.fetchSize=200
+ * Restaurant.findAll.lobPrefetchSize=4000
+ * BasicEvaluation.findAll.adaptive=true
+ * </pre>
+ * Les clés "default.*" s'appliquent aux requêtes sans profil. En mode adaptatif, la taille de fetch
+ * suit une moyenne glissante du nombre de lignes lues lors des exécutions précédentes.
+ */
+public final class FetchProfile {
+
+    private static final Logger logger = LogManager.getLogger();
+
+    private static final String BUNDLE = "fetch-profiles";
+    private static final String DEFAULT = "default";
+    /** Poids de la dernière exécution dans la moyenne glissante */
+    private static final double ALPHA = 0.2;
+
+    /** Marque les requêtes sans profil, pour ne pas relire le fichier à chaque exécution */
+    private static final FetchProfile NONE = new FetchProfile(DEFAULT, 0, 0, 0, false, 0);
+
+    private static final Map<String, FetchProfile> profiles = new ConcurrentHashMap<>();
+    private static volatile ResourceBundle bundle;
+    private static volatile boolean loaded;
+
+    private final String name;
+    private final int fetchSize;
+    private final int lobPrefetchSize;
+    private final int maxRows;
+    private final boolean adaptive;
+    private final int maxFetchSize;
+    private double averageRows = -1;
+    private volatile int currentFetchSize;
+
+    public FetchProfile(String name, int fetchSize, int lobPrefetchSize, int maxRows, boolean adaptive, int maxFetchSize) {
+        this.name = name;
+        this.fetchSize = fetchSize;
+        this.lobPrefetchSize = lobPrefetchSize;
+        this.maxRows = maxRows;
+        this.adaptive = adaptive;
+        this.maxFetchSize = maxFetchSize;
+        this.currentFetchSize = fetchSize;
+    }
+
+    /**
+     * @param sql le texte SQL d'une requête
+     * @return le profil de la requête, ou null si elle n'a pas de profil
+     */
+    static FetchProfile forSql(String sql) {
+        return forName(StatementRegistry.nameOf(sql));
+    }
+
+    /**
+     * @param name le nom de la requête dans le registre
+     * @return le profil de la requête, ou null si elle n'a pas de profil
+     */
+    public static FetchProfile forName(String name) {
+        FetchProfile profile = profiles.computeIfAbsent(name, FetchProfile::load);
+        return profile == NONE ? null : profile;
+    }
+
+    /**
+     * Déclare ou remplace un profil par programme (prioritaire sur le fichier).
+     */
+    public static void register(FetchProfile profile) {
+        profiles.put(profile.name, profile);
+    }
+
+    /**
+     * Chaque requête a sa propre instance, même quand elle reprend les clés "default.*",
+     * pour que le mode adaptatif suive ses propres volumes.
+     */
+    private static FetchProfile load(String name) {
+        ResourceBundle props = getBundle();
+        if (props == null) {
+            return NONE;
+        }
+        boolean declared = PoolConfig.readString(props, name + ".fetchSize") != null
+                || PoolConfig.readString(props, name + ".lobPrefetchSize") != null
+                || PoolConfig.readString(props, name + ".maxRows") != null
+                || PoolConfig.readString(props, name + ".adaptive") != null;
+        FetchProfile profile = fromBundle(props, name, declared ? name : DEFAULT);
+        return profile.isEmpty() ? NONE : profile;
+    }
+
+    private static FetchProfile fromBundle(ResourceBundle props, String name, String prefix) {
+        String adaptive = PoolConfig.readString(props, prefix + ".adaptive");
+        return new FetchProfile(
+                name,
+                PoolConfig.readInt(props, prefix + ".fetchSize", 0),
+                PoolConfig.readInt(props, prefix + ".lobPrefetchSize", 0),
+                PoolConfig.readInt(props, prefix + ".maxRows", 0),
+                adaptive != null && Boolean.parseBoolean(adaptive.trim()),
+                PoolConfig.readInt(props, prefix + ".maxFetchSize", 1000)
+        );
+    }
+
+    private static ResourceBundle getBundle() {
+        if (!loaded) {
+            synchronized (FetchProfile.class) {
+                if (!loaded) {
+                    try {
+                        bundle = ResourceBundle.getBundle(BUNDLE);
+                    } catch (MissingResourceException ex) {
+                        logger.debug("Pas de fichier {}.properties, profils de lecture par défaut du driver", BUNDLE);
+                    }
+                    loaded = true;
+                }
+            }
+        }
+        return bundle;
+    }
+
+    /**
+     * Applique le profil à une requête préparée.
+     */
+    void applyTo(Statement statement) throws SQLException {
+        int size = currentFetchSize;
+        if (size > 0) {
+            statement.setFetchSize(size);
+        }
+        if (maxRows > 0) {
+            statement.setMaxRows(maxRows);
+        }
+        if (lobPrefetchSize > 0 && statement.isWrapperFor(OracleStatement.class)) {
+            statement.unwrap(OracleStatement.class).setLobPrefetchSize(lobPrefetchSize);
+        }
+    }
+
+    /**
+     * Enregistre le nombre de lignes lues par une exécution et, en mode adaptatif,
+     * ajuste la taille de fetch des exécutions suivantes.
+     */
+    synchronized void observe(int rows) {
+        if (!adaptive) {
+            return;
+        }
+        averageRows = averageRows < 0 ? rows : ALPHA * rows + (1 - ALPHA) * averageRows;
+        // une ligne de plus évite un aller-retour juste pour constater la fin du curseur
+        int wanted = (int) Math.ceil(averageRows) + 1;
+        currentFetchSize = Math.max(Math.max(fetchSize, 10), Math.min(wanted, maxFetchSize));
+    }
+
+    private boolean isEmpty() {
+        return fetchSize <= 0 && lobPrefetchSize <= 0 && maxRows <= 0 && !adaptive;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+
+    public int getMaxRows() {
+        return maxRows;
+    }
+
+    public int getLobPrefetchSize() {
+        return lobPrefetchSize;
+    }
+
+    /**
+     * @return la taille de fetch appliquée à la prochaine exécution
+     */
+    public int getCurrentFetchSize() {
+        return currentFetchSize;
+    }
+
+    @Override
+    public String toString() {
+        return name + "[fetchSize=" + currentFetchSize + ", lobPrefetchSize=" + lobPrefetchSize
+                + ", maxRows=" + maxRows + ", adaptive=" + adaptive + "]";
+    }
+}
@@ -0,0 +1,81 @@
+package ch.hearc.ig.guideresto.persistence;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * Construction des listes "IN (?, ?, ...)" sur des identifiants.
+ * <p>
+ * Oracle limite une liste IN à 1000 éléments : les identifiants sont découpés en paquets.
+ * Chaque paquet est complété jusqu'à une taille fixe (1, 10, 50, 100, 500 ou 1000) en répétant
+ * le dernier identifiant, pour que seules quelques variantes du SQL existent et restent
+ * dans le cache de requêtes préparées.
+ */
+public final class InClause {
+
+    /** Nombre maximal d'éléments d'une liste IN sous Oracle */
+    public static final int MAX_SIZE = 1000;
+
+    private static final int[] BUCKETS = {1, 10, 50, 100, 500, MAX_SIZE};
+
+    private InClause() {
+    }
+
+    /**
+     * Découpe les identifiants en paquets d'au plus {@link #MAX_SIZE}, sans doublons.
+     */
+    public static List<List<Integer>> chunks(Collection<Integer> ids) {
+        List<Integer> distinct = new ArrayList<>(new LinkedHashSet<>(ids));
+        List<List<Integer>> chunks = new ArrayList<>();
+        for (int from = 0; from < distinct.size(); from += MAX_SIZE) {
+            chunks.add(distinct.subList(from, Math.min(from + MAX_SIZE, distinct.size())));
+        }
+        return chunks;
+    }
+
+    /**
+     * @return la taille de liste à utiliser pour n identifiants
+     */
+    public static int bucketSize(int n) {
+        for (int bucket : BUCKETS) {
+            if (n <= bucket) {
+                return bucket;
+            }
+        }
+        throw new IllegalArgumentException("Liste IN de " + n + " éléments : découper avec chunks()");
+    }
+
+    /**
+     * @return "?, ?, ..." avec size marqueurs
+     */
+    public static String placeholders(int size) {
+        StringBuilder sb = new StringBuilder(size * 3);
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append('?');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Lie les identifiants d'un paquet, complétés jusqu'à size en répétant le dernier.
+     * @param stmt la requête
+     * @param firstIndex l'index du premier marqueur de la liste
+     * @param ids les identifiants du paquet (non vide)
+     * @param size la taille de la liste dans le SQL
+     * @return l'index du marqueur qui suit la liste
+     */
+    public static int bind(PreparedStatement stmt, int firstIndex, List<Integer> ids, int size) throws SQLException {
+        int last = ids.get(ids.size() - 1);
+        for (int i = 0; i < size; i++) {
+            stmt.setInt(firstIndex + i, i < ids.size() ? ids.get(i) : last);
+        }
+        return firstIndex + size;
+    }
+}
@@ -0,0 +1,96 @@
+package ch.hearc.ig.guideresto.persistence;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Chargement différé d'une colonne CLOB.
+ * <p>
+ * Les requêtes de liste ne lisent plus les CLOB : l'objet reçoit un chargeur qui lit le texte
+ * au premier accès ({@link #load(int)}). Quand les textes de toute une liste sont nécessaires,
+ * {@link #loadAll(Collection)} les lit en une requête par paquet de 1000 identifiants.
+ */
+public final class LobLoader {
+
+    private static final Logger logger = LogManager.getLogger();
+
+    private final String name;
+    private final String table;
+    private final String idColumn;
+    private final String lobColumn;
+    private final String findOne;
+
+    /**
+     * @param name le nom de la requête dans le registre (ex: "Restaurant.description")
+     * @param table la table
+     * @param idColumn la colonne identifiant
+     * @param lobColumn la colonne CLOB
+     */
+    public LobLoader(String name, String table, String idColumn, String lobColumn) {
+        this.name = name;
+        this.table = table;
+        this.idColumn = idColumn;
+        this.lobColumn = lobColumn;
+        this.findOne = StatementRegistry.register(name,
+                "SELECT " + lobColumn + " FROM " + table + " WHERE " + idColumn + " = ?");
+    }
+
+    /**
+     * @param id l'identifiant de la ligne
+     * @return le texte, ou null si la ligne n'existe pas ou en cas d'erreur
+     */
+    public String load(int id) {
+        try (Connection connection = ConnectionUtils.getReadConnection();
+             PreparedStatement stmt = connection.prepareStatement(findOne)) {
+            stmt.setInt(1, id);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getString(1) : null;
+            }
+        } catch (SQLException e) {
+            logger.error("Erreur chargement {} {} : {}", name, id, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @param ids les identifiants des lignes
+     * @return les textes par identifiant ; les lignes absentes ne figurent pas dans la map
+     */
+    public Map<Integer, String> loadAll(Collection<Integer> ids) {
+        Map<Integer, String> texts = new HashMap<>();
+        if (ids.isEmpty()) {
+            return texts;
+        }
+        try (Connection connection = ConnectionUtils.getReadConnection()) {
+            for (List<Integer> chunk : InClause.chunks(ids)) {
+                int size = InClause.bucketSize(chunk.size());
+                try (PreparedStatement stmt = connection.prepareStatement(findMany(size))) {
+                    InClause.bind(stmt, 1, chunk, size);
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            texts.put(rs.getInt(1), rs.getString(2));
+                        }
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            logger.error("Erreur chargement groupé {} : {}", name, e.getMessage());
+        }
+        return texts;
+    }
+
+    private String findMany(int size) {
+        return StatementRegistry.register(name + "[" + size + "]",
+                "SELECT " + idColumn + ", " + lobColumn + " FROM " + table
+                        + " WHERE " + idColumn + " IN (" + InClause.placeholders(size) + ")");
+    }
+}
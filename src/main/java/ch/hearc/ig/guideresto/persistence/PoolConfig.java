@@ -0,0 +1,158 @@
+package ch.hearc.ig.guideresto.persistence;
+
+import java.util.MissingResourceException;
+import java.util.ResourceBundle;
+
+/**
+ * Paramètres du pool de connexions, lus depuis database.properties.
+ * Toutes les clés "database.pool.*" sont optionnelles.
+ */
+public class PoolConfig {
+
+    private final String url;
+    private final String username;
+    private final String password;
+    private int minSize = 2;
+    private int maxSize = 10;
+    private long borrowTimeoutMillis = 5_000;
+    private long leakDetectionThresholdMillis = 0;
+    private int validationTimeoutSeconds = 2;
+    private int statementCacheSize = 50;
+    private long keepAliveIntervalMillis = 30_000;
+
+    public PoolConfig(String url, String username, String password) {
+        this.url = url;
+        this.username = username;
+        this.password = password;
+    }
+
+    /**
+     * Construit la configuration à partir du bundle "database".
+     * @param bundle le bundle de propriétés
+     * @param prefix le préfixe des clés (ex: "database")
+     * @return la configuration du pool
+     */
+    public static PoolConfig fromBundle(ResourceBundle bundle, String prefix) {
+        PoolConfig config = new PoolConfig(
+                bundle.getString(prefix + ".url"),
+                bundle.getString(prefix + ".username"),
+                bundle.getString(prefix + ".password")
+        );
+        config.minSize = readInt(bundle, prefix + ".pool.minSize", config.minSize);
+        config.maxSize = readInt(bundle, prefix + ".pool.maxSize", config.maxSize);
+        config.borrowTimeoutMillis = readLong(bundle, prefix + ".pool.borrowTimeoutMillis", config.borrowTimeoutMillis);
+        config.leakDetectionThresholdMillis = readLong(bundle, prefix + ".pool.leakDetectionThresholdMillis", config.leakDetectionThresholdMillis);
+        config.validationTimeoutSeconds = readInt(bundle, prefix + ".pool.validationTimeoutSeconds", config.validationTimeoutSeconds);
+        config.statementCacheSize = readInt(bundle, prefix + ".pool.statementCacheSize", config.statementCacheSize);
+        config.keepAliveIntervalMillis = readLong(bundle, prefix + ".pool.keepAliveIntervalMillis", config.keepAliveIntervalMillis);
+        config.validate();
+        return config;
+    }
+
+    static int readInt(ResourceBundle bundle, String key, int defaultValue) {
+        String value = readString(bundle, key);
+        return value == null ? defaultValue : Integer.parseInt(value.trim());
+    }
+
+    static long readLong(ResourceBundle bundle, String key, long defaultValue) {
+        String value = readString(bundle, key);
+        return value == null ? defaultValue : Long.parseLong(value.trim());
+    }
+
+    static String readString(ResourceBundle bundle, String key) {
+        try {
+            return bundle.containsKey(key) ? bundle.getString(key) : null;
+        } catch (MissingResourceException ex) {
+            return null;
+        }
+    }
+
+    void validate() {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("database.pool.maxSize doit être >= 1");
+        }
+        if (minSize < 0 || minSize > maxSize) {
+            throw new IllegalArgumentException("database.pool.minSize doit être compris entre 0 et maxSize");
+        }
+        if (statementCacheSize < 0) {
+            throw new IllegalArgumentException("database.pool.statementCacheSize doit être >= 0");
+        }
+        if (keepAliveIntervalMillis < 0) {
+            throw new IllegalArgumentException("database.pool.keepAliveIntervalMillis doit être >= 0");
+        }
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getPassword() {
+        return password;
+    }
+
+    public int getMinSize() {
+        return minSize;
+    }
+
+    public void setMinSize(int minSize) {
+        this.minSize = minSize;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public long getBorrowTimeoutMillis() {
+        return borrowTimeoutMillis;
+    }
+
+    public void setBorrowTimeoutMillis(long borrowTimeoutMillis) {
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+    }
+
+    public long getLeakDetectionThresholdMillis() {
+        return leakDetectionThresholdMillis;
+    }
+
+    public void setLeakDetectionThresholdMillis(long leakDetectionThresholdMillis) {
+        this.leakDetectionThresholdMillis = leakDetectionThresholdMillis;
+    }
+
+    public int getValidationTimeoutSeconds() {
+        return validationTimeoutSeconds;
+    }
+
+    public void setValidationTimeoutSeconds(int validationTimeoutSeconds) {
+        this.validationTimeoutSeconds = validationTimeoutSeconds;
+    }
+
+    /**
+     * @return le nombre de PreparedStatement gardés en cache par connexion (0 = désactivé)
+     */
+    public int getStatementCacheSize() {
+        return statementCacheSize;
+    }
+
+    public void setStatementCacheSize(int statementCacheSize) {
+        this.statementCacheSize = statementCacheSize;
+    }
+
+    /**
+     * @return l'intervalle de validation des connexions idle en tâche de fond (0 = désactivé)
+     */
+    public long getKeepAliveIntervalMillis() {
+        return keepAliveIntervalMillis;
+    }
+
+    public void setKeepAliveIntervalMillis(long keepAliveIntervalMillis) {
+        this.keepAliveIntervalMillis = keepAliveIntervalMillis;
+    }
+}
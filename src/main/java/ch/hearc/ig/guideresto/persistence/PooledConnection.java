@@ -0,0 +1,168 @@
+package ch.hearc.ig.guideresto.persistence;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Connexion physique gérée par le {@link ConnectionPool}.
+ * Les mappers ne la voient jamais directement : ils reçoivent un proxy dont
+ * la méthode close() rend la connexion au pool au lieu de la fermer.
+ */
+class PooledConnection {
+
+    private final Connection physical;
+    private final long createdAt;
+    private final StatementCache statementCache;
+    private volatile long borrowedAt;
+    private volatile long lastValidatedAt;
+    private volatile Throwable borrowTrace;
+    private volatile boolean leakReported;
+    private volatile boolean broken;
+
+    PooledConnection(Connection physical, int statementCacheSize) {
+        this.physical = physical;
+        this.createdAt = System.currentTimeMillis();
+        this.lastValidatedAt = createdAt;
+        this.statementCache = new StatementCache(statementCacheSize);
+    }
+
+    Connection getPhysical() {
+        return physical;
+    }
+
+    long getCreatedAt() {
+        return createdAt;
+    }
+
+    long getBorrowedAt() {
+        return borrowedAt;
+    }
+
+    Throwable getBorrowTrace() {
+        return borrowTrace;
+    }
+
+    long getLastValidatedAt() {
+        return lastValidatedAt;
+    }
+
+    void markValidated() {
+        this.lastValidatedAt = System.currentTimeMillis();
+    }
+
+    boolean isLeakReported() {
+        return leakReported;
+    }
+
+    void setLeakReported(boolean leakReported) {
+        this.leakReported = leakReported;
+    }
+
+    boolean isBroken() {
+        return broken;
+    }
+
+    void markBorrowed(boolean captureTrace) {
+        this.borrowedAt = System.currentTimeMillis();
+        this.borrowTrace = captureTrace ? new Throwable("Connexion empruntée ici") : null;
+        this.leakReported = false;
+    }
+
+    /**
+     * Crée un nouveau proxy pour un emprunt. Chaque emprunt a son propre proxy,
+     * ce qui rend un close() tardif sur un ancien proxy sans effet.
+     */
+    Connection newHandle(ConnectionPool pool) {
+        return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class},
+                new Handle(pool)
+        );
+    }
+
+    void closePhysical() {
+        statementCache.closeAll();
+        try {
+            physical.close();
+        } catch (SQLException ignored) {
+            // la connexion est de toute façon abandonnée
+        }
+    }
+
+    private class Handle implements InvocationHandler {
+
+        private final ConnectionPool pool;
+        private final AtomicBoolean closed = new AtomicBoolean(false);
+
+        private Handle(ConnectionPool pool) {
+            this.pool = pool;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (closed.compareAndSet(false, true)) {
+                        pool.release(PooledConnection.this);
+                    }
+                    return null;
+                case "isClosed":
+                    return closed.get() || physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection[" + physical + "]";
+                default:
+                    break;
+            }
+
+            if (closed.get()) {
+                throw new SQLException("Connexion déjà rendue au pool");
+            }
+
+            try {
+                if (isCacheable(method)) {
+                    return method.getName().equals("prepareCall")
+                            ? statementCache.prepareCall(physical, (String) args[0])
+                            : statementCache.prepareStatement(physical, (String) args[0]);
+                }
+                return method.invoke(physical, args);
+            } catch (SQLException e) {
+                if (isFatal(e)) {
+                    broken = true;
+                }
+                throw e;
+            } catch (InvocationTargetException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof SQLException sqlEx && isFatal(sqlEx)) {
+                    broken = true;
+                }
+                throw cause;
+            }
+        }
+
+        /**
+         * Seules les variantes prepareStatement(sql) et prepareCall(sql) passent par le cache :
+         * les autres (clés générées, type de curseur...) changent le statement préparé.
+         */
+        private boolean isCacheable(Method method) {
+            return method.getParameterCount() == 1
+                    && (method.getName().equals("prepareStatement") || method.getName().equals("prepareCall"));
+        }
+
+        /**
+         * Les SQLState de la classe 08 signalent une connexion perdue.
+         */
+        private boolean isFatal(SQLException ex) {
+            String state = ex.getSQLState();
+            return state != null && state.startsWith("08");
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package ch.hearc.ig.guideresto.persistence;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.MissingResourceException;
+import java.util.ResourceBundle;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * Distribution d'identifiants par blocs réservés sur une séquence Oracle.
+ * <p>
+ * Un bloc de blockSize valeurs (database.sequence.blockSize, 100 par défaut) est réservé
+ * en un seul aller-retour, puis distribué depuis la mémoire par un compteur atomique.
+ * Seul le thread qui épuise le bloc va chercher le suivant.
+ * <p>
+ * Les valeurs sont lues telles que la séquence les donne : elles restent uniques même si
+ * d'autres sessions tirent sur la même séquence. Les valeurs réservées et non utilisées
+ * à l'arrêt de l'application sont perdues, ce qui laisse des trous dans la numérotation.
+ */
+public final class SequenceAllocator {
+
+    private static final Logger logger = LogManager.getLogger();
+
+    private static final Pattern SEQUENCE_NAME = Pattern.compile("[A-Za-z][A-Za-z0-9_$#]*");
+    private static final Map<String, SequenceAllocator> allocators = new ConcurrentHashMap<>();
+    private static volatile int defaultBlockSize = -1;
+
+    private final String sequenceName;
+    private final String reserveQuery;
+    private final int blockSize;
+    private final Object refillLock = new Object();
+    private volatile Block block = new Block(new int[0]);
+
+    private SequenceAllocator(String sequenceName, int blockSize) {
+        if (!SEQUENCE_NAME.matcher(sequenceName).matches()) {
+            throw new IllegalArgumentException("Nom de séquence invalide : " + sequenceName);
+        }
+        this.sequenceName = sequenceName;
+        this.blockSize = blockSize;
+        this.reserveQuery = StatementRegistry.register("Sequence." + sequenceName.toUpperCase(),
+                "SELECT " + sequenceName + ".NEXTVAL FROM dual CONNECT BY LEVEL <= ?");
+    }
+
+    /**
+     * @param sequenceName le nom de la séquence (ex: "SEQ_RESTAURANTS")
+     * @return l'allocateur partagé de cette séquence
+     */
+    public static SequenceAllocator forSequence(String sequenceName) {
+        return allocators.computeIfAbsent(sequenceName.toUpperCase(),
+                name -> new SequenceAllocator(name, getDefaultBlockSize()));
+    }
+
+    /**
+     * @param blockSize la taille des blocs des allocateurs créés ensuite
+     */
+    public static void setDefaultBlockSize(int blockSize) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("database.sequence.blockSize doit être >= 1");
+        }
+        defaultBlockSize = blockSize;
+    }
+
+    /**
+     * @return un nouvel identifiant, sans aller-retour tant que le bloc courant n'est pas épuisé
+     * @throws SQLException si un nouveau bloc ne peut être réservé
+     */
+    public int next() throws SQLException {
+        return next(null);
+    }
+
+    /**
+     * @param connection la connexion de l'appelant, sur le primaire, qui réserve le bloc suivant
+     *                   au besoin ; elle reste ouverte
+     * @param count le nombre d'identifiants voulus
+     * @return count nouveaux identifiants
+     */
+    public int[] next(Connection connection, int count) throws SQLException {
+        int[] ids = new int[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = next(connection);
+        }
+        return ids;
+    }
+
+    /**
+     * @param connection la connexion qui réserve le bloc suivant, null pour en emprunter une
+     */
+    private int next(Connection connection) throws SQLException {
+        while (true) {
+            Block current = block;
+            int index = current.cursor.getAndIncrement();
+            if (index < current.ids.length) {
+                return current.ids[index];
+            }
+            synchronized (refillLock) {
+                // un autre thread a peut-être déjà rechargé le bloc
+                if (block == current) {
+                    block = connection != null ? reserve(connection, blockSize) : reserve(blockSize);
+                }
+            }
+        }
+    }
+
+    public String getSequenceName() {
+        return sequenceName;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    private Block reserve(int count) throws SQLException {
+        // connexion du primaire : celle de la transaction courante s'il y en a une
+        try (Connection connection = ConnectionUtils.getConnection()) {
+            return reserve(connection, count);
+        }
+    }
+
+    private Block reserve(Connection connection, int count) throws SQLException {
+        int[] ids = new int[count];
+        try (PreparedStatement stmt = connection.prepareStatement(reserveQuery)) {
+            stmt.setInt(1, count);
+            try (ResultSet rs = stmt.executeQuery()) {
+                int i = 0;
+                while (i < count && rs.next()) {
+                    ids[i++] = rs.getInt(1);
+                }
+                if (i < count) {
+                    throw new SQLException(sequenceName + " : " + i + " valeurs réservées sur " + count);
+                }
+            }
+        }
+        logger.debug("{} : bloc {}..{} réservé", sequenceName, ids[0], ids[count - 1]);
+        return new Block(ids);
+    }
+
+    private static int getDefaultBlockSize() {
+        if (defaultBlockSize < 0) {
+            int size = 100;
+            try {
+                size = PoolConfig.readInt(ResourceBundle.getBundle("database"), "database.sequence.blockSize", size);
+            } catch (MissingResourceException ex) {
+                // taille par défaut
+            }
+            defaultBlockSize = Math.max(1, size);
+        }
+        return defaultBlockSize;
+    }
+
+    private static final class Block {
+
+        private final int[] ids;
+        private final AtomicInteger cursor = new AtomicInteger();
+
+        private Block(int[] ids) {
+            this.ids = ids;
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package ch.hearc.ig.guideresto.persistence;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache LRU des PreparedStatement d'une connexion physique.
+ * <p>
+ * Le mapper reçoit un proxy : son close() remet la requête à disposition au lieu de fermer
+ * le curseur côté base. Une requête déjà ouverte (appels imbriqués sur le même SQL) n'est
+ * jamais partagée : une requête hors cache est alors préparée.
+ * <p>
+ * Le {@link FetchProfile} de la requête est appliqué à chaque emprunt ; en mode adaptatif,
+ * le ResultSet retourné compte les lignes lues pour ajuster la taille de fetch.
+ * <p>
+ * Une connexion n'étant utilisée que par un thread à la fois, le cache n'est pas synchronisé.
+ */
+class StatementCache {
+
+    private final int capacity;
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    StatementCache(int capacity) {
+        this.capacity = capacity;
+    }
+
+    PreparedStatement prepareStatement(Connection physical, String sql) throws SQLException {
+        return prepare(physical, sql, false);
+    }
+
+    CallableStatement prepareCall(Connection physical, String sql) throws SQLException {
+        return (CallableStatement) prepare(physical, sql, true);
+    }
+
+    private PreparedStatement prepare(Connection physical, String sql, boolean callable) throws SQLException {
+        String key = (callable ? "call:" : "stmt:") + sql;
+        Entry entry = entries.get(key);
+
+        if (entry != null && !entry.inUse && !entry.statement.isClosed()) {
+            StatementRegistry.recordHit(sql);
+            return entry.checkout();
+        }
+
+        StatementRegistry.recordMiss(sql);
+        PreparedStatement statement = callable ? physical.prepareCall(sql) : physical.prepareStatement(sql);
+        Entry created = new Entry(sql, statement, callable);
+        if (capacity <= 0 || entry != null) {
+            // cache désactivé ou requête déjà ouverte plus haut dans la pile : fermée après usage
+            created.evicted = true;
+            return created.checkout();
+        }
+
+        entries.put(key, created);
+        evictIfNeeded();
+        return created.checkout();
+    }
+
+    void closeAll() {
+        for (Entry entry : entries.values()) {
+            entry.closePhysical();
+        }
+        entries.clear();
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    private void evictIfNeeded() {
+        Iterator<Entry> it = entries.values().iterator();
+        while (entries.size() > capacity && it.hasNext()) {
+            Entry eldest = it.next();
+            it.remove();
+            StatementRegistry.recordEviction(eldest.sql);
+            if (eldest.inUse) {
+                // sera fermée physiquement lors de son close()
+                eldest.evicted = true;
+            } else {
+                eldest.closePhysical();
+            }
+        }
+    }
+
+    private static final class Entry {
+
+        private final String sql;
+        private final PreparedStatement statement;
+        private final boolean callable;
+        private final FetchProfile profile;
+        private boolean inUse;
+        private boolean evicted;
+
+        private Entry(String sql, PreparedStatement statement, boolean callable) {
+            this.sql = sql;
+            this.statement = statement;
+            this.callable = callable;
+            this.profile = FetchProfile.forSql(sql);
+        }
+
+        private PreparedStatement checkout() throws SQLException {
+            inUse = true;
+            if (profile != null) {
+                profile.applyTo(statement);
+            }
+            return newHandle();
+        }
+
+        private PreparedStatement newHandle() {
+            Class<?> type = callable ? CallableStatement.class : PreparedStatement.class;
+            return (PreparedStatement) Proxy.newProxyInstance(
+                    type.getClassLoader(),
+                    new Class<?>[]{type},
+                    new Handle(this)
+            );
+        }
+
+        private void release() {
+            inUse = false;
+            if (evicted) {
+                closePhysical();
+                return;
+            }
+            try {
+                statement.clearParameters();
+                statement.clearBatch();
+                statement.clearWarnings();
+            } catch (SQLException e) {
+                evicted = true;
+                closePhysical();
+            }
+        }
+
+        private void closePhysical() {
+            try {
+                statement.close();
+            } catch (SQLException ignored) {
+                // le curseur sera de toute façon libéré avec la connexion
+            }
+        }
+    }
+
+    private static final class Handle implements InvocationHandler {
+
+        private final Entry entry;
+        private boolean closed;
+
+        private Handle(Entry entry) {
+            this.entry = entry;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        entry.release();
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || entry.statement.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "CachedStatement[" + entry.sql + "]";
+                default:
+                    break;
+            }
+            if (closed) {
+                throw new SQLException("Requête déjà fermée");
+            }
+            Object result;
+            try {
+                result = method.invoke(entry.statement, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+            if (result instanceof ResultSet rs && entry.profile != null && entry.profile.isAdaptive()) {
+                return RowCounter.wrap(rs, entry.profile);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * ResultSet qui compte les lignes lues et les transmet au profil lors de sa fermeture.
+     */
+    private static final class RowCounter implements InvocationHandler {
+
+        private final ResultSet resultSet;
+        private final FetchProfile profile;
+        private int rows;
+        private boolean reported;
+
+        private RowCounter(ResultSet resultSet, FetchProfile profile) {
+            this.resultSet = resultSet;
+            this.profile = profile;
+        }
+
+        private static ResultSet wrap(ResultSet resultSet, FetchProfile profile) {
+            return (ResultSet) Proxy.newProxyInstance(
+                    ResultSet.class.getClassLoader(),
+                    new Class<?>[]{ResultSet.class},
+                    new RowCounter(resultSet, profile)
+            );
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!reported) {
+                        reported = true;
+                        profile.observe(rows);
+                    }
+                    break;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    break;
+            }
+            try {
+                Object result = method.invoke(resultSet, args);
+                if (Boolean.TRUE.equals(result) && method.getName().equals("next")) {
+                    rows++;
+                }
+                return result;
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package ch.hearc.ig.guideresto.persistence;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Registre central des requêtes SQL nommées des mappers.
+ * <p>
+ * Chaque mapper déclare ses requêtes sous un nom stable (ex: "Restaurant.findById").
+ * Les connexions du pool gardent leurs PreparedStatement en cache (voir {@link StatementCache}),
+ * ce registre sert à nommer ces requêtes et à compter les réutilisations (hits) et les
+ * préparations (misses) pour dimensionner le cache.
+ */
+public final class StatementRegistry {
+
+    /** Nom utilisé pour les requêtes qui ne sont pas déclarées dans le registre */
+    public static final String UNNAMED = "<non nommée>";
+
+    private static final Map<String, String> namesBySql = new ConcurrentHashMap<>();
+    private static final Map<String, String> sqlByName = new ConcurrentHashMap<>();
+    private static final Map<String, Stats> statsByName = new ConcurrentHashMap<>();
+    private static final Stats total = new Stats();
+
+    private StatementRegistry() {
+    }
+
+    /**
+     * Déclare une requête nommée.
+     * @param name le nom de la requête, préfixé par l'entité
+     * @param sql le texte SQL
+     * @return le texte SQL, pour pouvoir l'affecter directement à une constante
+     */
+    public static String register(String name, String sql) {
+        String previous = sqlByName.putIfAbsent(name, sql);
+        if (previous != null && !previous.equals(sql)) {
+            throw new IllegalStateException("Requête " + name + " déjà déclarée avec un autre SQL");
+        }
+        namesBySql.putIfAbsent(sql, name);
+        return sql;
+    }
+
+    /**
+     * @return le SQL déclaré sous ce nom, ou null
+     */
+    public static String getSql(String name) {
+        return sqlByName.get(name);
+    }
+
+    /**
+     * @return le nom de la requête, ou {@link #UNNAMED} si elle n'est pas déclarée
+     */
+    public static String nameOf(String sql) {
+        return namesBySql.getOrDefault(sql, UNNAMED);
+    }
+
+    static void recordHit(String sql) {
+        total.hits.increment();
+        statsFor(sql).hits.increment();
+    }
+
+    static void recordMiss(String sql) {
+        total.misses.increment();
+        statsFor(sql).misses.increment();
+    }
+
+    static void recordEviction(String sql) {
+        total.evictions.increment();
+        statsFor(sql).evictions.increment();
+    }
+
+    /**
+     * @return les compteurs cumulés de toutes les connexions
+     */
+    public static Stats getStats() {
+        return total;
+    }
+
+    /**
+     * @return les compteurs par nom de requête, triés par nom
+     */
+    public static Map<String, Stats> getStatsByName() {
+        return Collections.unmodifiableMap(new TreeMap<>(statsByName));
+    }
+
+    private static Stats statsFor(String sql) {
+        return statsByName.computeIfAbsent(nameOf(sql), name -> new Stats());
+    }
+
+    /**
+     * Compteurs du cache de requêtes préparées.
+     */
+    public static final class Stats {
+
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final LongAdder evictions = new LongAdder();
+
+        public long getHits() {
+            return hits.sum();
+        }
+
+        public long getMisses() {
+            return misses.sum();
+        }
+
+        public long getEvictions() {
+            return evictions.sum();
+        }
+
+        public double getHitRatio() {
+            long h = getHits();
+            long requests = h + getMisses();
+            return requests == 0 ? 0.0 : (double) h / requests;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("hits=%d, misses=%d, evictions=%d, hitRatio=%.2f",
+                    getHits(), getMisses(), getEvictions(), getHitRatio());
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package ch.hearc.ig.guideresto.persistence;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Transactions liées au thread courant.
+ * <p>
+ * Le premier appel à {@link #inTransaction(TransactionalWork)} emprunte une connexion au pool,
+ * l'associe au thread et la valide (commit) une seule fois à la fin. Les appels imbriqués,
+ * y compris ceux faits par les mappers via {@link ConnectionUtils#getConnection()},
+ * rejoignent la transaction existante au lieu d'en ouvrir une nouvelle.
+ * <p>
+ * Le contexte est porté par un ThreadLocal : chaque thread virtuel a donc sa propre
+ * transaction, sans partage entre requêtes concurrentes.
+ */
+public final class TransactionManager {
+
+    private static final Logger logger = LogManager.getLogger();
+
+    private static final ThreadLocal<Transaction> current = new ThreadLocal<>();
+
+    /**
+     * Travail exécuté dans une transaction.
+     */
+    @FunctionalInterface
+    public interface TransactionalWork<R> {
+        R execute(Connection connection) throws SQLException;
+    }
+
+    private TransactionManager() {
+    }
+
+    /**
+     * Exécute le travail dans la transaction courante, ou en ouvre une si aucune n'est active.
+     * Si le travail échoue dans une transaction imbriquée, toute la transaction est annulée.
+     * @param work le travail à exécuter
+     * @return le résultat du travail
+     * @throws SQLException si le travail ou la validation échoue
+     */
+    public static <R> R inTransaction(TransactionalWork<R> work) throws SQLException {
+        Transaction tx = current.get();
+        if (tx != null) {
+            try {
+                return work.execute(tx.handle);
+            } catch (SQLException | RuntimeException e) {
+                tx.rollbackOnly = true;
+                throw e;
+            }
+        }
+
+        try (Connection connection = ConnectionUtils.getPool().borrow()) {
+            tx = new Transaction(connection);
+            current.set(tx);
+            try {
+                R result = work.execute(tx.handle);
+                if (tx.rollbackOnly) {
+                    throw new SQLException("Transaction annulée : une opération imbriquée a échoué");
+                }
+                connection.commit();
+                if (tx.wrote) {
+                    // une transaction en lecture seule ne retient pas les lectures sur le primaire
+                    ConnectionUtils.markWritten();
+                }
+                // détachée avant les actions : celles qui écrivent ouvrent leur propre transaction
+                current.remove();
+                tx.runAfterCommit();
+                return result;
+            } catch (SQLException | RuntimeException e) {
+                rollbackQuietly(connection);
+                throw e;
+            } finally {
+                current.remove();
+            }
+        }
+    }
+
+    /**
+     * @return true si une transaction est ouverte sur le thread courant
+     */
+    public static boolean isActive() {
+        return current.get() != null;
+    }
+
+    /**
+     * Force l'annulation de la transaction courante à sa fin.
+     */
+    public static void setRollbackOnly() {
+        Transaction tx = current.get();
+        if (tx == null) {
+            throw new IllegalStateException("Aucune transaction active sur ce thread");
+        }
+        tx.rollbackOnly = true;
+    }
+
+    /**
+     * @return true si la transaction courante sera annulée à sa fin (une opération imbriquée
+     * a échoué ou {@link #setRollbackOnly()} a été appelé)
+     */
+    public static boolean isRollbackOnly() {
+        Transaction tx = current.get();
+        return tx != null && tx.rollbackOnly;
+    }
+
+    /**
+     * Signale une écriture dans la transaction courante : après son commit, les lectures du
+     * thread restent un temps sur le primaire (voir {@link ConnectionUtils#getReadConnection()}).
+     * Hors transaction, l'écriture est déjà validée et le signalement immédiat.
+     * Les mappers l'appellent pour chaque objet écrit ; à appeler aussi par le code qui écrit
+     * sans passer par un mapper.
+     */
+    public static void recordWrite() {
+        Transaction tx = current.get();
+        if (tx == null) {
+            ConnectionUtils.markWritten();
+        } else {
+            tx.wrote = true;
+        }
+    }
+
+    /**
+     * Exécute l'action après la validation de la transaction courante, ou tout de suite hors
+     * transaction. Les actions d'une transaction annulée ne sont pas exécutées.
+     * @param action l'action, typiquement une invalidation de cache
+     */
+    public static void afterCommit(Runnable action) {
+        Transaction tx = current.get();
+        if (tx == null) {
+            action.run();
+        } else {
+            tx.afterCommit.add(action);
+        }
+    }
+
+    /**
+     * @return la connexion de la transaction courante, ou null hors transaction
+     */
+    static Connection currentConnection() {
+        Transaction tx = current.get();
+        return tx == null ? null : tx.handle;
+    }
+
+    private static void rollbackQuietly(Connection connection) {
+        try {
+            connection.rollback();
+        } catch (SQLException e) {
+            logger.error("Rollback échoué : {}", e.getMessage());
+        }
+    }
+
+    private static final class Transaction {
+
+        private final Connection handle;
+        private final List<Runnable> afterCommit = new ArrayList<>();
+        private boolean rollbackOnly;
+        /** true si une écriture a été signalée par {@link #recordWrite()} */
+        private boolean wrote;
+
+        private Transaction(Connection connection) {
+            this.handle = participantHandle(connection);
+        }
+
+        private void runAfterCommit() {
+            // copie : une action peut encore en enregistrer sur cette transaction
+            for (Runnable action : List.copyOf(afterCommit)) {
+                try {
+                    action.run();
+                } catch (RuntimeException e) {
+                    // la transaction est validée : une action en échec ne doit pas la faire paraître annulée
+                    logger.error("Action après commit échouée : {}", e.getMessage());
+                }
+            }
+        }
+
+        /**
+         * Les participants ne doivent ni fermer ni valider la connexion : c'est le rôle de l'appel
+         * qui a ouvert la transaction.
+         */
+        private static Connection participantHandle(Connection connection) {
+            return (Connection) Proxy.newProxyInstance(
+                    Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class},
+                    (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "close":
+                                return null;
+                            case "commit":
+                            case "rollback":
+                            case "setAutoCommit":
+                                throw new SQLException(method.getName()
+                                        + "() interdit : la transaction est gérée par TransactionManager");
+                            case "equals":
+                                return proxy == args[0];
+                            case "hashCode":
+                                return System.identityHashCode(proxy);
+                            default:
+                                break;
+                        }
+                        try {
+                            return method.invoke(connection, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                    }
+            );
+        }
+    }
+}
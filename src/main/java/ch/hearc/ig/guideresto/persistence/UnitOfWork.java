@@ -0,0 +1,171 @@
+package ch.hearc.ig.guideresto.persistence;
+
+import ch.hearc.ig.guideresto.business.IBusinessObject;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Unité de travail : regroupe les objets créés, modifiés et supprimés par une opération métier
+ * et les écrit en une seule transaction lors du {@link #commit()}.
+ * <p>
+ * Les mappers sont déclarés dans l'ordre des dépendances (parents d'abord) : les insertions et
+ * les mises à jour suivent cet ordre, les suppressions l'ordre inverse. Chaque type est écrit en
+ * un lot via les méthodes insertBatch/updateBatch/deleteBatch du mapper : un seul batch JDBC pour
+ * les mappers qui les redéfinissent, sinon objet par objet, toujours dans la même transaction.
+ */
+public class UnitOfWork {
+
+    private final Map<Class<?>, AbstractMapper<?>> mappers = new LinkedHashMap<>();
+    private final Set<IBusinessObject> newObjects = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Set<IBusinessObject> dirtyObjects = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Set<IBusinessObject> removedObjects = Collections.newSetFromMap(new IdentityHashMap<>());
+    // ordre d'enregistrement, pour des lots déterministes
+    private final List<IBusinessObject> registrationOrder = new ArrayList<>();
+
+    /**
+     * Déclare le mapper d'un type. L'ordre des appels définit l'ordre des dépendances.
+     * @return cette unité de travail, pour chaîner les déclarations
+     */
+    public <T extends IBusinessObject> UnitOfWork map(Class<T> type, AbstractMapper<T> mapper) {
+        mappers.put(type, mapper);
+        return this;
+    }
+
+    public void registerNew(IBusinessObject object) {
+        checkMapped(object);
+        if (removedObjects.contains(object) || dirtyObjects.contains(object)) {
+            throw new IllegalStateException("Objet déjà enregistré comme existant : " + object);
+        }
+        if (newObjects.add(object)) {
+            registrationOrder.add(object);
+        }
+    }
+
+    public void registerDirty(IBusinessObject object) {
+        checkMapped(object);
+        if (removedObjects.contains(object)) {
+            throw new IllegalStateException("Objet déjà enregistré comme supprimé : " + object);
+        }
+        // un objet nouveau sera inséré avec son état courant
+        if (!newObjects.contains(object) && dirtyObjects.add(object)) {
+            registrationOrder.add(object);
+        }
+    }
+
+    public void registerRemoved(IBusinessObject object) {
+        checkMapped(object);
+        if (newObjects.remove(object)) {
+            // jamais écrit en base : il suffit de l'oublier
+            registrationOrder.remove(object);
+            return;
+        }
+        dirtyObjects.remove(object);
+        if (removedObjects.add(object) && !registrationOrder.contains(object)) {
+            registrationOrder.add(object);
+        }
+    }
+
+    /**
+     * Écrit toutes les modifications enregistrées dans une seule transaction, puis met à jour
+     * les caches des mappers. En cas d'échec, rien n'est écrit et les enregistrements sont conservés.
+     * @throws SQLException si une écriture échoue
+     */
+    public void commit() throws SQLException {
+        if (newObjects.isEmpty() && dirtyObjects.isEmpty() && removedObjects.isEmpty()) {
+            return;
+        }
+        TransactionManager.inTransaction(connection -> {
+            flush(connection);
+            return null;
+        });
+        updateCaches();
+        clear();
+    }
+
+    /**
+     * Oublie toutes les modifications enregistrées.
+     */
+    public void clear() {
+        newObjects.clear();
+        dirtyObjects.clear();
+        removedObjects.clear();
+        registrationOrder.clear();
+    }
+
+    private void flush(Connection connection) throws SQLException {
+        List<Class<?>> order = new ArrayList<>(mappers.keySet());
+        for (Class<?> type : order) {
+            List<IBusinessObject> objects = collect(type, newObjects);
+            if (!objects.isEmpty()) {
+                insert(connection, mappers.get(type), objects);
+            }
+        }
+        for (Class<?> type : order) {
+            List<IBusinessObject> objects = collect(type, dirtyObjects);
+            if (!objects.isEmpty()) {
+                update(connection, mappers.get(type), objects);
+            }
+        }
+        Collections.reverse(order);
+        for (Class<?> type : order) {
+            List<IBusinessObject> objects = collect(type, removedObjects);
+            if (!objects.isEmpty()) {
+                delete(connection, mappers.get(type), objects);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends IBusinessObject> void insert(Connection connection, AbstractMapper<T> mapper,
+                                                           List<IBusinessObject> objects) throws SQLException {
+        mapper.insertBatch(connection, (List<T>) objects);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends IBusinessObject> void update(Connection connection, AbstractMapper<T> mapper,
+                                                           List<IBusinessObject> objects) throws SQLException {
+        mapper.updateBatch(connection, (List<T>) objects);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends IBusinessObject> void delete(Connection connection, AbstractMapper<T> mapper,
+                                                           List<IBusinessObject> objects) throws SQLException {
+        mapper.deleteBatch(connection, (List<T>) objects);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void updateCaches() {
+        for (IBusinessObject object : registrationOrder) {
+            AbstractMapper<IBusinessObject> mapper = (AbstractMapper<IBusinessObject>) mappers.get(object.getClass());
+            if (removedObjects.contains(object)) {
+                mapper.removeFromCache(object.getId());
+            } else {
+                mapper.addToCache(object);
+            }
+        }
+    }
+
+    private List<IBusinessObject> collect(Class<?> type, Set<IBusinessObject> registered) {
+        List<IBusinessObject> objects = new ArrayList<>();
+        for (IBusinessObject object : registrationOrder) {
+            if (object.getClass() == type && registered.contains(object)) {
+                objects.add(object);
+            }
+        }
+        return objects;
+    }
+
+    private void checkMapped(IBusinessObject object) {
+        if (!mappers.containsKey(object.getClass())) {
+            throw new IllegalArgumentException("Aucun mapper déclaré pour " + object.getClass().getSimpleName());
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package ch.hearc.ig.guideresto.persistence.cache;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Filtre de Bloom sur des clés int : {@link #mightContain(int)} ne se trompe jamais pour
+ * une clé ajoutée, et répond vrai à tort pour une clé absente avec la probabilité choisie.
+ * <p>
+ * Les k positions d'une clé sont tirées par double hachage de deux mélanges de la clé.
+ * Les ajouts concurrents sont sûrs (bits posés par compare-and-set).
+ */
+public final class BloomFilter {
+
+    private final AtomicLongArray bits;
+    private final long bitCount;
+    private final int hashCount;
+
+    /**
+     * @param expectedSize le nombre de clés prévu
+     * @param falsePositiveRate la probabilité voulue de faux positifs (ex: 0.01)
+     */
+    public BloomFilter(int expectedSize, double falsePositiveRate) {
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("falsePositiveRate doit être entre 0 et 1");
+        }
+        int n = Math.max(1, expectedSize);
+        long m = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        int words = (int) Math.max(1, (m + 63) / 64);
+        this.bits = new AtomicLongArray(words);
+        this.bitCount = (long) words * 64;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / n * Math.log(2)));
+    }
+
+    public void put(int key) {
+        long h1 = mix(key);
+        long h2 = mix(key ^ 0x5bd1e995) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitCount);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current;
+            do {
+                current = bits.get(word);
+                if ((current & mask) != 0) {
+                    break;
+                }
+            } while (!bits.compareAndSet(word, current, current | mask));
+        }
+    }
+
+    /**
+     * @return false si la clé n'a certainement jamais été ajoutée
+     */
+    public boolean mightContain(int key) {
+        long h1 = mix(key);
+        long h2 = mix(key ^ 0x5bd1e995) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitCount);
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Mélange final de MurmurHash3 (64 bits).
+     */
+    private static long mix(int key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        return h ^ (h >>> 33);
+    }
+}
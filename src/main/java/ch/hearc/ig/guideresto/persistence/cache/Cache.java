@@ -0,0 +1,75 @@
+package ch.hearc.ig.guideresto.persistence.cache;
+
+import java.util.Collection;
+import java.util.function.Function;
+
+/**
+ * Cache borné utilisé comme identity map par les mappers.
+ * Les implémentations choisissent elles-mêmes les entrées à évincer quand la taille maximale est atteinte.
+ */
+public interface Cache<K, V> {
+
+    /**
+     * @return la valeur associée à la clé, ou null si elle n'est pas (ou plus) en cache
+     */
+    V get(K key);
+
+    /**
+     * Ne compte pas comme un accès pour la politique d'éviction.
+     */
+    boolean containsKey(K key);
+
+    /**
+     * Renvoie la valeur en cache ou la charge avec loader et la met en cache.
+     * Un loader qui renvoie null ne met rien en cache.
+     * <p>
+     * L'implémentation par défaut n'est pas atomique : deux threads peuvent charger la même clé.
+     */
+    default V get(K key, Function<? super K, ? extends V> loader) {
+        V value = get(key);
+        if (value == null) {
+            value = loader.apply(key);
+            if (value != null) {
+                put(key, value);
+            }
+        }
+        return value;
+    }
+
+    void put(K key, V value);
+
+    /**
+     * @return la valeur retirée, ou null
+     */
+    V remove(K key);
+
+    void clear();
+
+    int size();
+
+    default boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * @return une copie des valeurs présentes au moment de l'appel
+     */
+    Collection<V> values();
+
+    int getMaximumSize();
+
+    /**
+     * @return le nombre d'entrées évincées pour respecter la taille maximale
+     */
+    default long getEvictionCount() {
+        return 0;
+    }
+
+    /**
+     * @return les compteurs du cache ; sans suivi des accès, seules la taille et les évictions
+     * sont renseignées
+     */
+    default CacheStats getStats() {
+        return new CacheStats(0, 0, 0, 0, 0, getEvictionCount(), size(), getMaximumSize());
+    }
+}
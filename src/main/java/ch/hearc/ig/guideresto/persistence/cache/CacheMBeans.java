@@ -0,0 +1,185 @@
+package ch.hearc.ig.guideresto.persistence.cache;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+/**
+ * Enregistrement des caches auprès du serveur JMX de la plateforme (jconsole, VisualVM...).
+ * Les vues lisent les compteurs au moment de la demande : elles ne coûtent rien aux accès.
+ */
+public final class CacheMBeans {
+
+    private static final Logger logger = LogManager.getLogger();
+
+    private static final String DOMAIN = "ch.hearc.ig.guideresto";
+
+    private CacheMBeans() {
+    }
+
+    /**
+     * Enregistre la vue du cache de l'entité, si elle ne l'est pas déjà.
+     */
+    static void registerEntity(String entityName) {
+        register(DOMAIN + ":type=EntityCache,name=" + entityName, new EntityCacheView(entityName));
+    }
+
+    static void registerQueryCache() {
+        register(DOMAIN + ":type=QueryCache", new QueryCacheView());
+    }
+
+    private static void register(String name, Object view) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(name);
+            if (!server.isRegistered(objectName)) {
+                server.registerMBean(view, objectName);
+            }
+        } catch (JMException | RuntimeException e) {
+            // les statistiques restent disponibles par Caches.getStats()
+            logger.warn("Vue JMX {} non enregistrée : {}", name, e.getMessage());
+        }
+    }
+
+    private static final class EntityCacheView implements EntityCacheMXBean {
+
+        private final String entityName;
+
+        private EntityCacheView(String entityName) {
+            this.entityName = entityName;
+        }
+
+        private CacheStats stats() {
+            return Caches.forEntity(entityName).getStats();
+        }
+
+        @Override
+        public long getHits() {
+            return stats().getHits();
+        }
+
+        @Override
+        public long getMisses() {
+            return stats().getMisses();
+        }
+
+        @Override
+        public double getHitRatio() {
+            return stats().getHitRatio();
+        }
+
+        @Override
+        public long getLoads() {
+            return stats().getLoads();
+        }
+
+        @Override
+        public long getEmptyLoads() {
+            return stats().getEmptyLoads();
+        }
+
+        @Override
+        public double getAverageLoadMillis() {
+            return stats().getAverageLoadMillis();
+        }
+
+        @Override
+        public long getEvictions() {
+            return stats().getEvictions();
+        }
+
+        @Override
+        public int getSize() {
+            return stats().getSize();
+        }
+
+        @Override
+        public int getMaximumSize() {
+            return stats().getMaximumSize();
+        }
+
+        @Override
+        public long getAbsentHits() {
+            NegativeCache absent = NegativeCache.find(entityName);
+            return absent == null ? 0 : absent.getMissHits();
+        }
+
+        @Override
+        public long getFilterHits() {
+            NegativeCache absent = NegativeCache.find(entityName);
+            return absent == null ? 0 : absent.getFilterHits();
+        }
+
+        @Override
+        public void clear() {
+            Caches.forEntity(entityName).clear();
+        }
+    }
+
+    private static final class QueryCacheView implements QueryCacheMXBean {
+
+        private static QueryCache.Stats stats() {
+            return QueryCache.getInstance().getStats();
+        }
+
+        @Override
+        public long getHits() {
+            return stats().getHits();
+        }
+
+        @Override
+        public long getMisses() {
+            return stats().getMisses();
+        }
+
+        @Override
+        public double getHitRatio() {
+            return stats().getHitRatio();
+        }
+
+        @Override
+        public long getRejected() {
+            return stats().getRejected();
+        }
+
+        @Override
+        public long getEvictions() {
+            return stats().getEvictions();
+        }
+
+        @Override
+        public long getInvalidations() {
+            return stats().getInvalidations();
+        }
+
+        @Override
+        public long getInvalidatedEntries() {
+            return stats().getInvalidatedEntries();
+        }
+
+        @Override
+        public Map<String, Long> getInvalidationsByTable() {
+            return stats().getInvalidationsByTable();
+        }
+
+        @Override
+        public int getSize() {
+            return QueryCache.getInstance().size();
+        }
+
+        @Override
+        public int getMaximumSize() {
+            return QueryCache.getInstance().getMaximumSize();
+        }
+
+        @Override
+        public void clear() {
+            QueryCache.getInstance().clear();
+        }
+    }
+}
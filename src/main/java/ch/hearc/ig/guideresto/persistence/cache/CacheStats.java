@@ -0,0 +1,85 @@
+package ch.hearc.ig.guideresto.persistence.cache;
+
+/**
+ * Relevé des compteurs d'un cache d'entités à un instant donné (voir {@link Cache#getStats()}).
+ */
+public final class CacheStats {
+
+    private final long hits;
+    private final long misses;
+    private final long loads;
+    private final long emptyLoads;
+    private final long totalLoadNanos;
+    private final long evictions;
+    private final int size;
+    private final int maximumSize;
+
+    public CacheStats(long hits, long misses, long loads, long emptyLoads, long totalLoadNanos,
+                      long evictions, int size, int maximumSize) {
+        this.hits = hits;
+        this.misses = misses;
+        this.loads = loads;
+        this.emptyLoads = emptyLoads;
+        this.totalLoadNanos = totalLoadNanos;
+        this.evictions = evictions;
+        this.size = size;
+        this.maximumSize = maximumSize;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public double getHitRatio() {
+        long requests = hits + misses;
+        return requests == 0 ? 0.0 : (double) hits / requests;
+    }
+
+    /**
+     * @return le nombre de chargements en base (un défaut de cache attendu par un autre thread
+     * qui charge la même clé n'en compte pas)
+     */
+    public long getLoads() {
+        return loads;
+    }
+
+    /**
+     * @return les chargements qui n'ont rien trouvé
+     */
+    public long getEmptyLoads() {
+        return emptyLoads;
+    }
+
+    public long getTotalLoadNanos() {
+        return totalLoadNanos;
+    }
+
+    public double getAverageLoadMillis() {
+        return loads == 0 ? 0.0 : totalLoadNanos / 1_000_000.0 / loads;
+    }
+
+    /**
+     * @return le nombre d'objets évincés pour respecter la taille maximale
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("hits=%d, misses=%d, hitRatio=%.2f, loads=%d, emptyLoads=%d, averageLoad=%.3fms, evictions=%d, size=%d/%d",
+                hits, misses, getHitRatio(), loads, emptyLoads, getAverageLoadMillis(), evictions, size, maximumSize);
+    }
+}
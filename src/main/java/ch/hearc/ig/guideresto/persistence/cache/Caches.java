@@ -0,0 +1,126 @@
+package ch.hearc.ig.guideresto.persistence.cache;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.MissingResourceException;
+import java.util.ResourceBundle;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registre des caches d'entités, un par type d'objet métier et partagé par toutes les instances
+ * de son mapper.
+ * <p>
+ * La taille de chaque cache est lue dans cache.properties ("Restaurant.maximumSize=5000"),
+ * à défaut "default.maximumSize". Chaque cache est découpé en segments W-TinyLFU
+ * ({@link StripedCache}) dont le nombre est lu dans "Restaurant.concurrencyLevel", à défaut
+ * "default.concurrencyLevel" ou deux fois le nombre de processeurs.
+ * Avec "Grade.references=weak" (ou soft), chaque segment est doublé d'un index à références
+ * faibles ({@link ReferenceCache}) : les objets sortis du cache mais encore tenus par
+ * l'application gardent leur identité, les autres sont laissés au GC.
+ * Un autre cache peut être branché pour une entité avec {@link #register(String, IntCache)}
+ * avant le premier usage du mapper.
+ */
+public final class Caches {
+
+    private static final Logger logger = LogManager.getLogger();
+
+    private static final String BUNDLE = "cache";
+    private static final int DEFAULT_MAXIMUM_SIZE = 10_000;
+
+    private static final Map<String, IntCache<?>> caches = new ConcurrentHashMap<>();
+
+    private Caches() {
+    }
+
+    /**
+     * @param entityName le nom de l'entité (ex: "Restaurant")
+     * @return le cache partagé de cette entité
+     */
+    @SuppressWarnings("unchecked")
+    public static <V> IntCache<V> forEntity(String entityName) {
+        IntCache<?> cache = caches.get(entityName);
+        if (cache == null) {
+            cache = caches.computeIfAbsent(entityName, Caches::<V>create);
+            CacheMBeans.registerEntity(entityName);
+        }
+        return (IntCache<V>) cache;
+    }
+
+    /**
+     * @return le cache de l'entité s'il a déjà été créé, sinon null
+     */
+    static IntCache<?> find(String entityName) {
+        return caches.get(entityName);
+    }
+
+    /**
+     * Remplace le cache d'une entité.
+     */
+    public static void register(String entityName, IntCache<?> cache) {
+        caches.put(entityName, cache);
+        CacheMBeans.registerEntity(entityName);
+    }
+
+    /**
+     * @return les caches créés, triés par nom d'entité
+     */
+    public static Map<String, IntCache<?>> getAll() {
+        return Collections.unmodifiableMap(new TreeMap<>(caches));
+    }
+
+    /**
+     * @return les compteurs de chaque cache, triés par nom d'entité (aussi exposés par JMX,
+     * voir {@link CacheMBeans})
+     */
+    public static Map<String, CacheStats> getStats() {
+        Map<String, CacheStats> stats = new TreeMap<>();
+        caches.forEach((entityName, cache) -> stats.put(entityName, cache.getStats()));
+        return stats;
+    }
+
+    /**
+     * Vide tous les caches.
+     */
+    public static void clearAll() {
+        caches.values().forEach(IntCache::clear);
+    }
+
+    private static <V> IntCache<V> create(String entityName) {
+        int maximumSize = DEFAULT_MAXIMUM_SIZE;
+        int concurrencyLevel = Runtime.getRuntime().availableProcessors() * 2;
+        ReferenceCache.Strength strength = ReferenceCache.Strength.STRONG;
+        try {
+            ResourceBundle bundle = ResourceBundle.getBundle(BUNDLE);
+            maximumSize = readInt(bundle, entityName + ".maximumSize",
+                    readInt(bundle, "default.maximumSize", maximumSize));
+            concurrencyLevel = readInt(bundle, entityName + ".concurrencyLevel",
+                    readInt(bundle, "default.concurrencyLevel", concurrencyLevel));
+            strength = readStrength(bundle, entityName + ".references",
+                    readStrength(bundle, "default.references", strength));
+        } catch (MissingResourceException ex) {
+            logger.debug("Pas de fichier {}.properties, taille par défaut pour {}", BUNDLE, entityName);
+        }
+        if (strength == ReferenceCache.Strength.STRONG) {
+            return new StripedCache<>(maximumSize, concurrencyLevel, TinyLfuCache::new);
+        }
+        ReferenceCache.Strength references = strength;
+        return new StripedCache<>(maximumSize, concurrencyLevel,
+                size -> new ReferenceCache<>(new TinyLfuCache<>(size), references));
+    }
+
+    private static int readInt(ResourceBundle bundle, String key, int defaultValue) {
+        return bundle.containsKey(key) ? Integer.parseInt(bundle.getString(key).trim()) : defaultValue;
+    }
+
+    private static ReferenceCache.Strength readStrength(ResourceBundle bundle, String key,
+                                                        ReferenceCache.Strength defaultValue) {
+        return bundle.containsKey(key)
+                ? ReferenceCache.Strength.valueOf(bundle.getString(key).trim().toUpperCase(Locale.ROOT))
+                : defaultValue;
+    }
+}
@@ -0,0 +1,38 @@
+package ch.hearc.ig.guideresto.persistence.cache;
+
+/**
+ * Vue JMX du cache d'une entité, enregistrée sous
+ * "ch.hearc.ig.guideresto:type=EntityCache,name=&lt;entité&gt;" (voir {@link CacheMBeans}).
+ */
+public interface EntityCacheMXBean {
+
+    long getHits();
+
+    long getMisses();
+
+    double getHitRatio();
+
+    long getLoads();
+
+    long getEmptyLoads();
+
+    double getAverageLoadMillis();
+
+    long getEvictions();
+
+    int getSize();
+
+    int getMaximumSize();
+
+    /**
+     * @return les findById et exists évités par les identifiants connus comme absents
+     */
+    long getAbsentHits();
+
+    /**
+     * @return les findById et exists évités par le filtre de Bloom des identifiants
+     */
+    long getFilterHits();
+
+    void clear();
+}
@@ -0,0 +1,142 @@
+package ch.hearc.ig.guideresto.persistence.cache;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Transport par fichier partagé, pour les tests et les instances d'un même poste :
+ * chaque message est ajouté en fin de fichier, une ligne par message, et chaque transport
+ * relit périodiquement ce qui a été ajouté depuis sa dernière lecture.
+ * <p>
+ * Les messages écrits avant la création du transport sont ignorés. Un fichier vidé ou
+ * raccourci (rotation) est relu depuis le début.
+ */
+public final class FileTransport implements InvalidationTransport {
+
+    private static final Logger logger = LogManager.getLogger();
+
+    private final Path file;
+    private final List<Consumer<Invalidation>> subscribers = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService poller;
+    private long position;
+
+    /**
+     * @param file le fichier partagé, créé s'il n'existe pas
+     * @param pollIntervalMillis l'intervalle entre deux lectures du fichier
+     */
+    public FileTransport(Path file, long pollIntervalMillis) throws IOException {
+        if (pollIntervalMillis < 1) {
+            throw new IllegalArgumentException("pollIntervalMillis doit être >= 1");
+        }
+        this.file = file;
+        try (FileChannel channel = open(StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            this.position = channel.size();
+        }
+        this.poller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "guideresto-invalidation-file");
+            thread.setDaemon(true);
+            return thread;
+        });
+        poller.scheduleWithFixedDelay(this::poll, pollIntervalMillis, pollIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void publish(Invalidation message) {
+        ByteBuffer line = StandardCharsets.UTF_8.encode(message.toLine() + '\n');
+        // le verrou empêche deux processus d'entremêler leurs lignes
+        try (FileChannel channel = open(StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            FileLock lock = channel.lock();
+            try {
+                while (line.hasRemaining()) {
+                    channel.write(line);
+                }
+            } finally {
+                lock.release();
+            }
+        } catch (IOException e) {
+            logger.error("Invalidation {} non publiée dans {} : {}", message.toLine(), file, e.getMessage());
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<Invalidation> subscriber) {
+        subscribers.add(subscriber);
+    }
+
+    @Override
+    public void close() {
+        poller.shutdownNow();
+    }
+
+    /**
+     * Lit les lignes complètes ajoutées depuis la dernière lecture ; une ligne en cours
+     * d'écriture sera lue au passage suivant.
+     */
+    private void poll() {
+        try (FileChannel channel = open(StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < position) {
+                position = 0;
+            }
+            if (size == position) {
+                return;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(size - position, Integer.MAX_VALUE - 8));
+            channel.read(buffer, position);
+            buffer.flip();
+            int end = lastNewline(buffer);
+            if (end < 0) {
+                return;
+            }
+            String chunk = StandardCharsets.UTF_8.decode(buffer.limit(end + 1)).toString();
+            position += end + 1;
+            for (String line : chunk.split("\n")) {
+                Invalidation message = Invalidation.parse(line);
+                if (message == null) {
+                    logger.warn("Ligne d'invalidation ignorée dans {} : {}", file, line);
+                } else {
+                    deliver(message);
+                }
+            }
+        } catch (IOException e) {
+            logger.error("Lecture des invalidations de {} impossible : {}", file, e.getMessage());
+        }
+    }
+
+    private void deliver(Invalidation message) {
+        for (Consumer<Invalidation> subscriber : subscribers) {
+            try {
+                subscriber.accept(message);
+            } catch (RuntimeException e) {
+                logger.error("Invalidation {} non traitée : {}", message.toLine(), e.getMessage());
+            }
+        }
+    }
+
+    private FileChannel open(StandardOpenOption... options) throws IOException {
+        return FileChannel.open(file, options);
+    }
+
+    private static int lastNewline(ByteBuffer buffer) {
+        for (int i = buffer.limit() - 1; i >= 0; i--) {
+            if (buffer.get(i) == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,71 @@
+package ch.hearc.ig.guideresto.persistence.cache;
+
+/**
+ * Estimation approchée de la fréquence d'accès des clés (count-min sketch à compteurs 4 bits).
+ * <p>
+ * Chaque clé incrémente 4 compteurs, l'estimation est le plus petit des 4. Les compteurs sont
+ * divisés par deux tous les sampleSize accès : les clés populaires hier mais plus aujourd'hui
+ * perdent progressivement leur avantage.
+ */
+final class FrequencySketch {
+
+    private static final int MAX_COUNT = 15;
+    private static final int[] SEEDS = {0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F};
+
+    private final byte[] counters;
+    private final int mask;
+    private final int sampleSize;
+    private int additions;
+
+    /**
+     * @param maximumSize la taille maximale du cache, qui dimensionne la table
+     */
+    FrequencySketch(int maximumSize) {
+        int width = Integer.highestOneBit(Math.max(16, maximumSize * 2) - 1) << 1;
+        this.counters = new byte[width];
+        this.mask = width - 1;
+        this.sampleSize = Math.max(10, maximumSize * 10);
+    }
+
+    void increment(int key) {
+        int hash = spread(key);
+        boolean added = false;
+        for (int seed : SEEDS) {
+            int index = indexOf(hash, seed);
+            if (counters[index] < MAX_COUNT) {
+                counters[index]++;
+                added = true;
+            }
+        }
+        if (added && ++additions >= sampleSize) {
+            reset();
+        }
+    }
+
+    int frequency(int key) {
+        int hash = spread(key);
+        int min = MAX_COUNT;
+        for (int seed : SEEDS) {
+            min = Math.min(min, counters[indexOf(hash, seed)]);
+        }
+        return min;
+    }
+
+    private void reset() {
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = (byte) (counters[i] >>> 1);
+        }
+        additions /= 2;
+    }
+
+    private int indexOf(int hash, int seed) {
+        int h = (hash ^ seed) * 0x45D9F3B;
+        h ^= h >>> 16;
+        return h & mask;
+    }
+
+    private static int spread(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 15);
+    }
+}
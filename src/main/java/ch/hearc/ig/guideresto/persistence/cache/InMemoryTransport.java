@@ -0,0 +1,81 @@
+package ch.hearc.ig.guideresto.persistence.cache;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+
+/**
+ * Transport dans la JVM : les transports d'un même canal se livrent leurs messages.
+ * Sert à faire tourner plusieurs bus (un par « instance ») dans un même processus.
+ * <p>
+ * Chaque transport livre ses messages dans l'ordre, sur son propre thread.
+ */
+public final class InMemoryTransport implements InvalidationTransport {
+
+    private static final Logger logger = LogManager.getLogger();
+
+    private static final Map<String, Set<InMemoryTransport>> channels = new ConcurrentHashMap<>();
+
+    private final String channel;
+    private final List<Consumer<Invalidation>> subscribers = new CopyOnWriteArrayList<>();
+    private final ExecutorService delivery;
+
+    /**
+     * @param channel le nom du canal, partagé par les transports qui communiquent
+     */
+    public InMemoryTransport(String channel) {
+        this.channel = channel;
+        this.delivery = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "guideresto-invalidation-" + channel);
+            thread.setDaemon(true);
+            return thread;
+        });
+        channels.computeIfAbsent(channel, c -> ConcurrentHashMap.newKeySet()).add(this);
+    }
+
+    @Override
+    public void publish(Invalidation message) {
+        for (InMemoryTransport transport : channels.getOrDefault(channel, Set.of())) {
+            transport.deliver(message);
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<Invalidation> subscriber) {
+        subscribers.add(subscriber);
+    }
+
+    @Override
+    public void close() {
+        channels.computeIfPresent(channel, (c, transports) -> {
+            transports.remove(this);
+            return transports.isEmpty() ? null : transports;
+        });
+        delivery.shutdown();
+    }
+
+    private void deliver(Invalidation message) {
+        try {
+            delivery.execute(() -> {
+                for (Consumer<Invalidation> subscriber : subscribers) {
+                    try {
+                        subscriber.accept(message);
+                    } catch (RuntimeException e) {
+                        logger.error("Invalidation {} non traitée : {}", message.toLine(), e.getMessage());
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // transport fermé entre-temps
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package ch.hearc.ig.guideresto.persistence.cache;
+
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+/**
+ * Cache à clés int, celui des mappers (clé = identifiant de l'objet).
+ * Les méthodes à clé primitive évitent de créer un Integer à chaque findById ;
+ * celles de {@link Cache} restent disponibles et y délèguent.
+ */
+public interface IntCache<V> extends Cache<Integer, V> {
+
+    V get(int key);
+
+    /**
+     * Renvoie la valeur en cache ou la charge avec loader et la met en cache.
+     * Un loader qui renvoie null ne met rien en cache.
+     */
+    default V get(int key, IntFunction<? extends V> loader) {
+        V value = get(key);
+        if (value == null) {
+            value = loader.apply(key);
+            if (value != null) {
+                put(key, value);
+            }
+        }
+        return value;
+    }
+
+    boolean containsKey(int key);
+
+    void put(int key, V value);
+
+    V remove(int key);
+
+    @Override
+    default V get(Integer key) {
+        return get(key.intValue());
+    }
+
+    @Override
+    default V get(Integer key, Function<? super Integer, ? extends V> loader) {
+        return get(key.intValue(), (IntFunction<? extends V>) loader::apply);
+    }
+
+    @Override
+    default boolean containsKey(Integer key) {
+        return containsKey(key.intValue());
+    }
+
+    @Override
+    default void put(Integer key, V value) {
+        put(key.intValue(), value);
+    }
+
+    @Override
+    default V remove(Integer key) {
+        return remove(key.intValue());
+    }
+}
@@ -0,0 +1,186 @@
+package ch.hearc.ig.guideresto.persistence.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Table de hachage à clés int primitives, en adressage ouvert (sondage linéaire).
+ * <p>
+ * Une recherche ne crée aucun Integer et ne suit aucun pointeur : elle lit au plus quelques
+ * cases consécutives d'un tableau d'int, puis la valeur correspondante. La table est gardée
+ * à moitié vide pour que les séquences de sondage restent courtes ; la suppression décale
+ * les entrées suivantes au lieu de laisser des marqueurs.
+ * <p>
+ * Les valeurs null ne sont pas acceptées (une case vide a une valeur null). Non synchronisée.
+ */
+public final class IntObjectMap<V> {
+
+    private static final int MIN_CAPACITY = 16;
+
+    private int[] keys;
+    private Object[] values;
+    private int mask;
+    private int size;
+
+    public IntObjectMap() {
+        this(MIN_CAPACITY / 2);
+    }
+
+    /**
+     * @param expectedSize le nombre d'entrées prévu, pour éviter les agrandissements
+     */
+    public IntObjectMap(int expectedSize) {
+        allocate(capacityFor(expectedSize));
+    }
+
+    /**
+     * @return la valeur associée à la clé, ou null
+     */
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        int[] keys = this.keys;
+        Object[] values = this.values;
+        int i = indexOf(key);
+        Object value;
+        while ((value = values[i]) != null) {
+            if (keys[i] == key) {
+                return (V) value;
+            }
+            i = (i + 1) & mask;
+        }
+        return null;
+    }
+
+    public boolean containsKey(int key) {
+        return get(key) != null;
+    }
+
+    /**
+     * @return la valeur remplacée, ou null
+     */
+    @SuppressWarnings("unchecked")
+    public V put(int key, V value) {
+        if (value == null) {
+            throw new NullPointerException("IntObjectMap n'accepte pas les valeurs null");
+        }
+        int i = indexOf(key);
+        Object current;
+        while ((current = values[i]) != null) {
+            if (keys[i] == key) {
+                values[i] = value;
+                return (V) current;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = value;
+        if (++size > (mask + 1) / 2) {
+            rehash((mask + 1) * 2);
+        }
+        return null;
+    }
+
+    /**
+     * @return la valeur retirée, ou null
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(int key) {
+        int i = indexOf(key);
+        Object current;
+        while ((current = values[i]) != null) {
+            if (keys[i] == key) {
+                shiftBack(i);
+                size--;
+                return (V) current;
+            }
+            i = (i + 1) & mask;
+        }
+        return null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    /**
+     * @return une copie des valeurs
+     */
+    @SuppressWarnings("unchecked")
+    public Collection<V> values() {
+        Collection<V> copy = new ArrayList<>(size);
+        for (Object value : values) {
+            if (value != null) {
+                copy.add((V) value);
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Comble le trou laissé en i en remontant les entrées suivantes de la même séquence
+     * de sondage qui pourraient sinon devenir introuvables.
+     */
+    private void shiftBack(int i) {
+        int hole = i;
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            if (values[j] == null) {
+                break;
+            }
+            int home = indexOf(keys[j]);
+            // l'entrée j peut remplir le trou si sa case d'origine n'est pas entre le trou et j
+            if (((j - home) & mask) >= ((j - hole) & mask)) {
+                keys[hole] = keys[j];
+                values[hole] = values[j];
+                hole = j;
+            }
+        }
+        values[hole] = null;
+    }
+
+    private int indexOf(int key) {
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != null) {
+                int j = indexOf(oldKeys[i]);
+                while (values[j] != null) {
+                    j = (j + 1) & mask;
+                }
+                keys[j] = oldKeys[i];
+                values[j] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+    }
+
+    private static int capacityFor(int expectedSize) {
+        long wanted = Math.max(MIN_CAPACITY, (long) expectedSize * 2);
+        if (wanted > 1 << 30) {
+            throw new IllegalArgumentException("Taille trop grande : " + expectedSize);
+        }
+        return Integer.highestOneBit((int) wanted - 1) << 1;
+    }
+}
@@ -0,0 +1,42 @@
+package ch.hearc.ig.guideresto.persistence.cache;
+
+/**
+ * Message d'invalidation : l'objet (entity, id) a été écrit en base par l'instance origin.
+ * <p>
+ * Sur le fil, un message est une ligne "origin|entity|id" (voir {@link #toLine()}).
+ *
+ * @param origin l'identifiant de l'instance qui a écrit
+ * @param entity le nom de l'entité, celui de son cache (ex: "Restaurant")
+ * @param id l'identifiant de l'objet écrit
+ */
+public record Invalidation(String origin, String entity, int id) {
+
+    private static final char SEPARATOR = '|';
+
+    public Invalidation {
+        if (origin.indexOf(SEPARATOR) >= 0 || entity.indexOf(SEPARATOR) >= 0) {
+            throw new IllegalArgumentException("Caractère '|' interdit dans " + origin + " / " + entity);
+        }
+    }
+
+    public String toLine() {
+        return origin + SEPARATOR + entity + SEPARATOR + id;
+    }
+
+    /**
+     * @return le message lu, ou null si la ligne est mal formée
+     */
+    public static Invalidation parse(String line) {
+        int first = line.indexOf(SEPARATOR);
+        int last = line.lastIndexOf(SEPARATOR);
+        if (first <= 0 || last <= first + 1) {
+            return null;
+        }
+        try {
+            return new Invalidation(line.substring(0, first), line.substring(first + 1, last),
+                    Integer.parseInt(line.substring(last + 1).trim()));
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+}
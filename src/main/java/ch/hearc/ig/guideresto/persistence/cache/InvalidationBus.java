@@ -0,0 +1,190 @@
+package ch.hearc.ig.guideresto.persistence.cache;
+
+import ch.hearc.ig.guideresto.persistence.TransactionManager;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.MissingResourceException;
+import java.util.ResourceBundle;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+
+/**
+ * Diffusion des écritures entre les instances de l'application qui partagent le schéma.
+ * <p>
+ * Chaque écriture d'un mapper publie (entité, identifiant) après le commit. Les autres
+ * instances retirent l'objet de leur cache d'entités ({@link Caches}) et de leurs absences
+ * connues ({@link NegativeCache}), puis appellent les
+ * actions enregistrées pour l'entité ({@link #addListener(String, IntConsumer)}) : les mappers
+ * y invalident leurs résultats de recherche et leurs données de référence. L'objet est relu
+ * en base au prochain accès.
+ * <p>
+ * Le transport est choisi dans cache.properties :
+ * <ul>
+ *     <li>invalidation.transport=none (défaut) : rien n'est diffusé, une seule instance</li>
+ *     <li>invalidation.transport=memory : canal invalidation.channel dans la JVM ({@link InMemoryTransport})</li>
+ *     <li>invalidation.transport=file : fichier partagé invalidation.file, relu toutes les
+ *     invalidation.pollMillis ms ({@link FileTransport})</li>
+ * </ul>
+ */
+public final class InvalidationBus {
+
+    private static final Logger logger = LogManager.getLogger();
+
+    private static final String BUNDLE = "cache";
+    private static final long DEFAULT_POLL_MILLIS = 200;
+    private static final InvalidationBus instance = create();
+
+    private final String nodeId;
+    private final InvalidationTransport transport;
+    private final Function<String, IntCache<?>> caches;
+    private final Function<String, NegativeCache> absences;
+    private final Map<String, List<IntConsumer>> listeners = new ConcurrentHashMap<>();
+    private final LongAdder published = new LongAdder();
+    private final LongAdder received = new LongAdder();
+
+    /**
+     * @param nodeId l'identifiant de cette instance, porté par ses messages
+     * @param transport le transport, ou null pour ne rien diffuser
+     */
+    public InvalidationBus(String nodeId, InvalidationTransport transport) {
+        this(nodeId, transport, Caches::find, NegativeCache::find);
+    }
+
+    /**
+     * Bus qui invalide d'autres caches que ceux de l'application, par exemple pour simuler
+     * plusieurs instances dans une même JVM.
+     * @param caches le cache d'entités d'un nom d'entité, ou null s'il n'y en a pas
+     * @param absences les absences connues d'un nom d'entité, ou null s'il n'y en a pas
+     */
+    public InvalidationBus(String nodeId, InvalidationTransport transport,
+                           Function<String, IntCache<?>> caches, Function<String, NegativeCache> absences) {
+        this.nodeId = nodeId;
+        this.transport = transport;
+        this.caches = caches;
+        this.absences = absences;
+        if (transport != null) {
+            transport.subscribe(this::receive);
+        }
+    }
+
+    /**
+     * @return le bus de cette instance, configuré par cache.properties
+     */
+    public static InvalidationBus getInstance() {
+        return instance;
+    }
+
+    /**
+     * Annonce l'écriture de l'objet aux autres instances, après le commit de la transaction
+     * courante (rien n'est envoyé si elle est annulée).
+     * @param entity le nom de l'entité (ex: "Restaurant")
+     * @param id l'identifiant de l'objet écrit
+     */
+    public void publish(String entity, int id) {
+        if (transport == null) {
+            return;
+        }
+        TransactionManager.afterCommit(() -> {
+            transport.publish(new Invalidation(nodeId, entity, id));
+            published.increment();
+        });
+    }
+
+    /**
+     * Enregistre une action appelée, avec l'identifiant, à chaque écriture de l'entité
+     * par une autre instance.
+     */
+    public void addListener(String entity, IntConsumer listener) {
+        listeners.computeIfAbsent(entity, e -> new CopyOnWriteArrayList<>()).add(listener);
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public boolean isEnabled() {
+        return transport != null;
+    }
+
+    /**
+     * @return le nombre de messages envoyés
+     */
+    public long getPublished() {
+        return published.sum();
+    }
+
+    /**
+     * @return le nombre de messages reçus des autres instances
+     */
+    public long getReceived() {
+        return received.sum();
+    }
+
+    /**
+     * Arrête la réception des messages.
+     */
+    public void close() {
+        if (transport != null) {
+            transport.close();
+        }
+    }
+
+    private void receive(Invalidation message) {
+        if (nodeId.equals(message.origin())) {
+            return;
+        }
+        received.increment();
+        IntCache<?> cache = caches.apply(message.entity());
+        if (cache != null) {
+            cache.remove(message.id());
+        }
+        NegativeCache absent = absences.apply(message.entity());
+        if (absent != null) {
+            absent.recordPresent(message.id());
+        }
+        for (IntConsumer listener : listeners.getOrDefault(message.entity(), List.of())) {
+            listener.accept(message.id());
+        }
+        logger.debug("{} {} modifié par {} : retiré du cache", message.entity(), message.id(), message.origin());
+    }
+
+    private static InvalidationBus create() {
+        String nodeId = UUID.randomUUID().toString();
+        try {
+            ResourceBundle bundle = ResourceBundle.getBundle(BUNDLE);
+            String kind = read(bundle, "invalidation.transport", "none");
+            switch (kind) {
+                case "none":
+                    break;
+                case "memory":
+                    return new InvalidationBus(nodeId, new InMemoryTransport(read(bundle, "invalidation.channel", "guideresto")));
+                case "file":
+                    Path file = Path.of(read(bundle, "invalidation.file",
+                            System.getProperty("java.io.tmpdir") + "/guideresto-invalidations.log"));
+                    long pollMillis = Long.parseLong(read(bundle, "invalidation.pollMillis", String.valueOf(DEFAULT_POLL_MILLIS)));
+                    logger.info("Invalidations diffusées par le fichier {}", file);
+                    return new InvalidationBus(nodeId, new FileTransport(file, pollMillis));
+                default:
+                    logger.warn("invalidation.transport inconnu : {}, aucune diffusion", kind);
+            }
+        } catch (MissingResourceException ex) {
+            logger.debug("Pas de fichier {}.properties, aucune diffusion des invalidations", BUNDLE);
+        } catch (IOException ex) {
+            logger.error("Transport des invalidations indisponible, aucune diffusion : {}", ex.getMessage());
+        }
+        return new InvalidationBus(nodeId, null);
+    }
+
+    private static String read(ResourceBundle bundle, String key, String defaultValue) {
+        return bundle.containsKey(key) ? bundle.getString(key).trim() : defaultValue;
+    }
+}
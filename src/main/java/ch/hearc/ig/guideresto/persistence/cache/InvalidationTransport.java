@@ -0,0 +1,24 @@
+package ch.hearc.ig.guideresto.persistence.cache;
+
+import java.util.function.Consumer;
+
+/**
+ * Moyen d'acheminer les messages d'invalidation entre les instances de l'application
+ * (voir {@link InvalidationBus}).
+ * <p>
+ * Un transport livre chaque message publié à tous ses abonnés, y compris ceux de l'instance
+ * qui l'a publié : c'est au bus d'ignorer ses propres messages. La livraison se fait sur un
+ * thread du transport, jamais sur celui de l'appelant de {@link #publish(Invalidation)}.
+ */
+public interface InvalidationTransport extends AutoCloseable {
+
+    void publish(Invalidation message);
+
+    void subscribe(Consumer<Invalidation> subscriber);
+
+    /**
+     * Arrête la livraison des messages aux abonnés de ce transport.
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,258 @@
+package ch.hearc.ig.guideresto.persistence.cache;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Map;
+import java.util.MissingResourceException;
+import java.util.ResourceBundle;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Identifiants absents d'une entité : findById et exists répondent « absent » sans requête.
+ * <p>
+ * Deux sources, configurées par entité dans cache.properties :
+ * <ul>
+ *     <li>les absences constatées en base, gardées un temps limité
+ *     ("Restaurant.negative.maximumSize", "Restaurant.negative.ttlMillis", à défaut
+ *     "default.negative.*" ; une taille 0 désactive)</li>
+ *     <li>un filtre de Bloom des identifiants existants ("Restaurant.bloomFilter=true"),
+ *     construit par le mapper en tâche de fond, puis reconstruit toutes les
+ *     "default.bloomFilter.rebuildMillis" ms (voir {@link #scheduleFilterBuilds(Runnable)}).
+ *     Il ne répond que pour les identifiants inférieurs au plus grand lu, les suivants
+ *     pouvant avoir été créés depuis hors de l'application.</li>
+ * </ul>
+ * Les autres instances créent aussi des identifiants, dont certains inférieurs au plus grand
+ * lu (tirés de leur bloc de séquence) : absences et filtre ne sont donc utilisés qu'avec un
+ * transport d'invalidation ({@link InvalidationBus}), qui leur annonce ces créations. Sans
+ * transport, les deux sont désactivés, avec un avertissement.
+ * Chaque écriture d'un objet ({@link #recordPresent(int)}) retire son identifiant des absences
+ * et l'ajoute au filtre. Une absence constatée, ou un filtre construit, pendant une écriture
+ * de la même entité n'est pas retenu (voir {@link #stamp()}).
+ */
+public final class NegativeCache {
+
+    private static final Logger logger = LogManager.getLogger();
+
+    private static final String BUNDLE = "cache";
+    private static final int DEFAULT_MAXIMUM_SIZE = 10_000;
+    private static final long DEFAULT_TTL_MILLIS = 60_000;
+    private static final long DEFAULT_REBUILD_MILLIS = 600_000;
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+
+    private static final Map<String, NegativeCache> caches = new ConcurrentHashMap<>();
+
+    /**
+     * Construit les filtres de Bloom des identifiants, hors des lectures, à intervalle fixe
+     */
+    private static final ScheduledExecutorService filterBuilder = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "guideresto-id-filter");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final String entityName;
+    private final IntCache<Long> misses;
+    private final long ttlNanos;
+    private final boolean filterEnabled;
+    private final long rebuildMillis;
+    private final AtomicLong writes = new AtomicLong();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private volatile IdFilter filter;
+
+    private final LongAdder missHits = new LongAdder();
+    private final LongAdder filterHits = new LongAdder();
+
+    /**
+     * @param maximumSize le nombre d'absences gardées, 0 pour n'en garder aucune
+     * @param ttlMillis la durée de vie d'une absence
+     * @param filterEnabled true pour utiliser un filtre de Bloom des identifiants existants
+     * @param rebuildMillis l'intervalle entre deux constructions du filtre
+     */
+    public NegativeCache(String entityName, int maximumSize, long ttlMillis,
+                         boolean filterEnabled, long rebuildMillis) {
+        this.entityName = entityName;
+        this.misses = maximumSize > 0 ? new TinyLfuCache<>(maximumSize) : null;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.filterEnabled = filterEnabled;
+        this.rebuildMillis = rebuildMillis;
+    }
+
+    /**
+     * @return les absences de l'entité, partagées par toutes les instances de son mapper
+     */
+    public static NegativeCache forEntity(String entityName) {
+        return caches.computeIfAbsent(entityName, NegativeCache::create);
+    }
+
+    /**
+     * @return les absences de l'entité si elles ont déjà été créées, sinon null
+     */
+    static NegativeCache find(String entityName) {
+        return caches.get(entityName);
+    }
+
+    /**
+     * @return true si l'objet est certainement absent de la base
+     */
+    public boolean isAbsent(int id) {
+        if (misses != null) {
+            Long expiry = misses.get(id);
+            if (expiry != null) {
+                if (expiry - System.nanoTime() > 0) {
+                    missHits.increment();
+                    return true;
+                }
+                misses.remove(id);
+            }
+        }
+        IdFilter current = filter;
+        if (current != null && id <= current.maxId && !current.bloom.mightContain(id)) {
+            filterHits.increment();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return l'état des écritures, à relever avant la requête qui constatera l'absence
+     */
+    public long stamp() {
+        return writes.get();
+    }
+
+    /**
+     * Retient l'absence constatée, sauf si l'entité a été écrite depuis stamp.
+     */
+    public void recordAbsent(int id, long stamp) {
+        if (misses != null && writes.get() == stamp) {
+            misses.put(id, Long.valueOf(System.nanoTime() + ttlNanos));
+            // écriture arrivée entre la vérification et l'ajout
+            if (writes.get() != stamp) {
+                misses.remove(id);
+            }
+        }
+    }
+
+    /**
+     * L'objet vient d'être écrit (ici ou par une autre instance) : il n'est plus absent.
+     */
+    public void recordPresent(int id) {
+        writes.incrementAndGet();
+        if (misses != null) {
+            misses.remove(id);
+        }
+        IdFilter current = filter;
+        if (current != null) {
+            current.bloom.put(id);
+        }
+    }
+
+    /**
+     * Planifie la construction du filtre, s'il est activé : tout de suite puis toutes les
+     * rebuildMillis ms après la fin de la précédente, dans un thread partagé par les entités.
+     * Seul le premier appel pour l'entité planifie ; les suivants sont sans effet.
+     * @param builder construit le filtre puis appelle {@link #install}
+     */
+    public void scheduleFilterBuilds(Runnable builder) {
+        if (!filterEnabled || scheduled.get() || !scheduled.compareAndSet(false, true)) {
+            return;
+        }
+        filterBuilder.scheduleWithFixedDelay(() -> {
+            try {
+                builder.run();
+            } catch (RuntimeException ex) {
+                // une exception annulerait les constructions suivantes
+                logger.error("Filtre des identifiants de {} non construit : {}", entityName, ex.getMessage());
+            }
+        }, 0, rebuildMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return un filtre vide dimensionné pour expectedSize identifiants
+     */
+    public BloomFilter newFilter(int expectedSize) {
+        return new BloomFilter(Math.max(1024, expectedSize + expectedSize / 4), FALSE_POSITIVE_RATE);
+    }
+
+    /**
+     * Met en service le filtre construit par l'appelant, sauf si l'entité a été écrite pendant
+     * la construction.
+     * @param bloom le filtre de tous les identifiants lus
+     * @param maxId le plus grand identifiant lu
+     * @param stamp l'état des écritures relevé avant la lecture
+     */
+    public void install(BloomFilter bloom, int maxId, long stamp) {
+        if (bloom != null && writes.get() == stamp) {
+            filter = new IdFilter(bloom, maxId);
+            logger.debug("Filtre des identifiants de {} construit (max {})", entityName, maxId);
+        }
+    }
+
+    public void clear() {
+        writes.incrementAndGet();
+        if (misses != null) {
+            misses.clear();
+        }
+        filter = null;
+    }
+
+    /**
+     * @return le nombre de findById/exists évités grâce aux absences retenues
+     */
+    public long getMissHits() {
+        return missHits.sum();
+    }
+
+    /**
+     * @return le nombre de findById/exists évités grâce au filtre de Bloom
+     */
+    public long getFilterHits() {
+        return filterHits.sum();
+    }
+
+    private static NegativeCache create(String entityName) {
+        int maximumSize = DEFAULT_MAXIMUM_SIZE;
+        long ttlMillis = DEFAULT_TTL_MILLIS;
+        boolean filterEnabled = false;
+        long rebuildMillis = DEFAULT_REBUILD_MILLIS;
+        try {
+            ResourceBundle bundle = ResourceBundle.getBundle(BUNDLE);
+            maximumSize = (int) read(bundle, entityName + ".negative.maximumSize",
+                    read(bundle, "default.negative.maximumSize", maximumSize));
+            ttlMillis = read(bundle, entityName + ".negative.ttlMillis",
+                    read(bundle, "default.negative.ttlMillis", ttlMillis));
+            filterEnabled = bundle.containsKey(entityName + ".bloomFilter")
+                    && Boolean.parseBoolean(bundle.getString(entityName + ".bloomFilter").trim());
+            rebuildMillis = read(bundle, entityName + ".bloomFilter.rebuildMillis",
+                    read(bundle, "default.bloomFilter.rebuildMillis", rebuildMillis));
+        } catch (MissingResourceException ex) {
+            // valeurs par défaut
+        }
+        if (!InvalidationBus.getInstance().isEnabled()) {
+            // les créations des autres instances n'arriveraient ni aux absences ni au filtre
+            if (maximumSize > 0) {
+                logger.warn("{} : absences non retenues, aucun transport d'invalidation configuré", entityName);
+                maximumSize = 0;
+            }
+            if (filterEnabled) {
+                logger.warn("{}.bloomFilter ignoré : aucun transport d'invalidation configuré", entityName);
+                filterEnabled = false;
+            }
+        }
+        return new NegativeCache(entityName, maximumSize, ttlMillis, filterEnabled, rebuildMillis);
+    }
+
+    private static long read(ResourceBundle bundle, String key, long defaultValue) {
+        return bundle.containsKey(key) ? Long.parseLong(bundle.getString(key).trim()) : defaultValue;
+    }
+
+    private record IdFilter(BloomFilter bloom, int maxId) {
+    }
+}
@@ -0,0 +1,309 @@
+package ch.hearc.ig.guideresto.persistence.cache;
+
+import ch.hearc.ig.guideresto.persistence.TransactionManager;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.MissingResourceException;
+import java.util.ResourceBundle;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache des résultats de requêtes paramétrées : pour (requête, paramètres), la liste des
+ * identifiants trouvés. Les objets eux-mêmes sont repris dans le cache d'entités du mapper.
+ * <p>
+ * Chaque résultat est étiqueté par les tables qu'il lit. Une écriture sur une table
+ * ({@link #invalidate(String)}) ne retire que les résultats qui en dépendent, une première fois
+ * tout de suite puis une seconde après le commit : un résultat lu entre les deux, sur des
+ * données pas encore validées, ne survit donc pas à la transaction.
+ * <p>
+ * Un résultat n'est mémorisé que si aucune de ses tables n'a été modifiée pendant la requête
+ * (voir {@link Lookup}).
+ */
+public final class QueryCache {
+
+    private static final Logger logger = LogManager.getLogger();
+
+    private static final int DEFAULT_MAXIMUM_SIZE = 1000;
+    private static final QueryCache instance = new QueryCache(readMaximumSize());
+
+    static {
+        CacheMBeans.registerQueryCache();
+    }
+
+    private final int maximumSize;
+    private final Map<Key, Entry> entries;
+    private final Map<String, Set<Key>> keysByTable = new HashMap<>();
+    private final Map<String, AtomicLong> generations = new ConcurrentHashMap<>();
+    private final Stats stats = new Stats();
+
+    public QueryCache(int maximumSize) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("maximumSize doit être >= 1");
+        }
+        this.maximumSize = maximumSize;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * @return le cache partagé par les mappers (taille : QueryCache.maximumSize dans cache.properties)
+     */
+    public static QueryCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * Prépare la recherche d'un résultat. L'état des tables est relevé ici : à appeler
+     * avant d'exécuter la requête en base.
+     * @param query la requête (son SQL)
+     * @param tables les tables lues par la requête
+     * @param params ses paramètres
+     */
+    public Lookup lookup(String query, String[] tables, Object... params) {
+        return new Lookup(new Key(query, Arrays.asList(params.clone())), tables.clone());
+    }
+
+    /**
+     * Retire les résultats qui lisent la table, maintenant et après le commit de la transaction
+     * courante.
+     * @param table la table modifiée (ex: "RESTAURANTS")
+     */
+    public void invalidate(String table) {
+        invalidateNow(table);
+        TransactionManager.afterCommit(() -> invalidateNow(table));
+    }
+
+    /**
+     * Vide le cache.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        keysByTable.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    public Stats getStats() {
+        return stats;
+    }
+
+    private long stamp(String[] tables) {
+        long stamp = 0;
+        for (String table : tables) {
+            stamp += generationOf(table).get();
+        }
+        return stamp;
+    }
+
+    private int[] get(Key key) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+        }
+        if (entry == null) {
+            stats.misses.increment();
+            return null;
+        }
+        stats.hits.increment();
+        return entry.ids.clone();
+    }
+
+    private synchronized void put(Key key, Entry entry, long stamp) {
+        // une table lue a été modifiée pendant la requête : le résultat est peut-être périmé
+        if (stamp(entry.tables) != stamp) {
+            stats.rejected.increment();
+            return;
+        }
+        entries.put(key, entry);
+        for (String table : entry.tables) {
+            keysByTable.computeIfAbsent(table, t -> new HashSet<>()).add(key);
+        }
+        evictOverflow();
+    }
+
+    private void invalidateNow(String table) {
+        generationOf(table).incrementAndGet();
+        int removed = 0;
+        synchronized (this) {
+            Set<Key> keys = keysByTable.remove(table);
+            if (keys != null) {
+                for (Key key : keys) {
+                    Entry entry = entries.remove(key);
+                    if (entry != null) {
+                        forgetKey(key, entry, table);
+                        removed++;
+                    }
+                }
+            }
+        }
+        stats.invalidations.increment();
+        stats.invalidatedEntries.add(removed);
+        stats.invalidationsByTable.computeIfAbsent(table, t -> new LongAdder()).increment();
+        if (removed > 0) {
+            logger.debug("{} modifiée : {} résultat(s) de requête retiré(s)", table, removed);
+        }
+    }
+
+    private void evictOverflow() {
+        Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator();
+        while (entries.size() > maximumSize && it.hasNext()) {
+            Map.Entry<Key, Entry> eldest = it.next();
+            it.remove();
+            forgetKey(eldest.getKey(), eldest.getValue(), null);
+            stats.evictions.increment();
+        }
+    }
+
+    /**
+     * Retire la clé des index des autres tables du résultat.
+     */
+    private void forgetKey(Key key, Entry entry, String except) {
+        for (String table : entry.tables) {
+            if (!table.equals(except)) {
+                Set<Key> keys = keysByTable.get(table);
+                if (keys != null && keys.remove(key) && keys.isEmpty()) {
+                    keysByTable.remove(table);
+                }
+            }
+        }
+    }
+
+    private AtomicLong generationOf(String table) {
+        return generations.computeIfAbsent(table, t -> new AtomicLong());
+    }
+
+    private static int readMaximumSize() {
+        try {
+            ResourceBundle bundle = ResourceBundle.getBundle("cache");
+            if (bundle.containsKey("QueryCache.maximumSize")) {
+                return Integer.parseInt(bundle.getString("QueryCache.maximumSize").trim());
+            }
+        } catch (MissingResourceException ex) {
+            // taille par défaut
+        }
+        return DEFAULT_MAXIMUM_SIZE;
+    }
+
+    private record Key(String query, List<Object> params) {
+    }
+
+    private record Entry(int[] ids, String[] tables) {
+    }
+
+    /**
+     * Recherche d'un résultat, puis mémorisation de celui lu en base en cas d'absence.
+     */
+    public final class Lookup {
+
+        private final Key key;
+        private final String[] tables;
+        private final long stamp;
+
+        private Lookup(Key key, String[] tables) {
+            this.key = key;
+            this.tables = tables;
+            this.stamp = stamp(tables);
+        }
+
+        /**
+         * @return les identifiants du résultat en cache, ou null
+         */
+        public int[] cached() {
+            return get(key);
+        }
+
+        /**
+         * Mémorise le résultat lu en base, sauf si une des tables a changé depuis {@link #lookup}.
+         * @param ids les identifiants du résultat, dans l'ordre
+         */
+        public void store(int[] ids) {
+            put(key, new Entry(ids.clone(), tables), stamp);
+        }
+    }
+
+    /**
+     * Compteurs du cache de requêtes.
+     */
+    public static final class Stats {
+
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder evictions = new LongAdder();
+        private final LongAdder invalidations = new LongAdder();
+        private final LongAdder invalidatedEntries = new LongAdder();
+        private final Map<String, LongAdder> invalidationsByTable = new ConcurrentHashMap<>();
+
+        public long getHits() {
+            return hits.sum();
+        }
+
+        public long getMisses() {
+            return misses.sum();
+        }
+
+        /**
+         * @return les résultats non mémorisés car une de leurs tables a changé pendant la requête
+         */
+        public long getRejected() {
+            return rejected.sum();
+        }
+
+        public long getEvictions() {
+            return evictions.sum();
+        }
+
+        /**
+         * @return le nombre d'invalidations reçues (deux par écriture en transaction)
+         */
+        public long getInvalidations() {
+            return invalidations.sum();
+        }
+
+        /**
+         * @return le nombre de résultats retirés par invalidation
+         */
+        public long getInvalidatedEntries() {
+            return invalidatedEntries.sum();
+        }
+
+        /**
+         * @return le nombre d'invalidations par table
+         */
+        public Map<String, Long> getInvalidationsByTable() {
+            Map<String, Long> counts = new TreeMap<>();
+            invalidationsByTable.forEach((table, count) -> counts.put(table, count.sum()));
+            return counts;
+        }
+
+        public double getHitRatio() {
+            long h = getHits();
+            long requests = h + getMisses();
+            return requests == 0 ? 0.0 : (double) h / requests;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("hits=%d, misses=%d, hitRatio=%.2f, invalidations=%d, invalidatedEntries=%d, rejected=%d, evictions=%d",
+                    getHits(), getMisses(), getHitRatio(), getInvalidations(), getInvalidatedEntries(),
+                    getRejected(), getEvictions());
+        }
+    }
+}
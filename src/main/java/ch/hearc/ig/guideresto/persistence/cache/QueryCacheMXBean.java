@@ -0,0 +1,31 @@
+package ch.hearc.ig.guideresto.persistence.cache;
+
+import java.util.Map;
+
+/**
+ * Vue JMX du cache des recherches, enregistrée sous "ch.hearc.ig.guideresto:type=QueryCache".
+ */
+public interface QueryCacheMXBean {
+
+    long getHits();
+
+    long getMisses();
+
+    double getHitRatio();
+
+    long getRejected();
+
+    long getEvictions();
+
+    long getInvalidations();
+
+    long getInvalidatedEntries();
+
+    Map<String, Long> getInvalidationsByTable();
+
+    int getSize();
+
+    int getMaximumSize();
+
+    void clear();
+}
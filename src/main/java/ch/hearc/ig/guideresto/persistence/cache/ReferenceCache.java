@@ -0,0 +1,205 @@
+package ch.hearc.ig.guideresto.persistence.cache;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * Identity map à références faibles ou douces, doublée d'un cache borné ordinaire.
+ * <p>
+ * Le cache borné (hot) garde les objets récemment utilisés en mémoire. Tous les objets mis
+ * en cache sont aussi indexés par une référence faible (ou douce) : tant que l'application
+ * tient un objet, même sorti du cache borné, findById rend la même instance ; un objet que
+ * plus personne ne tient est récupéré par le GC et relu en base au besoin.
+ * <p>
+ * Les références vidées par le GC sont retirées de l'index à chaque écriture, via leur
+ * {@link ReferenceQueue}. Synchronisé, prévu comme segment d'un {@link StripedCache}.
+ */
+public class ReferenceCache<V> implements IntCache<V> {
+
+    /**
+     * Force des références de l'index.
+     */
+    public enum Strength {
+        /** objets gardés uniquement par le cache borné, sans index de références */
+        STRONG,
+        /** récupérés par le GC quand la mémoire manque */
+        SOFT,
+        /** récupérés dès que l'application ne les tient plus */
+        WEAK
+    }
+
+    private final IntCache<V> hot;
+    private final Strength strength;
+    private final IntObjectMap<Entry<V>> index = new IntObjectMap<>();
+    private final ReferenceQueue<V> queue = new ReferenceQueue<>();
+
+    /**
+     * @param hot le cache borné des objets gardés quoi qu'il arrive
+     * @param strength SOFT ou WEAK
+     */
+    public ReferenceCache(IntCache<V> hot, Strength strength) {
+        if (strength == Strength.STRONG) {
+            throw new IllegalArgumentException("Un ReferenceCache a des références SOFT ou WEAK");
+        }
+        this.hot = hot;
+        this.strength = strength;
+    }
+
+    @Override
+    public synchronized V get(int key) {
+        V value = hot.get(key);
+        if (value != null) {
+            return value;
+        }
+        Entry<V> entry = index.get(key);
+        if (entry == null) {
+            return null;
+        }
+        value = entry.get();
+        if (value != null) {
+            // toujours utilisé : revient dans le cache borné
+            hot.put(key, value);
+        }
+        return value;
+    }
+
+    @Override
+    public synchronized boolean containsKey(int key) {
+        Entry<V> entry = index.get(key);
+        return entry != null && entry.get() != null;
+    }
+
+    @Override
+    public synchronized void put(int key, V value) {
+        expungeCollected();
+        hot.put(key, value);
+        Entry<V> entry = index.get(key);
+        if (entry == null || entry.get() != value) {
+            index.put(key, newEntry(key, value));
+        }
+    }
+
+    @Override
+    public synchronized V remove(int key) {
+        expungeCollected();
+        hot.remove(key);
+        Entry<V> entry = index.remove(key);
+        return entry == null ? null : entry.get();
+    }
+
+    @Override
+    public synchronized void clear() {
+        hot.clear();
+        index.clear();
+        // les références déjà en file ne correspondent plus à rien
+        while (queue.poll() != null) {
+            // vider la file
+        }
+    }
+
+    /**
+     * @return le nombre d'objets indexés, y compris ceux que le GC n'a pas encore signalés
+     */
+    @Override
+    public synchronized int size() {
+        expungeCollected();
+        return index.size();
+    }
+
+    @Override
+    public synchronized Collection<V> values() {
+        expungeCollected();
+        Collection<Entry<V>> entries = index.values();
+        Collection<V> values = new ArrayList<>(entries.size());
+        for (Entry<V> entry : entries) {
+            V value = entry.get();
+            if (value != null) {
+                values.add(value);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * @return la taille du cache borné ; l'index, lui, n'est limité que par la mémoire
+     */
+    @Override
+    public int getMaximumSize() {
+        return hot.getMaximumSize();
+    }
+
+    /**
+     * @return les évictions du cache borné ; l'objet reste joignable par l'index tant que le GC
+     * ne l'a pas récupéré
+     */
+    @Override
+    public long getEvictionCount() {
+        return hot.getEvictionCount();
+    }
+
+    public Strength getStrength() {
+        return strength;
+    }
+
+    /**
+     * Retire de l'index les entrées dont l'objet a été récupéré par le GC.
+     */
+    @SuppressWarnings("unchecked")
+    private void expungeCollected() {
+        Reference<? extends V> ref;
+        while ((ref = queue.poll()) != null) {
+            Entry<V> entry = (Entry<V>) ref;
+            // l'entrée a pu être remplacée depuis par un autre objet de même clé
+            if (index.get(entry.key()) == entry) {
+                index.remove(entry.key());
+            }
+        }
+    }
+
+    private Entry<V> newEntry(int key, V value) {
+        return strength == Strength.SOFT
+                ? new SoftEntry<>(key, value, queue)
+                : new WeakEntry<>(key, value, queue);
+    }
+
+    private interface Entry<V> {
+
+        int key();
+
+        V get();
+    }
+
+    private static final class WeakEntry<V> extends WeakReference<V> implements Entry<V> {
+
+        private final int key;
+
+        private WeakEntry(int key, V value, ReferenceQueue<V> queue) {
+            super(value, queue);
+            this.key = key;
+        }
+
+        @Override
+        public int key() {
+            return key;
+        }
+    }
+
+    private static final class SoftEntry<V> extends SoftReference<V> implements Entry<V> {
+
+        private final int key;
+
+        private SoftEntry(int key, V value, ReferenceQueue<V> queue) {
+            super(value, queue);
+            this.key = key;
+        }
+
+        @Override
+        public int key() {
+            return key;
+        }
+    }
+}
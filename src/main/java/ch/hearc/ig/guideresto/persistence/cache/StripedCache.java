@@ -0,0 +1,212 @@
+package ch.hearc.ig.guideresto.persistence.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+
+/**
+ * Cache concurrent découpé en segments indépendants : chaque clé appartient à un segment
+ * choisi par son hash, et seul ce segment est verrouillé pendant un accès. Des threads qui
+ * lisent des clés différentes ne se bloquent donc presque jamais.
+ * <p>
+ * {@link #get(int, IntFunction)} charge une clé manquante une seule fois : les threads qui
+ * la demandent pendant le chargement attendent son résultat au lieu de relancer la requête.
+ * Un chargement imbriqué (le loader d'une évaluation qui charge ses notes, qui chargent
+ * leur évaluation...) n'attend jamais un autre thread, ce qui exclut les interblocages.
+ * <p>
+ * Les accès, chargements et évictions sont comptés par des {@link LongAdder}, sans verrou
+ * (voir {@link #getStats()}).
+ */
+public class StripedCache<V> implements IntCache<V> {
+
+    /** Profondeur de chargement du thread courant, tous caches confondus */
+    private static final ThreadLocal<int[]> loadingDepth = ThreadLocal.withInitial(() -> new int[1]);
+
+    private final IntCache<V>[] segments;
+    private final int mask;
+    private final int maximumSize;
+    private final ConcurrentHashMap<Integer, Loading<V>> loading = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder emptyLoads = new LongAdder();
+    private final LongAdder loadNanos = new LongAdder();
+
+    /**
+     * @param maximumSize la taille maximale totale, répartie entre les segments
+     * @param concurrencyLevel le nombre de segments souhaité (arrondi à une puissance de 2)
+     * @param segmentFactory crée un segment d'une taille donnée
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public StripedCache(int maximumSize, int concurrencyLevel, IntFunction<IntCache<V>> segmentFactory) {
+        if (maximumSize < 1 || concurrencyLevel < 1) {
+            throw new IllegalArgumentException("maximumSize et concurrencyLevel doivent être >= 1");
+        }
+        // pas de segment plus petit que 16 entrées, sinon l'éviction devient arbitraire
+        int count = Integer.highestOneBit(Math.max(1, Math.min(concurrencyLevel, maximumSize / 16)));
+        this.segments = new IntCache[count];
+        this.mask = count - 1;
+        this.maximumSize = maximumSize;
+        for (int i = 0; i < count; i++) {
+            segments[i] = segmentFactory.apply(maximumSize / count + (i < maximumSize % count ? 1 : 0));
+        }
+    }
+
+    @Override
+    public V get(int key) {
+        V value = segmentFor(key).get(key);
+        (value != null ? hits : misses).increment();
+        return value;
+    }
+
+    @Override
+    public V get(int key, IntFunction<? extends V> loader) {
+        V value = get(key);
+        if (value != null) {
+            return value;
+        }
+
+        int[] depth = loadingDepth.get();
+        Loading<V> mine = new Loading<>();
+        Loading<V> current = loading.putIfAbsent(key, mine);
+        if (current != null) {
+            if (depth[0] > 0) {
+                // chargement imbriqué : ne pas attendre un autre thread
+                return load(key, loader, depth);
+            }
+            return current.await();
+        }
+
+        try {
+            // un chargement concurrent a pu se terminer entre la lecture et l'inscription
+            value = segmentFor(key).get(key);
+            if (value == null) {
+                value = load(key, loader, depth);
+            }
+            if (value != null) {
+                put(key, value);
+            }
+            mine.future.complete(value);
+            return value;
+        } catch (RuntimeException | Error ex) {
+            mine.future.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            loading.remove(key, mine);
+        }
+    }
+
+    @Override
+    public boolean containsKey(int key) {
+        return segmentFor(key).containsKey(key);
+    }
+
+    @Override
+    public void put(int key, V value) {
+        segmentFor(key).put(key, value);
+    }
+
+    @Override
+    public V remove(int key) {
+        return segmentFor(key).remove(key);
+    }
+
+    @Override
+    public void clear() {
+        for (IntCache<V> segment : segments) {
+            segment.clear();
+        }
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (IntCache<V> segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    @Override
+    public Collection<V> values() {
+        Collection<V> values = new ArrayList<>();
+        for (IntCache<V> segment : segments) {
+            values.addAll(segment.values());
+        }
+        return values;
+    }
+
+    @Override
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    @Override
+    public long getEvictionCount() {
+        long evictions = 0;
+        for (IntCache<V> segment : segments) {
+            evictions += segment.getEvictionCount();
+        }
+        return evictions;
+    }
+
+    @Override
+    public CacheStats getStats() {
+        return new CacheStats(hits.sum(), misses.sum(), loads.sum(), emptyLoads.sum(), loadNanos.sum(),
+                getEvictionCount(), size(), maximumSize);
+    }
+
+    /**
+     * @return le nombre de segments
+     */
+    public int getConcurrencyLevel() {
+        return segments.length;
+    }
+
+    private IntCache<V> segmentFor(int key) {
+        int h = key * 0x9E3779B9;
+        return segments[(h ^ (h >>> 16)) & mask];
+    }
+
+    private V load(int key, IntFunction<? extends V> loader, int[] depth) {
+        depth[0]++;
+        long start = System.nanoTime();
+        V value = null;
+        try {
+            value = loader.apply(key);
+            return value;
+        } finally {
+            depth[0]--;
+            loadNanos.add(System.nanoTime() - start);
+            loads.increment();
+            if (value == null) {
+                emptyLoads.increment();
+            }
+        }
+    }
+
+    private static final class Loading<V> {
+
+        private final CompletableFuture<V> future = new CompletableFuture<>();
+
+        private V await() {
+            try {
+                return future.get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return null;
+            } catch (ExecutionException ex) {
+                Throwable cause = ex.getCause();
+                if (cause instanceof RuntimeException runtime) {
+                    throw runtime;
+                }
+                throw (Error) cause;
+            }
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package ch.hearc.ig.guideresto.persistence.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * Cache borné à éviction W-TinyLFU.
+ * <ul>
+ *     <li>une petite fenêtre LRU (1 %) accueille les nouvelles entrées</li>
+ *     <li>l'entrée qui sort de la fenêtre n'entre dans la zone principale que si elle est plus
+ *     fréquente que la victime qu'elle remplacerait ({@link FrequencySketch})</li>
+ *     <li>la zone principale est un LRU segmenté : probation (20 %) puis protégée (80 %)
+ *     pour les entrées relues</li>
+ * </ul>
+ * Un parcours complet de table (findAll sur LIKES) ne chasse donc pas les entrées souvent relues.
+ * <p>
+ * Chaque entrée est un nœud chaîné dans la liste LRU de son segment et indexé par une
+ * {@link IntObjectMap} : un accès coûte une seule recherche, sans création d'Integer.
+ */
+public class TinyLfuCache<V> implements IntCache<V> {
+
+    private static final byte WINDOW = 0;
+    private static final byte PROBATION = 1;
+    private static final byte PROTECTED = 2;
+
+    private final int maximumSize;
+    private final int windowMax;
+    private final int protectedMax;
+    private final FrequencySketch sketch;
+
+    private final IntObjectMap<Node<V>> index;
+    private final AccessOrder<V> window = new AccessOrder<>();
+    private final AccessOrder<V> probation = new AccessOrder<>();
+    private final AccessOrder<V> protectedSegment = new AccessOrder<>();
+    private long evictions;
+
+    public TinyLfuCache(int maximumSize) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("maximumSize doit être >= 1");
+        }
+        this.maximumSize = maximumSize;
+        this.windowMax = Math.max(1, maximumSize / 100);
+        this.protectedMax = (maximumSize - windowMax) * 4 / 5;
+        this.sketch = new FrequencySketch(maximumSize);
+        this.index = new IntObjectMap<>(Math.min(maximumSize, 1024));
+    }
+
+    @Override
+    public synchronized V get(int key) {
+        sketch.increment(key);
+        Node<V> node = index.get(key);
+        if (node == null) {
+            return null;
+        }
+        switch (node.segment) {
+            case WINDOW:
+                window.moveToLast(node);
+                break;
+            case PROBATION:
+                // relue : promue en zone protégée
+                probation.remove(node);
+                node.segment = PROTECTED;
+                protectedSegment.addLast(node);
+                demoteProtectedOverflow();
+                break;
+            default:
+                protectedSegment.moveToLast(node);
+        }
+        return node.value;
+    }
+
+    @Override
+    public synchronized boolean containsKey(int key) {
+        return index.containsKey(key);
+    }
+
+    @Override
+    public synchronized void put(int key, V value) {
+        Node<V> node = index.get(key);
+        if (node != null) {
+            node.value = value;
+            segmentOf(node).moveToLast(node);
+            return;
+        }
+        sketch.increment(key);
+        node = new Node<>(key, value);
+        window.addLast(node);
+        index.put(key, node);
+        if (window.size > windowMax) {
+            evictFromWindow();
+        }
+    }
+
+    @Override
+    public synchronized V remove(int key) {
+        Node<V> node = index.remove(key);
+        if (node == null) {
+            return null;
+        }
+        segmentOf(node).remove(node);
+        return node.value;
+    }
+
+    @Override
+    public synchronized void clear() {
+        index.clear();
+        window.clear();
+        probation.clear();
+        protectedSegment.clear();
+    }
+
+    @Override
+    public synchronized int size() {
+        return index.size();
+    }
+
+    @Override
+    public synchronized Collection<V> values() {
+        Collection<V> values = new ArrayList<>(index.size());
+        window.collect(values);
+        probation.collect(values);
+        protectedSegment.collect(values);
+        return values;
+    }
+
+    @Override
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    @Override
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    /**
+     * La plus ancienne entrée de la fenêtre candidate à la zone principale.
+     */
+    private void evictFromWindow() {
+        Node<V> candidate = window.first();
+        window.remove(candidate);
+
+        if (probation.size + protectedSegment.size < maximumSize - windowMax) {
+            admit(candidate);
+            return;
+        }
+
+        AccessOrder<V> victimSegment = probation.size > 0 ? probation : protectedSegment;
+        if (victimSegment.size == 0) {
+            index.remove(candidate.key);
+            evictions++;
+            return;
+        }
+        Node<V> victim = victimSegment.first();
+        if (sketch.frequency(candidate.key) > sketch.frequency(victim.key)) {
+            victimSegment.remove(victim);
+            index.remove(victim.key);
+            admit(candidate);
+        } else {
+            index.remove(candidate.key);
+        }
+        evictions++;
+    }
+
+    private void admit(Node<V> node) {
+        node.segment = PROBATION;
+        probation.addLast(node);
+    }
+
+    private void demoteProtectedOverflow() {
+        while (protectedSegment.size > protectedMax) {
+            Node<V> eldest = protectedSegment.first();
+            protectedSegment.remove(eldest);
+            eldest.segment = PROBATION;
+            probation.addLast(eldest);
+        }
+    }
+
+    private AccessOrder<V> segmentOf(Node<V> node) {
+        switch (node.segment) {
+            case WINDOW:
+                return window;
+            case PROBATION:
+                return probation;
+            default:
+                return protectedSegment;
+        }
+    }
+
+    private static final class Node<V> {
+
+        private final int key;
+        private V value;
+        private byte segment = WINDOW;
+        private Node<V> prev;
+        private Node<V> next;
+
+        private Node(int key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Liste doublement chaînée des nœuds d'un segment, du moins récemment utilisé au plus récent.
+     */
+    private static final class AccessOrder<V> {
+
+        private final Node<V> head = new Node<>(0, null);
+        private int size;
+
+        private AccessOrder() {
+            head.prev = head;
+            head.next = head;
+        }
+
+        private Node<V> first() {
+            return head.next;
+        }
+
+        private void addLast(Node<V> node) {
+            node.prev = head.prev;
+            node.next = head;
+            head.prev.next = node;
+            head.prev = node;
+            size++;
+        }
+
+        private void remove(Node<V> node) {
+            node.prev.next = node.next;
+            node.next.prev = node.prev;
+            node.prev = null;
+            node.next = null;
+            size--;
+        }
+
+        private void moveToLast(Node<V> node) {
+            if (head.prev != node) {
+                remove(node);
+                addLast(node);
+            }
+        }
+
+        private void clear() {
+            head.prev = head;
+            head.next = head;
+            size = 0;
+        }
+
+        private void collect(Collection<V> values) {
+            for (Node<V> node = head.next; node != head; node = node.next) {
+                values.add(node.value);
+            }
+        }
+    }
+}
@@ -3,10 +3,13 @@ package ch.hearc.ig.guideresto.persistence.mapper;
 import ch.hearc.ig.guideresto.business.BasicEvaluation;
 import ch.hearc.ig.guideresto.business.Restaurant;
 import ch.hearc.ig.guideresto.persistence.AbstractMapper;
+import ch.hearc.ig.guideresto.persistence.BatchLoader;
+import ch.hearc.ig.guideresto.persistence.StatementRegistry;
 import java.sql.*;
 import java.util.HashSet;
 import java.util.Set;
-import static ch.hearc.ig.guideresto.persistence.ConnectionUtils.getConnection;
+import static ch.hearc.ig.guideresto.persistence.ConnectionUtils.getReadConnection;
+import static ch.hearc.ig.guideresto.persistence.TransactionManager.inTransaction;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import java.sql.*;
@@ -15,23 +18,42 @@ import java.util.*;
 public class BasicEvaluationMapper extends AbstractMapper<BasicEvaluation> {
 
     private static final Logger logger = LoggerFactory.getLogger(BasicEvaluationMapper.class);
-    private final Connection connection;
+    private static final String FIND_BY_ID = StatementRegistry.register("BasicEvaluation.findById",
+            "SELECT numero, date_eval, appreciation, adresse_ip, fk_rest FROM LIKES WHERE numero = ?");
+    private static final String FIND_ALL = StatementRegistry.register("BasicEvaluation.findAll",
+            "SELECT numero, date_eval, appreciation, adresse_ip, fk_rest FROM LIKES");
+    private static final String FIND_BY_IDS =
+            "SELECT numero, date_eval, appreciation, adresse_ip, fk_rest FROM LIKES WHERE numero IN";
+    private static final String CREATE = StatementRegistry.register("BasicEvaluation.create",
+            "INSERT INTO LIKES (date_eval, appreciation, adresse_ip, fk_rest) VALUES (?, ?, ?, ?)");
+    private static final String UPDATE = StatementRegistry.register("BasicEvaluation.update",
+            "UPDATE LIKES SET date_eval = ?, appreciation = ?, adresse_ip = ?, fk_rest = ? WHERE numero = ?");
+    private static final String DELETE_BY_ID = StatementRegistry.register("BasicEvaluation.deleteById",
+            "DELETE FROM LIKES WHERE numero = ?");
+    private static final String FIND_BY_RESTAURANT = StatementRegistry.register("BasicEvaluation.findByRestaurant",
+            "SELECT numero, date_eval, appreciation, adresse_ip, fk_rest FROM LIKES WHERE fk_rest = ?");
+    private static final String FIND_BY_IP_AND_REST = StatementRegistry.register("BasicEvaluation.findByIpAndRest",
+            "SELECT numero, date_eval, appreciation, adresse_ip, fk_rest FROM LIKES WHERE adresse_ip = ? AND fk_rest = ?");
+
     private final RestaurantMapper restaurantMapper;
-    private final Map<Integer, BasicEvaluation> identityMap = new HashMap<>();
 
     public BasicEvaluationMapper() {
-        this.connection = getConnection();
+        super("BasicEvaluation");
         this.restaurantMapper = new RestaurantMapper();
     }
 
     @Override
     public BasicEvaluation findById(int id) {
-        if (identityMap.containsKey(id)) {
-            return identityMap.get(id);
-        }
+        // Un seul chargement par identifiant, même si plusieurs threads le demandent
+        return findCached(id, this::loadById);
+    }
 
-        String sql = "SELECT numero, date_eval, appreciation, adresse_ip, fk_rest FROM LIKES WHERE numero = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+    /**
+     * Lit l'objet en base, appelé par le cache au premier accès à cet identifiant
+     */
+    private BasicEvaluation loadById(int id) {
+        try (Connection connection = getReadConnection();
+             PreparedStatement stmt = connection.prepareStatement(FIND_BY_ID)) {
             stmt.setInt(1, id);
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
@@ -43,7 +65,6 @@ public class BasicEvaluationMapper extends AbstractMapper<BasicEvaluation> {
                             "Y".equalsIgnoreCase(rs.getString("appreciation")),
                             rs.getString("adresse_ip")
                     );
-                    identityMap.put(eval.getId(), eval);
                     return eval;
                 }
             }
@@ -56,80 +77,102 @@ public class BasicEvaluationMapper extends AbstractMapper<BasicEvaluation> {
     @Override
     public Set<BasicEvaluation> findAll() {
         Set<BasicEvaluation> evaluations = new HashSet<>();
-        String sql = "SELECT numero, date_eval, appreciation, adresse_ip, fk_rest FROM LIKES";
-        try (PreparedStatement stmt = connection.prepareStatement(sql);
+        // Les restaurants sont lus ensemble après le parcours, pas un par ligne
+        BatchLoader batch = new BatchLoader();
+        try (Connection connection = getReadConnection();
+             PreparedStatement stmt = connection.prepareStatement(FIND_ALL);
              ResultSet rs = stmt.executeQuery()) {
             while (rs.next()) {
                 int id = rs.getInt("numero");
-                BasicEvaluation eval = identityMap.get(id);
+                BasicEvaluation eval = cache.get(id);
                 if (eval == null) {
-                    Restaurant restaurant = restaurantMapper.findById(rs.getInt("fk_rest"));
-                    eval = new BasicEvaluation(
-                            id,
-                            rs.getDate("date_eval"),
-                            restaurant,
-                            "Y".equalsIgnoreCase(rs.getString("appreciation")),
-                            rs.getString("adresse_ip")
-                    );
-                    identityMap.put(id, eval);
+                    eval = mapRow(rs, batch);
+                    cache.put(id, eval);
                 }
                 evaluations.add(eval);
             }
         } catch (SQLException ex) {
             logger.error("SQLException in findAll: {}", ex.getMessage());
         }
+        batch.dispatch();
         return evaluations;
     }
 
+    @Override
+    protected String getFindByIdsQuery() {
+        return FIND_BY_IDS;
+    }
+
+    @Override
+    protected String getStreamAllQuery() {
+        return FIND_ALL;
+    }
+
+    @Override
+    protected BasicEvaluation mapRow(ResultSet rs, BatchLoader batch) throws SQLException {
+        BasicEvaluation eval = new BasicEvaluation(
+                rs.getInt("numero"),
+                rs.getDate("date_eval"),
+                null,
+                "Y".equalsIgnoreCase(rs.getString("appreciation")),
+                rs.getString("adresse_ip")
+        );
+        batch.load(restaurantMapper, rs.getInt("fk_rest"), eval::setRestaurant);
+        return eval;
+    }
+
     @Override
     public BasicEvaluation create(BasicEvaluation eval) {
-        String sql = "INSERT INTO LIKES (date_eval, appreciation, adresse_ip, fk_rest) VALUES (?, ?, ?, ?)";
-        try (PreparedStatement stmt = connection.prepareStatement(sql, new String[]{"numero"})) {
-            stmt.setDate(1, new java.sql.Date(eval.getVisitDate().getTime()));
-            stmt.setString(2, eval.getLikeRestaurant() != null && eval.getLikeRestaurant() ? "Y" : "N");
-            stmt.setString(3, eval.getIpAddress());
-            stmt.setInt(4, eval.getRestaurant().getId());
-
-            int affectedRows = stmt.executeUpdate();
-            if (affectedRows == 0) throw new SQLException("Création échouée, aucune ligne insérée.");
-
-            try (ResultSet generatedKeys = stmt.getGeneratedKeys()) {
-                if (generatedKeys.next()) {
-                    eval.setId(generatedKeys.getInt(1));
-                    identityMap.put(eval.getId(), eval);
-                } else {
-                    throw new SQLException("Impossible de récupérer l'ID généré.");
-                }
-            }
+        try {
+            return inTransaction(connection -> {
+                try (PreparedStatement stmt = connection.prepareStatement(CREATE, new String[]{"numero"})) {
+                    stmt.setDate(1, new java.sql.Date(eval.getVisitDate().getTime()));
+                    stmt.setString(2, eval.getLikeRestaurant() != null && eval.getLikeRestaurant() ? "Y" : "N");
+                    stmt.setString(3, eval.getIpAddress());
+                    stmt.setInt(4, eval.getRestaurant().getId());
 
-            if (!connection.getAutoCommit()) connection.commit();
-            return eval;
+                    int affectedRows = stmt.executeUpdate();
+                    if (affectedRows == 0) throw new SQLException("Création échouée, aucune ligne insérée.");
 
+                    try (ResultSet generatedKeys = stmt.getGeneratedKeys()) {
+                        if (generatedKeys.next()) {
+                            eval.setId(generatedKeys.getInt(1));
+                            cache.put(eval.getId(), eval);
+                            publishWrite(eval.getId());
+                        } else {
+                            throw new SQLException("Impossible de récupérer l'ID généré.");
+                        }
+                    }
+                    return eval;
+                }
+            });
         } catch (SQLException e) {
             logger.error("Erreur create BasicEvaluation: {}", e.getMessage());
-            try { if (!connection.getAutoCommit()) connection.rollback(); } catch (SQLException r) { logger.error("Rollback failed: {}", r.getMessage()); }
             return null;
         }
     }
 
     @Override
     public boolean update(BasicEvaluation eval) {
-        String sql = "UPDATE LIKES SET date_eval = ?, appreciation = ?, adresse_ip = ?, fk_rest = ? WHERE numero = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setDate(1, new java.sql.Date(eval.getVisitDate().getTime()));
-            stmt.setString(2, eval.getLikeRestaurant() != null && eval.getLikeRestaurant() ? "Y" : "N");
-            stmt.setString(3, eval.getIpAddress());
-            stmt.setInt(4, eval.getRestaurant().getId());
-            stmt.setInt(5, eval.getId());
-
-            int rows = stmt.executeUpdate();
-            if (!connection.getAutoCommit()) connection.commit();
-            if (rows > 0) identityMap.put(eval.getId(), eval);
-            return rows > 0;
+        try {
+            return inTransaction(connection -> {
+                try (PreparedStatement stmt = connection.prepareStatement(UPDATE)) {
+                    stmt.setDate(1, new java.sql.Date(eval.getVisitDate().getTime()));
+                    stmt.setString(2, eval.getLikeRestaurant() != null && eval.getLikeRestaurant() ? "Y" : "N");
+                    stmt.setString(3, eval.getIpAddress());
+                    stmt.setInt(4, eval.getRestaurant().getId());
+                    stmt.setInt(5, eval.getId());
 
+                    int rows = stmt.executeUpdate();
+                    if (rows > 0) {
+                        cache.put(eval.getId(), eval);
+                        publishWrite(eval.getId());
+                    }
+                    return rows > 0;
+                }
+            });
         } catch (SQLException ex) {
             logger.error("SQLException in update: {}", ex.getMessage());
-            try { if (!connection.getAutoCommit()) connection.rollback(); } catch (SQLException r) { logger.error("Rollback failed: {}", r.getMessage()); }
             return false;
         }
     }
@@ -141,23 +184,27 @@ public class BasicEvaluationMapper extends AbstractMapper<BasicEvaluation> {
 
     @Override
     public boolean deleteById(int id) {
-        String sql = "DELETE FROM LIKES WHERE numero = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setInt(1, id);
-            int rows = stmt.executeUpdate();
-            if (!connection.getAutoCommit()) connection.commit();
-            if (rows > 0) identityMap.remove(id);
-            return rows > 0;
+        try {
+            return inTransaction(connection -> {
+                try (PreparedStatement stmt = connection.prepareStatement(DELETE_BY_ID)) {
+                    stmt.setInt(1, id);
+                    int rows = stmt.executeUpdate();
+                    if (rows > 0) {
+                        cache.remove(id);
+                        publishWrite(id);
+                    }
+                    return rows > 0;
+                }
+            });
         } catch (SQLException ex) {
             logger.error("SQLException in deleteById: {}", ex.getMessage());
-            try { if (!connection.getAutoCommit()) connection.rollback(); } catch (SQLException r) { logger.error("Rollback failed: {}", r.getMessage()); }
             return false;
         }
     }
 
     @Override
-    protected String getSequenceQuery() {
-        return "SELECT SEQ_EVAL.NEXTVAL FROM dual";
+    protected String getSequenceName() {
+        return "SEQ_EVAL";
     }
 
     @Override
@@ -170,15 +217,31 @@ public class BasicEvaluationMapper extends AbstractMapper<BasicEvaluation> {
         return "SELECT COUNT(*) FROM LIKES";
     }
 
+    @Override
+    protected String getIdsQuery() {
+        return "SELECT numero FROM LIKES";
+    }
+
     public Set<BasicEvaluation> findByRestaurant(Restaurant restaurant) {
+        try (Connection connection = getReadConnection()) {
+            return findByRestaurant(connection, restaurant);
+        } catch (SQLException ex) {
+            logger.error("Erreur findByRestaurant BasicEvaluation: {}", ex.getMessage());
+        }
+        return new HashSet<>();
+    }
+
+    /**
+     * @param connection la connexion de l'appelant (voir {@link RestaurantMapper#fetchDetail})
+     */
+    Set<BasicEvaluation> findByRestaurant(Connection connection, Restaurant restaurant) throws SQLException {
         Set<BasicEvaluation> evaluations = new HashSet<>();
-        String sql = "SELECT numero, date_eval, appreciation, adresse_ip, fk_rest FROM LIKES WHERE fk_rest = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        try (PreparedStatement stmt = connection.prepareStatement(FIND_BY_RESTAURANT)) {
             stmt.setInt(1, restaurant.getId());
             try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
                     int id = rs.getInt("numero");
-                    BasicEvaluation eval = identityMap.get(id);
+                    BasicEvaluation eval = cache.get(id);
                     if (eval == null) {
                         eval = new BasicEvaluation(
                                 id,
@@ -187,26 +250,24 @@ public class BasicEvaluationMapper extends AbstractMapper<BasicEvaluation> {
                                 "Y".equalsIgnoreCase(rs.getString("appreciation")),
                                 rs.getString("adresse_ip")
                         );
-                        identityMap.put(id, eval);
+                        cache.put(id, eval);
                     }
                     evaluations.add(eval);
                 }
             }
-        } catch (SQLException ex) {
-            logger.error("Erreur findByRestaurant BasicEvaluation: {}", ex.getMessage());
         }
         return evaluations;
     }
 
     public BasicEvaluation findByIpAndRest(String ip, int restaurantId) throws SQLException {
-        String sql = "SELECT numero, date_eval, appreciation, adresse_ip, fk_rest FROM LIKES WHERE adresse_ip = ? AND fk_rest = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        try (Connection connection = getReadConnection();
+             PreparedStatement stmt = connection.prepareStatement(FIND_BY_IP_AND_REST)) {
             stmt.setString(1, ip);
             stmt.setInt(2, restaurantId);
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
                     int id = rs.getInt("numero");
-                    if (identityMap.containsKey(id)) return identityMap.get(id);
+                    if (cache.containsKey(id)) return cache.get(id);
 
                     BasicEvaluation eval = new BasicEvaluation();
                     eval.setId(id);
@@ -214,7 +275,7 @@ public class BasicEvaluationMapper extends AbstractMapper<BasicEvaluation> {
                     eval.setLikeRestaurant("Y".equalsIgnoreCase(rs.getString("appreciation")));
                     eval.setIpAddress(rs.getString("adresse_ip"));
                     eval.setRestaurant(restaurantMapper.findById(rs.getInt("fk_rest")));
-                    identityMap.put(id, eval);
+                    cache.put(id, eval);
                     return eval;
                 }
             }
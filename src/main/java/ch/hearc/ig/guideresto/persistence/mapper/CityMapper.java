@@ -2,10 +2,14 @@ package ch.hearc.ig.guideresto.persistence.mapper;
 
 import ch.hearc.ig.guideresto.business.City;
 import ch.hearc.ig.guideresto.persistence.AbstractMapper;
+import ch.hearc.ig.guideresto.persistence.StatementRegistry;
+import ch.hearc.ig.guideresto.persistence.cache.InvalidationBus;
+import ch.hearc.ig.guideresto.persistence.cache.QueryCache;
 import java.sql.*;
 import java.util.HashSet;
 import java.util.Set;
-import static ch.hearc.ig.guideresto.persistence.ConnectionUtils.getConnection;
+import static ch.hearc.ig.guideresto.persistence.ConnectionUtils.getReadConnection;
+import static ch.hearc.ig.guideresto.persistence.TransactionManager.inTransaction;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import java.sql.*;
@@ -14,23 +18,53 @@ import java.util.*;
 public class CityMapper extends AbstractMapper<City> {
 
     private static final Logger logger = LoggerFactory.getLogger(CityMapper.class);
-    private final Connection connection;
-    private final Map<Integer, City> identityMap = new HashMap<>();
+    private static final String FIND_BY_ID = StatementRegistry.register("City.findById",
+            "SELECT numero, code_postal, nom_ville FROM VILLES WHERE numero = ?");
+    private static final String FIND_ALL = StatementRegistry.register("City.findAll",
+            "SELECT numero, code_postal, nom_ville FROM VILLES");
+    private static final String CREATE = StatementRegistry.register("City.create",
+            "BEGIN INSERT INTO VILLES (code_postal, nom_ville) " +
+                    "VALUES (?, ?) RETURNING numero INTO ?; END;");
+    private static final String UPDATE = StatementRegistry.register("City.update",
+            "UPDATE VILLES SET code_postal = ?, nom_ville = ? WHERE numero = ?");
+    private static final String DELETE_BY_ID = StatementRegistry.register("City.deleteById",
+            "DELETE FROM VILLES WHERE numero = ?");
+    private static final String FIND_BY_NAME = StatementRegistry.register("City.findByName",
+            "SELECT numero, code_postal, nom_ville FROM VILLES WHERE nom_ville = ?");
+    private static final String FIND_BY_ZIP_CODE = StatementRegistry.register("City.findByZipCode",
+            "SELECT numero, code_postal, nom_ville FROM VILLES WHERE code_postal = ?");
+    private static final String EXISTS_BY_NAME = StatementRegistry.register("City.existsByName",
+            "SELECT 1 FROM VILLES WHERE nom_ville = ?");
+
+    static {
+        // 🔹 Ville écrite par une autre instance : recherches et données de référence périmées
+        InvalidationBus.getInstance().addListener("City", id -> {
+            QueryCache.getInstance().invalidate("VILLES");
+            ReferenceData.invalidate();
+        });
+    }
 
     public CityMapper() {
-        this.connection = getConnection();
+        super("City");
     }
 
     @Override
     public City findById(int id) {
-        // Vérifie le cache d'abord
-        if (identityMap.containsKey(id)) {
-            return identityMap.get(id);
+        ReferenceData.Snapshot reference = ReferenceData.snapshot();
+        City known = reference == null ? null : reference.getCity(id);
+        if (known != null) {
+            return known;
         }
+        // Un seul chargement par identifiant, même si plusieurs threads le demandent
+        return findCached(id, this::loadById);
+    }
 
-        String sql = "SELECT numero, code_postal, nom_ville FROM VILLES WHERE numero = ?";
-
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+    /**
+     * Lit l'objet en base, appelé par le cache au premier accès à cet identifiant
+     */
+    private City loadById(int id) {
+        try (Connection connection = getReadConnection();
+             PreparedStatement stmt = connection.prepareStatement(FIND_BY_ID)) {
             stmt.setInt(1, id);
 
             try (ResultSet rs = stmt.executeQuery()) {
@@ -41,7 +75,6 @@ public class CityMapper extends AbstractMapper<City> {
                             rs.getString("nom_ville")
                     );
 
-                    identityMap.put(id, city);
                     return city;
                 }
             }
@@ -52,22 +85,52 @@ public class CityMapper extends AbstractMapper<City> {
         return null;
     }
 
+    /**
+     * Ville lue dans une jointure d'une autre table : l'objet déjà connu (données de référence
+     * ou cache) est repris, sinon il est créé à partir des colonnes lues et mis en cache.
+     */
+    City resolve(int id, String zipCode, String cityName) {
+        ReferenceData.Snapshot reference = ReferenceData.snapshot();
+        City known = reference == null ? null : reference.getCity(id);
+        if (known != null) {
+            return known;
+        }
+        City city = cache.get(id);
+        if (city == null) {
+            city = new City(id, zipCode, cityName);
+            cache.put(id, city);
+        }
+        return city;
+    }
+
     @Override
     public Set<City> findAll() {
+        // 🔹 Servi depuis les données de référence en mémoire si elles sont chargées
+        ReferenceData.Snapshot reference = ReferenceData.snapshot();
+        if (reference != null) {
+            return new HashSet<>(reference.getCities());
+        }
+        return loadAll();
+    }
+
+    /**
+     * Lit toute la table, sans passer par les données de référence (voir {@link ReferenceData})
+     */
+    Set<City> loadAll() {
         Set<City> cities = new HashSet<>();
-        String sql = "SELECT numero, code_postal, nom_ville FROM VILLES";
-        try (PreparedStatement stmt = connection.prepareStatement(sql);
+        try (Connection connection = getReadConnection();
+             PreparedStatement stmt = connection.prepareStatement(FIND_ALL);
              ResultSet rs = stmt.executeQuery()) {
             while (rs.next()) {
                 int id = rs.getInt("numero");
-                City city = identityMap.get(id);
+                City city = cache.get(id);
                 if (city == null) {
                     city = new City(
                             id,
                             rs.getString("code_postal"),
                             rs.getString("nom_ville")
                     );
-                    identityMap.put(id, city);
+                    cache.put(id, city);
                 }
                 cities.add(city);
             }
@@ -79,50 +142,50 @@ public class CityMapper extends AbstractMapper<City> {
 
     @Override
     public City create(City city) {
-        String sql = "BEGIN INSERT INTO VILLES (code_postal, nom_ville) " +
-                "VALUES (?, ?) RETURNING numero INTO ?; END;";
-
-        try (CallableStatement stmt = connection.prepareCall(sql)) {
-            stmt.setString(1, city.getZipCode());
-            stmt.setString(2, city.getCityName());
-            stmt.registerOutParameter(3, Types.INTEGER);
-
-            stmt.executeUpdate();
-            int generatedId = stmt.getInt(3);
-            city.setId(generatedId);
-            identityMap.put(generatedId, city);
-
-            if (!connection.getAutoCommit()) connection.commit();
-            return city;
-
-        } catch (SQLException e) {
-            if (e.getErrorCode() == 1) { // doublon
-                try {
-                    return findByName(city.getCityName());
-                } catch (SQLException ex) {
-                    logger.error("Erreur findByName après doublon: {}", ex.getMessage());
+        try {
+            return inTransaction(connection -> {
+                try (CallableStatement stmt = connection.prepareCall(CREATE)) {
+                    stmt.setString(1, city.getZipCode());
+                    stmt.setString(2, city.getCityName());
+                    stmt.registerOutParameter(3, Types.INTEGER);
+
+                    stmt.executeUpdate();
+                    int generatedId = stmt.getInt(3);
+                    city.setId(generatedId);
+                    cache.put(generatedId, city);
+                    QueryCache.getInstance().invalidate("VILLES");
+                    ReferenceData.invalidate();
+                    publishWrite(city.getId());
+                    return city;
+                } catch (SQLException e) {
+                    if (e.getErrorCode() == 1) { // doublon : seule l'instruction est annulée par Oracle
+                        return findByName(city.getCityName());
+                    }
+                    throw e;
                 }
-            } else {
-                logger.error("Erreur create City: {}", e.getMessage());
-            }
-            try { connection.rollback(); } catch (SQLException r) {
-                logger.error("Rollback failed: {}", r.getMessage());
-            }
+            });
+        } catch (SQLException e) {
+            logger.error("Erreur create City: {}", e.getMessage());
             return null;
         }
     }
 
     @Override
     public boolean update(City city) {
-        String sql = "UPDATE VILLES SET code_postal = ?, nom_ville = ? WHERE numero = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setString(1, city.getZipCode());
-            stmt.setString(2, city.getCityName());
-            stmt.setInt(3, city.getId());
-            int updated = stmt.executeUpdate();
-            if (!connection.getAutoCommit()) connection.commit();
-            if (updated > 0) identityMap.put(city.getId(), city);
-            return updated > 0;
+        try {
+            return inTransaction(connection -> {
+                try (PreparedStatement stmt = connection.prepareStatement(UPDATE)) {
+                    stmt.setString(1, city.getZipCode());
+                    stmt.setString(2, city.getCityName());
+                    stmt.setInt(3, city.getId());
+                    int updated = stmt.executeUpdate();
+                    if (updated > 0) cache.put(city.getId(), city);
+                    QueryCache.getInstance().invalidate("VILLES");
+                    ReferenceData.invalidate();
+                    publishWrite(city.getId());
+                    return updated > 0;
+                }
+            });
         } catch (SQLException e) {
             logger.error("update SQLException: {}", e.getMessage());
             return false;
@@ -136,13 +199,18 @@ public class CityMapper extends AbstractMapper<City> {
 
     @Override
     public boolean deleteById(int id) {
-        String sql = "DELETE FROM VILLES WHERE numero = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setInt(1, id);
-            int deleted = stmt.executeUpdate();
-            if (!connection.getAutoCommit()) connection.commit();
-            if (deleted > 0) identityMap.remove(id);
-            return deleted > 0;
+        try {
+            return inTransaction(connection -> {
+                try (PreparedStatement stmt = connection.prepareStatement(DELETE_BY_ID)) {
+                    stmt.setInt(1, id);
+                    int deleted = stmt.executeUpdate();
+                    if (deleted > 0) cache.remove(id);
+                    QueryCache.getInstance().invalidate("VILLES");
+                    ReferenceData.invalidate();
+                    publishWrite(id);
+                    return deleted > 0;
+                }
+            });
         } catch (SQLException e) {
             logger.error("deleteById SQLException: {}", e.getMessage());
             return false;
@@ -150,8 +218,8 @@ public class CityMapper extends AbstractMapper<City> {
     }
 
     @Override
-    protected String getSequenceQuery() {
-        return "SELECT SEQ_VILLES.NEXTVAL FROM dual";
+    protected String getSequenceName() {
+        return "SEQ_VILLES";
     }
 
     @Override
@@ -165,16 +233,21 @@ public class CityMapper extends AbstractMapper<City> {
     }
 
     public City findByName(String name) throws SQLException {
-        // Vérifie d'abord si la ville est dans le cache
-        for (City cachedCity : identityMap.values()) {
+        ReferenceData.Snapshot reference = ReferenceData.snapshot();
+        City known = reference == null ? null : reference.findCityByName(name);
+        if (known != null) {
+            return known;
+        }
+
+        // Vérifie ensuite si la ville est dans le cache
+        for (City cachedCity : cache.values()) {
             if (cachedCity.getCityName().equalsIgnoreCase(name)) {
                 return cachedCity;
             }
         }
 
-        String sql = "SELECT numero, code_postal, nom_ville FROM VILLES WHERE nom_ville = ?";
-
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        try (Connection connection = getReadConnection();
+             PreparedStatement stmt = connection.prepareStatement(FIND_BY_NAME)) {
             stmt.setString(1, name);
 
             try (ResultSet rs = stmt.executeQuery()) {
@@ -182,7 +255,7 @@ public class CityMapper extends AbstractMapper<City> {
                     int id = rs.getInt("numero");
 
                     // Vérifie encore le cache au cas où
-                    if (identityMap.containsKey(id)) return identityMap.get(id);
+                    if (cache.containsKey(id)) return cache.get(id);
 
                     City city = new City(
                             id,
@@ -190,7 +263,7 @@ public class CityMapper extends AbstractMapper<City> {
                             rs.getString("nom_ville")
                     );
 
-                    identityMap.put(id, city);
+                    cache.put(id, city);
                     return city;
                 }
             }
@@ -203,19 +276,25 @@ public class CityMapper extends AbstractMapper<City> {
     }
 
     public City findByZipCode(String zipCode) throws SQLException {
-        String sql = "SELECT numero, code_postal, nom_ville FROM VILLES WHERE code_postal = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        ReferenceData.Snapshot reference = ReferenceData.snapshot();
+        City known = reference == null ? null : reference.findCityByZipCode(zipCode);
+        if (known != null) {
+            return known;
+        }
+
+        try (Connection connection = getReadConnection();
+             PreparedStatement stmt = connection.prepareStatement(FIND_BY_ZIP_CODE)) {
             stmt.setString(1, zipCode);
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
                     int id = rs.getInt("numero");
-                    if (identityMap.containsKey(id)) return identityMap.get(id);
+                    if (cache.containsKey(id)) return cache.get(id);
                     City city = new City(
                             id,
                             rs.getString("code_postal"),
                             rs.getString("nom_ville")
                     );
-                    identityMap.put(id, city);
+                    cache.put(id, city);
                     return city;
                 }
             }
@@ -224,8 +303,8 @@ public class CityMapper extends AbstractMapper<City> {
     }
 
     public boolean existsByName(String name) throws SQLException {
-        String sql = "SELECT 1 FROM VILLES WHERE nom_ville = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        try (Connection connection = getReadConnection();
+             PreparedStatement stmt = connection.prepareStatement(EXISTS_BY_NAME)) {
             stmt.setString(1, name);
             try (ResultSet rs = stmt.executeQuery()) {
                 return rs.next();
@@ -1,53 +1,87 @@
 package ch.hearc.ig.guideresto.persistence.mapper;
 
 import ch.hearc.ig.guideresto.business.CompleteEvaluation;
+import ch.hearc.ig.guideresto.business.Grade;
 import ch.hearc.ig.guideresto.business.Restaurant;
 import ch.hearc.ig.guideresto.persistence.AbstractMapper;
+import ch.hearc.ig.guideresto.persistence.BatchLoader;
+import ch.hearc.ig.guideresto.persistence.LobLoader;
+import ch.hearc.ig.guideresto.persistence.StatementRegistry;
 import java.sql.*;
 import java.util.Set;
 import java.util.LinkedHashSet;
-import static ch.hearc.ig.guideresto.persistence.ConnectionUtils.getConnection;
+import static ch.hearc.ig.guideresto.persistence.ConnectionUtils.getReadConnection;
+import static ch.hearc.ig.guideresto.persistence.TransactionManager.inTransaction;
 import java.sql.*;
 import java.util.*;
 
 public class CompleteEvaluationMapper extends AbstractMapper<CompleteEvaluation> {
 
-    private static final Map<Integer, CompleteEvaluation> identityMap = new HashMap<>();
-    private final Connection connection;
+    /** Les listes ne lisent pas le commentaire (CLOB), il est chargé au premier accès */
+    private static final LobLoader comments =
+            new LobLoader("CompleteEvaluation.comment", "COMMENTAIRES", "numero", "commentaire");
+    private static final String FIND_BY_ID = StatementRegistry.register("CompleteEvaluation.findById",
+            "SELECT numero, date_eval, commentaire, nom_utilisateur, fk_rest FROM COMMENTAIRES WHERE numero = ?");
+    private static final String FIND_ALL = StatementRegistry.register("CompleteEvaluation.findAll",
+            "SELECT numero, date_eval, nom_utilisateur, fk_rest FROM COMMENTAIRES");
+    private static final String FIND_BY_IDS =
+            "SELECT numero, date_eval, nom_utilisateur, fk_rest FROM COMMENTAIRES WHERE numero IN";
+    private static final String CREATE = StatementRegistry.register("CompleteEvaluation.create",
+            "BEGIN INSERT INTO COMMENTAIRES (date_eval, commentaire, nom_utilisateur, fk_rest) " +
+                    "VALUES (?, ?, ?, ?) RETURNING numero INTO ?; END;");
+    private static final String INSERT = StatementRegistry.register("CompleteEvaluation.insert",
+            "INSERT INTO COMMENTAIRES (numero, date_eval, commentaire, nom_utilisateur, fk_rest) VALUES (?, ?, ?, ?, ?)");
+    private static final String UPDATE = StatementRegistry.register("CompleteEvaluation.update",
+            "UPDATE COMMENTAIRES SET date_eval = ?, commentaire = ?, nom_utilisateur = ?, fk_rest = ? WHERE numero = ?");
+    private static final String DELETE_NOTES = StatementRegistry.register("CompleteEvaluation.deleteNotes",
+            "DELETE FROM NOTES WHERE fk_comm = ?");
+    private static final String DELETE_COMMENT = StatementRegistry.register("CompleteEvaluation.deleteComment",
+            "DELETE FROM COMMENTAIRES WHERE numero = ?");
+    private static final String FIND_BY_RESTAURANT = StatementRegistry.register("CompleteEvaluation.findByRestaurant",
+            "SELECT numero, date_eval, nom_utilisateur FROM COMMENTAIRES WHERE fk_rest = ?");
+    private static final String FIND_DETAIL_BY_RESTAURANT = StatementRegistry.register("CompleteEvaluation.findDetailByRestaurant",
+            "SELECT numero, date_eval, commentaire, nom_utilisateur FROM COMMENTAIRES WHERE fk_rest = ?");
+    private static final String FIND_BY_USER_AND_REST = StatementRegistry.register("CompleteEvaluation.findByUserAndRest",
+            "SELECT numero, date_eval, commentaire, nom_utilisateur, fk_rest " +
+                    "FROM COMMENTAIRES WHERE nom_utilisateur = ? AND fk_rest = ?");
+
     private RestaurantMapper restaurantMapper;
     private GradeMapper gradeMapper;
 
-    public CompleteEvaluationMapper() {
-        this.connection = getConnection();
-    }
-
     public CompleteEvaluationMapper(RestaurantMapper rm) {
-        this.connection = getConnection();
-        this.restaurantMapper = rm;
-        this.gradeMapper = new GradeMapper();
+        this(rm, new GradeMapper());
     }
 
+    /**
+     * Pas de constructeur sans argument : findAll, streamAll et findByRestaurant ont besoin des
+     * deux mappers.
+     * @throws IllegalArgumentException si l'un des mappers est null
+     */
     public CompleteEvaluationMapper(RestaurantMapper restaurantMapper, GradeMapper gradeMapper) {
-        this.connection = getConnection();
-        this.restaurantMapper = restaurantMapper;
-        this.gradeMapper = gradeMapper;
+        super("CompleteEvaluation");
+        setDependencies(restaurantMapper, gradeMapper);
     }
 
     public void setDependencies(RestaurantMapper restaurantMapper, GradeMapper gradeMapper) {
+        if (restaurantMapper == null || gradeMapper == null) {
+            throw new IllegalArgumentException("CompleteEvaluationMapper : mapper de restaurants et mapper de notes requis");
+        }
         this.restaurantMapper = restaurantMapper;
         this.gradeMapper = gradeMapper;
     }
 
     @Override
     public CompleteEvaluation findById(int id) {
-        // ✅ Vérifie d'abord le cache
-        if (identityMap.containsKey(id)) {
-            System.out.println("⚡ Évaluation " + id + " récupérée depuis l'Identity Map");
-            return identityMap.get(id);
-        }
+        // ✅ Cache d'abord, un seul chargement par identifiant même si plusieurs threads le demandent
+        return findCached(id, this::loadById);
+    }
 
-        String sql = "SELECT numero, date_eval, commentaire, nom_utilisateur, fk_rest FROM COMMENTAIRES WHERE numero = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+    /**
+     * Lit l'objet en base, appelé par le cache au premier accès à cet identifiant
+     */
+    private CompleteEvaluation loadById(int id) {
+        try (Connection connection = getReadConnection();
+             PreparedStatement stmt = connection.prepareStatement(FIND_BY_ID)) {
             stmt.setInt(1, id);
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
@@ -60,8 +94,8 @@ public class CompleteEvaluationMapper extends AbstractMapper<CompleteEvaluation>
                             rs.getString("nom_utilisateur")
                     );
 
-                    // Ajout au cache
-                    identityMap.put(eval.getId(), eval);
+                    // Ajout au cache avant les notes, qui référencent cette évaluation
+                    cache.put(eval.getId(), eval);
 
                     // 🔹 Charge aussi les notes associées
                     eval.getGrades().addAll(gradeMapper.findByEvaluation(eval));
@@ -78,29 +112,19 @@ public class CompleteEvaluationMapper extends AbstractMapper<CompleteEvaluation>
     @Override
     public Set<CompleteEvaluation> findAll() {
         Set<CompleteEvaluation> evaluations = new LinkedHashSet<>();
-        String sql = "SELECT numero, date_eval, commentaire, nom_utilisateur, fk_rest FROM COMMENTAIRES";
+        // 🔹 Les restaurants des évaluations sont lus ensemble à la fin, pas un par ligne
+        BatchLoader batch = new BatchLoader();
 
-        try (PreparedStatement stmt = connection.prepareStatement(sql);
+        try (Connection connection = getReadConnection();
+             PreparedStatement stmt = connection.prepareStatement(FIND_ALL);
              ResultSet rs = stmt.executeQuery()) {
             while (rs.next()) {
                 int id = rs.getInt("numero");
-                CompleteEvaluation eval = identityMap.get(id);
+                CompleteEvaluation eval = cache.get(id);
 
                 if (eval == null) {
-                    Restaurant restaurant = restaurantMapper.findById(rs.getInt("fk_rest"));
-                    eval = new CompleteEvaluation(
-                            id,
-                            rs.getDate("date_eval"),
-                            restaurant,
-                            rs.getString("commentaire"),
-                            rs.getString("nom_utilisateur")
-                    );
-                    identityMap.put(id, eval);
-                }
-
-                // 🔹 Lazy-load des notes seulement si besoin
-                if (eval.getGrades().isEmpty()) {
-                    eval.getGrades().addAll(gradeMapper.findByEvaluation(eval));
+                    eval = mapRow(rs, batch);
+                    cache.put(id, eval);
                 }
 
                 evaluations.add(eval);
@@ -108,74 +132,115 @@ public class CompleteEvaluationMapper extends AbstractMapper<CompleteEvaluation>
         } catch (SQLException e) {
             logger.error("Erreur lors du findAll : {}", e.getMessage());
         }
+        // 🔹 Notes de toutes les évaluations qui n'ont pas encore les leurs, en une requête
+        gradeMapper.loadByEvaluations(evaluations);
+        batch.dispatch();
         return evaluations;
     }
 
     @Override
-    public CompleteEvaluation create(CompleteEvaluation evaluation) {
-        String sql = "BEGIN INSERT INTO COMMENTAIRES (date_eval, commentaire, nom_utilisateur, fk_rest) " +
-                "VALUES (?, ?, ?, ?) RETURNING numero INTO ?; END;";
-        try (CallableStatement stmt = connection.prepareCall(sql)) {
-
-            stmt.setDate(1, new java.sql.Date(evaluation.getVisitDate().getTime()));
-            stmt.setString(2, evaluation.getComment());
-            stmt.setString(3, evaluation.getUsername());
-            stmt.setInt(4, evaluation.getRestaurant().getId());
-            stmt.registerOutParameter(5, java.sql.Types.INTEGER);
-
-            stmt.executeUpdate();
+    protected String getFindByIdsQuery() {
+        return FIND_BY_IDS;
+    }
 
-            int generatedId = stmt.getInt(5);
-            evaluation.setId(generatedId);
+    @Override
+    protected String getStreamAllQuery() {
+        return FIND_ALL;
+    }
 
-            // ✅ Ajout dans le cache
-            identityMap.put(generatedId, evaluation);
+    /**
+     * Les notes des évaluations lues par paquet sont chargées ensemble
+     */
+    @Override
+    protected void loadCollections(Collection<CompleteEvaluation> evaluations, boolean addToCache) {
+        gradeMapper.loadByEvaluations(evaluations, addToCache);
+    }
 
-            if (!connection.getAutoCommit()) connection.commit();
+    /**
+     * Évaluation d'une ligne de FIND_ALL ou FIND_BY_IDS, sans son commentaire (chargé au premier
+     * accès) ni ses notes ; son restaurant est demandé à batch
+     */
+    @Override
+    protected CompleteEvaluation mapRow(ResultSet rs, BatchLoader batch) throws SQLException {
+        int id = rs.getInt("numero");
+        CompleteEvaluation eval = new CompleteEvaluation(
+                id,
+                rs.getDate("date_eval"),
+                null,
+                null,
+                rs.getString("nom_utilisateur")
+        );
+        eval.setCommentLoader(() -> comments.load(id));
+        batch.load(restaurantMapper, rs.getInt("fk_rest"), eval::setRestaurant);
+        return eval;
+    }
 
-            return evaluation;
+    @Override
+    public CompleteEvaluation create(CompleteEvaluation evaluation) {
+        try {
+            return inTransaction(connection -> {
+                try (CallableStatement stmt = connection.prepareCall(CREATE)) {
+                    stmt.setDate(1, new java.sql.Date(evaluation.getVisitDate().getTime()));
+                    stmt.setString(2, evaluation.getComment());
+                    stmt.setString(3, evaluation.getUsername());
+                    stmt.setInt(4, evaluation.getRestaurant().getId());
+                    stmt.registerOutParameter(5, java.sql.Types.INTEGER);
+
+                    stmt.executeUpdate();
+
+                    int generatedId = stmt.getInt(5);
+                    evaluation.setId(generatedId);
+
+                    // 🔹 Les notes pas encore enregistrées, en un seul batch
+                    if (gradeMapper != null) {
+                        List<Grade> newGrades = new ArrayList<>();
+                        for (Grade grade : evaluation.getGrades()) {
+                            if (grade.getId() == null) {
+                                newGrades.add(grade);
+                            }
+                        }
+                        if (!gradeMapper.createAll(newGrades)) {
+                            throw new SQLException("Insertion des notes de l'évaluation impossible");
+                        }
+                    }
 
-        } catch (SQLException e) {
-            if (e.getErrorCode() == 1) {
-                try {
-                    return findByUserAndRest(evaluation.getUsername(), evaluation.getRestaurant().getId());
-                } catch (SQLException ex) {
-                    logger.error("Erreur findByUserAndRest après doublon: {}", ex.getMessage());
+                    // ✅ Ajout dans le cache
+                    cache.put(generatedId, evaluation);
+                    publishWrite(generatedId);
+                    return evaluation;
+                } catch (SQLException e) {
+                    if (e.getErrorCode() == 1) { // doublon
+                        return findByUserAndRest(evaluation.getUsername(), evaluation.getRestaurant().getId());
+                    }
+                    throw e;
                 }
-            } else {
-                logger.error("Erreur create CompleteEvaluation: {}", e.getMessage());
-            }
-
-            try {
-                connection.rollback();
-            } catch (SQLException r) {
-                logger.error("Rollback failed: {}", r.getMessage());
-            }
-
+            });
+        } catch (SQLException e) {
+            logger.error("Erreur create CompleteEvaluation: {}", e.getMessage());
             return null;
         }
     }
 
     @Override
     public boolean update(CompleteEvaluation evaluation) {
-        String sql = "UPDATE COMMENTAIRES SET date_eval = ?, commentaire = ?, nom_utilisateur = ?, fk_rest = ? WHERE numero = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setDate(1, new java.sql.Date(evaluation.getVisitDate().getTime()));
-            stmt.setString(2, evaluation.getComment());
-            stmt.setString(3, evaluation.getUsername());
-            stmt.setInt(4, evaluation.getRestaurant().getId());
-            stmt.setInt(5, evaluation.getId());
-
-            int rows = stmt.executeUpdate();
-
-            if (!connection.getAutoCommit()) connection.commit();
-
-            if (rows > 0) {
-                // ✅ Mise à jour du cache
-                identityMap.put(evaluation.getId(), evaluation);
-            }
-
-            return rows > 0;
+        try {
+            return inTransaction(connection -> {
+                try (PreparedStatement stmt = connection.prepareStatement(UPDATE)) {
+                    stmt.setDate(1, new java.sql.Date(evaluation.getVisitDate().getTime()));
+                    stmt.setString(2, evaluation.getComment());
+                    stmt.setString(3, evaluation.getUsername());
+                    stmt.setInt(4, evaluation.getRestaurant().getId());
+                    stmt.setInt(5, evaluation.getId());
+
+                    int rows = stmt.executeUpdate();
+                    if (rows > 0) {
+                        // ✅ Mise à jour du cache
+                        cache.put(evaluation.getId(), evaluation);
+                        publishWrite(evaluation.getId());
+                    }
+                    return rows > 0;
+                }
+            });
         } catch (SQLException e) {
             logger.error("Erreur update CompleteEvaluation : {}", e.getMessage());
             return false;
@@ -190,42 +255,88 @@ public class CompleteEvaluationMapper extends AbstractMapper<CompleteEvaluation>
     @Override
     public boolean deleteById(int id) {
         try {
-            // Supprimer d'abord les notes liées
-            String deleteNotesSql = "DELETE FROM NOTES WHERE fk_comm = ?";
-            try (PreparedStatement stmt = connection.prepareStatement(deleteNotesSql)) {
-                stmt.setInt(1, id);
-                stmt.executeUpdate();
-            }
-
-            // Supprimer le commentaire
-            String deleteCommentSql = "DELETE FROM COMMENTAIRES WHERE numero = ?";
-            try (PreparedStatement stmt = connection.prepareStatement(deleteCommentSql)) {
-                stmt.setInt(1, id);
-                int deleted = stmt.executeUpdate();
-
-                if (!connection.getAutoCommit()) connection.commit();
+            return inTransaction(connection -> {
+                // Supprimer d'abord les notes liées
+                try (PreparedStatement stmt = connection.prepareStatement(DELETE_NOTES)) {
+                    stmt.setInt(1, id);
+                    stmt.executeUpdate();
+                }
 
-                if (deleted > 0) {
-                    identityMap.remove(id);
+                // Supprimer le commentaire
+                try (PreparedStatement stmt = connection.prepareStatement(DELETE_COMMENT)) {
+                    stmt.setInt(1, id);
+                    int deleted = stmt.executeUpdate();
+                    if (deleted > 0) {
+                        cache.remove(id);
+                        publishWrite(id);
+                    }
+                    return deleted > 0;
                 }
+            });
+        } catch (SQLException ex) {
+            logger.error("Erreur deleteById CompleteEvaluation: {}", ex.getMessage());
+            return false;
+        }
+    }
 
-                return deleted > 0;
+    @Override
+    protected void insertBatch(Connection connection, List<CompleteEvaluation> evaluations) throws SQLException {
+        int[] ids = allocateIds(connection, evaluations.size());
+        try (PreparedStatement stmt = connection.prepareStatement(INSERT)) {
+            for (int i = 0; i < evaluations.size(); i++) {
+                CompleteEvaluation evaluation = evaluations.get(i);
+                evaluation.setId(ids[i]);
+                stmt.setInt(1, ids[i]);
+                stmt.setDate(2, new java.sql.Date(evaluation.getVisitDate().getTime()));
+                stmt.setString(3, evaluation.getComment());
+                stmt.setString(4, evaluation.getUsername());
+                stmt.setInt(5, evaluation.getRestaurant().getId());
+                stmt.addBatch();
             }
+            stmt.executeBatch();
+        }
+        publishWrites(evaluations);
+    }
 
-        } catch (SQLException ex) {
-            logger.error("Erreur deleteById CompleteEvaluation: {}", ex.getMessage());
-            try {
-                if (!connection.getAutoCommit()) connection.rollback();
-            } catch (SQLException rollbackEx) {
-                logger.error("Rollback échoué : {}", rollbackEx.getMessage());
+    @Override
+    protected void updateBatch(Connection connection, List<CompleteEvaluation> evaluations) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement(UPDATE)) {
+            for (CompleteEvaluation evaluation : evaluations) {
+                stmt.setDate(1, new java.sql.Date(evaluation.getVisitDate().getTime()));
+                stmt.setString(2, evaluation.getComment());
+                stmt.setString(3, evaluation.getUsername());
+                stmt.setInt(4, evaluation.getRestaurant().getId());
+                stmt.setInt(5, evaluation.getId());
+                stmt.addBatch();
             }
-            return false;
+            checkBatch(stmt.executeBatch(), "Mise à jour CompleteEvaluation");
         }
+        publishWrites(evaluations);
     }
 
     @Override
-    protected String getSequenceQuery() {
-        return "SELECT SEQ_EVAL.NEXTVAL FROM dual";
+    protected void deleteBatch(Connection connection, List<CompleteEvaluation> evaluations) throws SQLException {
+        // 🔹 Les notes d'abord, puis les commentaires
+        try (PreparedStatement stmt = connection.prepareStatement(DELETE_NOTES)) {
+            for (CompleteEvaluation evaluation : evaluations) {
+                stmt.setInt(1, evaluation.getId());
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+        try (PreparedStatement stmt = connection.prepareStatement(DELETE_COMMENT)) {
+            for (CompleteEvaluation evaluation : evaluations) {
+                stmt.setInt(1, evaluation.getId());
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+        publishWrites(evaluations);
+    }
+
+    @Override
+    protected String getSequenceName() {
+        return "SEQ_EVAL";
     }
 
     @Override
@@ -238,30 +349,32 @@ public class CompleteEvaluationMapper extends AbstractMapper<CompleteEvaluation>
         return "SELECT COUNT(*) FROM COMMENTAIRES";
     }
 
+    @Override
+    protected String getIdsQuery() {
+        return "SELECT numero FROM COMMENTAIRES";
+    }
+
     public Set<CompleteEvaluation> findByRestaurant(Restaurant restaurant) {
         Set<CompleteEvaluation> evaluations = new LinkedHashSet<>();
-        String sql = "SELECT numero, date_eval, commentaire, nom_utilisateur FROM COMMENTAIRES WHERE fk_rest = ?";
 
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        try (Connection connection = getReadConnection();
+             PreparedStatement stmt = connection.prepareStatement(FIND_BY_RESTAURANT)) {
             stmt.setInt(1, restaurant.getId());
             try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
                     int id = rs.getInt("numero");
-                    CompleteEvaluation eval = identityMap.get(id);
+                    CompleteEvaluation eval = cache.get(id);
 
                     if (eval == null) {
                         eval = new CompleteEvaluation(
                                 id,
                                 rs.getDate("date_eval"),
                                 restaurant,
-                                rs.getString("commentaire"),
+                                null,
                                 rs.getString("nom_utilisateur")
                         );
-                        identityMap.put(id, eval);
-                    }
-
-                    if (eval.getGrades().isEmpty()) {
-                        eval.getGrades().addAll(gradeMapper.findByEvaluation(eval));
+                        eval.setCommentLoader(() -> comments.load(id));
+                        cache.put(id, eval);
                     }
 
                     evaluations.add(eval);
@@ -271,22 +384,71 @@ public class CompleteEvaluationMapper extends AbstractMapper<CompleteEvaluation>
             logger.error("Erreur findByRestaurant CompleteEvaluation : {}", ex.getMessage());
         }
 
+        // 🔹 Une requête pour les notes de toutes les évaluations, pas une par évaluation
+        gradeMapper.loadByEvaluations(evaluations);
         return evaluations;
     }
 
+    /**
+     * Évaluations d'un restaurant avec leur commentaire, sans leurs notes (voir
+     * {@link RestaurantMapper#fetchDetail}).
+     * @param connection la connexion de la lecture du détail
+     * @return les évaluations, par identifiant
+     */
+    Map<Integer, CompleteEvaluation> findDetailByRestaurant(Connection connection, Restaurant restaurant) throws SQLException {
+        Map<Integer, CompleteEvaluation> evaluations = new LinkedHashMap<>();
+        try (PreparedStatement stmt = connection.prepareStatement(FIND_DETAIL_BY_RESTAURANT)) {
+            stmt.setInt(1, restaurant.getId());
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    int id = rs.getInt("numero");
+                    CompleteEvaluation eval = cache.get(id);
+
+                    if (eval == null) {
+                        eval = new CompleteEvaluation(
+                                id,
+                                rs.getDate("date_eval"),
+                                restaurant,
+                                rs.getString("commentaire"),
+                                rs.getString("nom_utilisateur")
+                        );
+                        cache.put(id, eval);
+                    } else if (!eval.isCommentLoaded()) {
+                        // 🔹 Déjà lu sans son commentaire : il est dans la ligne
+                        eval.setComment(rs.getString("commentaire"));
+                    }
+                    evaluations.put(id, eval);
+                }
+            }
+        }
+        return evaluations;
+    }
+
+    /**
+     * Charge en une requête les commentaires pas encore chargés d'une liste d'évaluations.
+     */
+    public void loadComments(Collection<CompleteEvaluation> evaluations) {
+        Map<Integer, CompleteEvaluation> pending = new HashMap<>();
+        for (CompleteEvaluation evaluation : evaluations) {
+            if (!evaluation.isCommentLoaded()) {
+                pending.put(evaluation.getId(), evaluation);
+            }
+        }
+        Map<Integer, String> texts = comments.loadAll(pending.keySet());
+        pending.forEach((id, evaluation) -> evaluation.setComment(texts.get(id)));
+    }
+
     public CompleteEvaluation findByUserAndRest(String username, int restaurantId) throws SQLException {
-        for (CompleteEvaluation eval : identityMap.values()) {
+        for (CompleteEvaluation eval : cache.values()) {
             if (eval.getUsername().equalsIgnoreCase(username)
                     && eval.getRestaurant() != null
                     && eval.getRestaurant().getId() == restaurantId) {
-                System.out.println("⚡ Évaluation trouvée dans le cache pour " + username);
                 return eval;
             }
         }
 
-        String sql = "SELECT numero, date_eval, commentaire, nom_utilisateur, fk_rest " +
-                "FROM COMMENTAIRES WHERE nom_utilisateur = ? AND fk_rest = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        try (Connection connection = getReadConnection();
+             PreparedStatement stmt = connection.prepareStatement(FIND_BY_USER_AND_REST)) {
             stmt.setString(1, username);
             stmt.setInt(2, restaurantId);
             try (ResultSet rs = stmt.executeQuery()) {
@@ -300,7 +462,7 @@ public class CompleteEvaluationMapper extends AbstractMapper<CompleteEvaluation>
                             rs.getString("nom_utilisateur")
                     );
 
-                    identityMap.put(eval.getId(), eval);
+                    cache.put(eval.getId(), eval);
                     return eval;
                 }
             }
@@ -2,30 +2,59 @@ package ch.hearc.ig.guideresto.persistence.mapper;
 
 import ch.hearc.ig.guideresto.business.EvaluationCriteria;
 import ch.hearc.ig.guideresto.persistence.AbstractMapper;
+import ch.hearc.ig.guideresto.persistence.StatementRegistry;
+import ch.hearc.ig.guideresto.persistence.cache.InvalidationBus;
 import java.sql.*;
 import java.util.Set;
-import static ch.hearc.ig.guideresto.persistence.ConnectionUtils.getConnection;
+import static ch.hearc.ig.guideresto.persistence.ConnectionUtils.getReadConnection;
+import static ch.hearc.ig.guideresto.persistence.TransactionManager.inTransaction;
 import java.sql.*;
 import java.util.*;
 
 public class EvaluationCriteriaMapper extends AbstractMapper<EvaluationCriteria> {
 
-    private static final Map<Integer, EvaluationCriteria> identityMap = new HashMap<>();
-    private final Connection connection;
+    private static final String FIND_BY_ID = StatementRegistry.register("EvaluationCriteria.findById",
+            "SELECT numero, nom, description FROM CRITERES_EVALUATION WHERE numero = ?");
+    private static final String FIND_ALL = StatementRegistry.register("EvaluationCriteria.findAll",
+            "SELECT numero, nom, description FROM CRITERES_EVALUATION");
+    private static final String CREATE = StatementRegistry.register("EvaluationCriteria.create",
+            "BEGIN INSERT INTO CRITERES_EVALUATION (nom, description) " +
+                    "VALUES (?, ?) RETURNING numero INTO ?; END;");
+    private static final String UPDATE = StatementRegistry.register("EvaluationCriteria.update",
+            "UPDATE CRITERES_EVALUATION SET nom = ?, description = ? WHERE numero = ?");
+    private static final String DELETE_NOTES = StatementRegistry.register("EvaluationCriteria.deleteNotes",
+            "DELETE FROM NOTES WHERE fk_crit = ?");
+    private static final String DELETE_BY_ID = StatementRegistry.register("EvaluationCriteria.deleteById",
+            "DELETE FROM CRITERES_EVALUATION WHERE numero = ?");
+    private static final String FIND_BY_NAME = StatementRegistry.register("EvaluationCriteria.findByName",
+            "SELECT numero, nom, description FROM CRITERES_EVALUATION WHERE nom = ?");
+
+    static {
+        // 🔹 Critère écrit par une autre instance : données de référence périmées
+        InvalidationBus.getInstance().addListener("EvaluationCriteria", id -> ReferenceData.invalidate());
+    }
 
     public EvaluationCriteriaMapper() {
-        this.connection = getConnection();
+        super("EvaluationCriteria");
     }
 
     @Override
     public EvaluationCriteria findById(int id) {
-        // ✅ Vérifie d’abord le cache
-        if (identityMap.containsKey(id)) {
-            return identityMap.get(id);
+        ReferenceData.Snapshot reference = ReferenceData.snapshot();
+        EvaluationCriteria known = reference == null ? null : reference.getCriteria(id);
+        if (known != null) {
+            return known;
         }
+        // Un seul chargement par identifiant, même si plusieurs threads le demandent
+        return findCached(id, this::loadById);
+    }
 
-        String sql = "SELECT numero, nom, description FROM CRITERES_EVALUATION WHERE numero = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+    /**
+     * Lit l'objet en base, appelé par le cache au premier accès à cet identifiant
+     */
+    private EvaluationCriteria loadById(int id) {
+        try (Connection connection = getReadConnection();
+             PreparedStatement stmt = connection.prepareStatement(FIND_BY_ID)) {
             stmt.setInt(1, id);
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
@@ -34,7 +63,6 @@ public class EvaluationCriteriaMapper extends AbstractMapper<EvaluationCriteria>
                             rs.getString("nom"),
                             rs.getString("description")
                     );
-                    identityMap.put(id, crit);
                     return crit;
                 }
             }
@@ -46,15 +74,27 @@ public class EvaluationCriteriaMapper extends AbstractMapper<EvaluationCriteria>
 
     @Override
     public Set<EvaluationCriteria> findAll() {
+        // 🔹 Servi depuis les données de référence en mémoire si elles sont chargées
+        ReferenceData.Snapshot reference = ReferenceData.snapshot();
+        if (reference != null) {
+            return new LinkedHashSet<>(reference.getCriteria());
+        }
+        return loadAll();
+    }
+
+    /**
+     * Lit toute la table, sans passer par les données de référence (voir {@link ReferenceData})
+     */
+    Set<EvaluationCriteria> loadAll() {
         Set<EvaluationCriteria> criteres = new LinkedHashSet<>();
-        String sql = "SELECT numero, nom, description FROM CRITERES_EVALUATION";
 
-        try (PreparedStatement stmt = connection.prepareStatement(sql);
+        try (Connection connection = getReadConnection();
+             PreparedStatement stmt = connection.prepareStatement(FIND_ALL);
              ResultSet rs = stmt.executeQuery()) {
 
             while (rs.next()) {
                 int id = rs.getInt("numero");
-                EvaluationCriteria crit = identityMap.get(id);
+                EvaluationCriteria crit = cache.get(id);
 
                 if (crit == null) {
                     crit = new EvaluationCriteria(
@@ -62,7 +102,7 @@ public class EvaluationCriteriaMapper extends AbstractMapper<EvaluationCriteria>
                             rs.getString("nom"),
                             rs.getString("description")
                     );
-                    identityMap.put(id, crit);
+                    cache.put(id, crit);
                 }
                 criteres.add(crit);
             }
@@ -74,63 +114,54 @@ public class EvaluationCriteriaMapper extends AbstractMapper<EvaluationCriteria>
 
     @Override
     public EvaluationCriteria create(EvaluationCriteria critere) {
-        String sql = "BEGIN INSERT INTO CRITERES_EVALUATION (nom, description) " +
-                "VALUES (?, ?) RETURNING numero INTO ?; END;";
-        try (CallableStatement stmt = connection.prepareCall(sql)) {
-            stmt.setString(1, critere.getName());
-            stmt.setString(2, critere.getDescription());
-            stmt.registerOutParameter(3, java.sql.Types.INTEGER);
-
-            stmt.executeUpdate();
-            int generatedId = stmt.getInt(3);
-            critere.setId(generatedId);
-
-            // ✅ Ajout dans le cache
-            identityMap.put(generatedId, critere);
-
-            if (!connection.getAutoCommit()) {
-                connection.commit();
-            }
-
-            return critere;
-        } catch (SQLException e) {
-            if (e.getErrorCode() == 1) { // Doublon
-                try {
-                    return findByName(critere.getName());
-                } catch (SQLException ex) {
-                    logger.error("Erreur findByName après doublon: {}", ex.getMessage());
+        try {
+            return inTransaction(connection -> {
+                try (CallableStatement stmt = connection.prepareCall(CREATE)) {
+                    stmt.setString(1, critere.getName());
+                    stmt.setString(2, critere.getDescription());
+                    stmt.registerOutParameter(3, java.sql.Types.INTEGER);
+
+                    stmt.executeUpdate();
+                    int generatedId = stmt.getInt(3);
+                    critere.setId(generatedId);
+
+                    // ✅ Ajout dans le cache
+                    cache.put(generatedId, critere);
+                    ReferenceData.invalidate();
+                    publishWrite(critere.getId());
+                    return critere;
+                } catch (SQLException e) {
+                    if (e.getErrorCode() == 1) { // Doublon
+                        return findByName(critere.getName());
+                    }
+                    throw e;
                 }
-            } else {
-                logger.error("Erreur create EvaluationCriteria: {}", e.getMessage());
-            }
-
-            try {
-                connection.rollback();
-            } catch (SQLException r) {
-                logger.error("Rollback failed: {}", r.getMessage());
-            }
-
+            });
+        } catch (SQLException e) {
+            logger.error("Erreur create EvaluationCriteria: {}", e.getMessage());
             return null;
         }
     }
 
     @Override
     public boolean update(EvaluationCriteria critere) {
-        String sql = "UPDATE CRITERES_EVALUATION SET nom = ?, description = ? WHERE numero = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setString(1, critere.getName());
-            stmt.setString(2, critere.getDescription());
-            stmt.setInt(3, critere.getId());
-            int rows = stmt.executeUpdate();
-
-            if (!connection.getAutoCommit()) connection.commit();
-
-            if (rows > 0) {
-                // ✅ Met à jour le cache
-                identityMap.put(critere.getId(), critere);
-            }
-
-            return rows > 0;
+        try {
+            return inTransaction(connection -> {
+                try (PreparedStatement stmt = connection.prepareStatement(UPDATE)) {
+                    stmt.setString(1, critere.getName());
+                    stmt.setString(2, critere.getDescription());
+                    stmt.setInt(3, critere.getId());
+                    int rows = stmt.executeUpdate();
+
+                    if (rows > 0) {
+                        // ✅ Met à jour le cache
+                        cache.put(critere.getId(), critere);
+                    }
+                    ReferenceData.invalidate();
+                    publishWrite(critere.getId());
+                    return rows > 0;
+                }
+            });
         } catch (SQLException e) {
             logger.error("Erreur lors de la mise à jour : {}", e.getMessage());
             return false;
@@ -145,36 +176,34 @@ public class EvaluationCriteriaMapper extends AbstractMapper<EvaluationCriteria>
     @Override
     public boolean deleteById(int id) {
         try {
-            // Supprimer toutes les notes liées à ce critère
-            String deleteNotesSql = "DELETE FROM NOTES WHERE fk_crit = ?";
-            try (PreparedStatement stmt = connection.prepareStatement(deleteNotesSql)) {
-                stmt.setInt(1, id);
-                stmt.executeUpdate();
-            }
-
-            // Supprimer le critère
-            String sql = "DELETE FROM CRITERES_EVALUATION WHERE numero = ?";
-            try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-                stmt.setInt(1, id);
-                int rows = stmt.executeUpdate();
-
-                if (!connection.getAutoCommit()) connection.commit();
+            return inTransaction(connection -> {
+                // Supprimer toutes les notes liées à ce critère
+                try (PreparedStatement stmt = connection.prepareStatement(DELETE_NOTES)) {
+                    stmt.setInt(1, id);
+                    stmt.executeUpdate();
+                }
 
-                // ✅ Supprimer du cache
-                if (rows > 0) identityMap.remove(id);
+                // Supprimer le critère
+                try (PreparedStatement stmt = connection.prepareStatement(DELETE_BY_ID)) {
+                    stmt.setInt(1, id);
+                    int rows = stmt.executeUpdate();
 
-                return rows > 0;
-            }
+                    // ✅ Supprimer du cache
+                    if (rows > 0) cache.remove(id);
+                    ReferenceData.invalidate();
+                    publishWrite(id);
+                    return rows > 0;
+                }
+            });
         } catch (SQLException e) {
             logger.error("Erreur lors de la suppression du critère : {}", e.getMessage());
-            try { connection.rollback(); } catch (SQLException ex) { ex.printStackTrace(); }
             return false;
         }
     }
 
     @Override
-    protected String getSequenceQuery() {
-        return "SELECT SEQ_CRITERES_EVALUATION.NEXTVAL FROM dual";
+    protected String getSequenceName() {
+        return "SEQ_CRITERES_EVALUATION";
     }
 
     @Override
@@ -188,16 +217,21 @@ public class EvaluationCriteriaMapper extends AbstractMapper<EvaluationCriteria>
     }
 
     public EvaluationCriteria findByName(String name) throws SQLException {
+        ReferenceData.Snapshot reference = ReferenceData.snapshot();
+        EvaluationCriteria known = reference == null ? null : reference.findCriteriaByName(name);
+        if (known != null) {
+            return known;
+        }
+
         // ✅ Vérifie d’abord dans le cache
-        for (EvaluationCriteria crit : identityMap.values()) {
+        for (EvaluationCriteria crit : cache.values()) {
             if (crit.getName().equalsIgnoreCase(name)) {
-                System.out.println("⚡ Critère '" + name + "' trouvé dans le cache");
                 return crit;
             }
         }
 
-        String sql = "SELECT numero, nom, description FROM CRITERES_EVALUATION WHERE nom = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        try (Connection connection = getReadConnection();
+             PreparedStatement stmt = connection.prepareStatement(FIND_BY_NAME)) {
             stmt.setString(1, name);
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
@@ -206,7 +240,7 @@ public class EvaluationCriteriaMapper extends AbstractMapper<EvaluationCriteria>
                             rs.getString("nom"),
                             rs.getString("description")
                     );
-                    identityMap.put(crit.getId(), crit);
+                    cache.put(crit.getId(), crit);
                     return crit;
                 }
             }
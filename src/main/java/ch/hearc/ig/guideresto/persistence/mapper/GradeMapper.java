@@ -4,38 +4,76 @@ import ch.hearc.ig.guideresto.business.Grade;
 import ch.hearc.ig.guideresto.business.CompleteEvaluation;
 import ch.hearc.ig.guideresto.business.EvaluationCriteria;
 import ch.hearc.ig.guideresto.persistence.AbstractMapper;
+import ch.hearc.ig.guideresto.persistence.BatchLoader;
+import ch.hearc.ig.guideresto.persistence.InClause;
+import ch.hearc.ig.guideresto.persistence.StatementRegistry;
 import java.sql.*;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.Set;
-import static ch.hearc.ig.guideresto.persistence.ConnectionUtils.getConnection;
+import static ch.hearc.ig.guideresto.persistence.ConnectionUtils.getReadConnection;
+import static ch.hearc.ig.guideresto.persistence.TransactionManager.inTransaction;
 import ch.hearc.ig.guideresto.business.*;
 import java.sql.*;
 import java.util.*;
 
 public class GradeMapper extends AbstractMapper<Grade> {
 
-    private static final Map<Integer, Grade> identityMap = new HashMap<>();
-    private final Connection connection;
-    private final EvaluationCriteriaMapper criteriaMapper;
-    private final CompleteEvaluationMapper evaluationMapper;
+    private static final String FIND_BY_ID = StatementRegistry.register("Grade.findById",
+            "SELECT numero, note, fk_comm, fk_crit FROM NOTES WHERE numero = ?");
+    private static final String FIND_ALL = StatementRegistry.register("Grade.findAll",
+            "SELECT numero, note, fk_comm, fk_crit FROM NOTES");
+    private static final String FIND_BY_IDS =
+            "SELECT numero, note, fk_comm, fk_crit FROM NOTES WHERE numero IN";
+    private static final String CREATE = StatementRegistry.register("Grade.create",
+            "BEGIN INSERT INTO NOTES (note, fk_comm, fk_crit) VALUES (?, ?, ?) RETURNING numero INTO ?; END;");
+    private static final String INSERT = StatementRegistry.register("Grade.insert",
+            "INSERT INTO NOTES (numero, note, fk_comm, fk_crit) VALUES (?, ?, ?, ?)");
+    private static final String UPDATE = StatementRegistry.register("Grade.update",
+            "UPDATE NOTES SET note = ?, fk_comm = ?, fk_crit = ? WHERE numero = ?");
+    private static final String DELETE_BY_ID = StatementRegistry.register("Grade.deleteById",
+            "DELETE FROM NOTES WHERE numero = ?");
+    private static final String FIND_BY_COMPLETE_EVALUATION = StatementRegistry.register("Grade.findByCompleteEvaluation",
+            "SELECT numero, note, fk_comm, fk_crit FROM NOTES WHERE fk_comm = ?");
+    private static final String FIND_BY_RESTAURANT = StatementRegistry.register("Grade.findByRestaurant",
+            "SELECT n.numero, n.note, n.fk_comm, n.fk_crit FROM NOTES n " +
+                    "INNER JOIN COMMENTAIRES c ON n.fk_comm = c.numero WHERE c.fk_rest = ?");
+    /** Suivi de la liste IN, voir {@link #loadByEvaluations} */
+    private static final String FIND_BY_EVALUATIONS =
+            "SELECT numero, note, fk_comm, fk_crit FROM NOTES WHERE fk_comm IN";
+    private static final String FIND_BY_EVALUATION = StatementRegistry.register("Grade.findByEvaluation",
+            "SELECT numero, note, fk_crit FROM NOTES WHERE fk_comm = ?");
+
+    private EvaluationCriteriaMapper criteriaMapper;
+    private CompleteEvaluationMapper evaluationMapper;
 
     public GradeMapper() {
-        this.connection = getConnection();
+        super("Grade");
         this.criteriaMapper = new EvaluationCriteriaMapper();
-        this.evaluationMapper = new CompleteEvaluationMapper();
+        // 🔹 Mapper d'évaluations complet : findAll et streamAll lui demandent les évaluations des notes
+        this.evaluationMapper = new CompleteEvaluationMapper(new RestaurantMapper(), this);
+    }
+
+    /**
+     * Remplace les mappers par défaut par ceux de la {@link MapperFactory}
+     */
+    public void setDependencies(CompleteEvaluationMapper evaluationMapper, EvaluationCriteriaMapper criteriaMapper) {
+        this.evaluationMapper = evaluationMapper;
+        this.criteriaMapper = criteriaMapper;
     }
 
     @Override
     public Grade findById(int id) {
-        // ✅ Vérifie d’abord le cache
-        if (identityMap.containsKey(id)) {
-            System.out.println("⚡ Grade " + id + " récupéré depuis l'Identity Map");
-            return identityMap.get(id);
-        }
+        // ✅ Cache d'abord, un seul chargement par identifiant même si plusieurs threads le demandent
+        return findCached(id, this::loadById);
+    }
 
-        String sql = "SELECT numero, note, fk_comm, fk_crit FROM NOTES WHERE numero = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+    /**
+     * Lit l'objet en base, appelé par le cache au premier accès à cet identifiant
+     */
+    private Grade loadById(int id) {
+        try (Connection connection = getReadConnection();
+             PreparedStatement stmt = connection.prepareStatement(FIND_BY_ID)) {
             stmt.setInt(1, id);
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
@@ -48,8 +86,6 @@ public class GradeMapper extends AbstractMapper<Grade> {
                             crit
                     );
 
-                    // ✅ Stocker dans la Map
-                    identityMap.put(id, grade);
                     return grade;
                 }
             }
@@ -62,74 +98,122 @@ public class GradeMapper extends AbstractMapper<Grade> {
     @Override
     public Set<Grade> findAll() {
         Set<Grade> grades = new HashSet<>();
-        String sql = "SELECT numero, note, fk_comm, fk_crit FROM NOTES";
+        // 🔹 Évaluations et critères lus ensemble après le parcours, pas deux findById par note
+        BatchLoader batch = new BatchLoader();
 
-        try (PreparedStatement stmt = connection.prepareStatement(sql);
+        try (Connection connection = getReadConnection();
+             PreparedStatement stmt = connection.prepareStatement(FIND_ALL);
              ResultSet rs = stmt.executeQuery()) {
 
             while (rs.next()) {
                 int id = rs.getInt("numero");
-                Grade grade = identityMap.get(id);
+                Grade grade = cache.get(id);
 
                 if (grade == null) {
-                    CompleteEvaluation eval = evaluationMapper.findById(rs.getInt("fk_comm"));
-                    EvaluationCriteria crit = criteriaMapper.findById(rs.getInt("fk_crit"));
-                    grade = new Grade(id, rs.getInt("note"), eval, crit);
-                    identityMap.put(id, grade);
+                    grade = mapRow(rs, batch);
+                    cache.put(id, grade);
                 }
                 grades.add(grade);
             }
         } catch (SQLException ex) {
             System.err.println("Erreur findAll Grade : " + ex.getMessage());
         }
+        batch.dispatch();
         return grades;
     }
 
     @Override
-    public Grade create(Grade grade) {
-        String sql = "BEGIN INSERT INTO NOTES (note, fk_comm, fk_crit) VALUES (?, ?, ?) RETURNING numero INTO ?; END;";
-        try (CallableStatement stmt = connection.prepareCall(sql)) {
-            stmt.setInt(1, grade.getGrade());
-            stmt.setInt(2, grade.getEvaluation().getId());
-            stmt.setInt(3, grade.getCriteria().getId());
-            stmt.registerOutParameter(4, java.sql.Types.INTEGER);
-
-            stmt.executeUpdate();
+    protected String getFindByIdsQuery() {
+        return FIND_BY_IDS;
+    }
 
-            int generatedId = stmt.getInt(4);
-            grade.setId(generatedId);
-            identityMap.put(generatedId, grade); // ✅ Ajouter au cache
+    @Override
+    protected String getStreamAllQuery() {
+        return FIND_ALL;
+    }
 
-            if (!connection.getAutoCommit()) connection.commit();
-            return grade;
+    @Override
+    protected Grade mapRow(ResultSet rs, BatchLoader batch) throws SQLException {
+        Grade grade = new Grade(rs.getInt("numero"), rs.getInt("note"), null, null);
+        batch.load(evaluationMapper, rs.getInt("fk_comm"), grade::setEvaluation);
+        batch.load(criteriaMapper, rs.getInt("fk_crit"), grade::setCriteria);
+        return grade;
+    }
 
+    @Override
+    public Grade create(Grade grade) {
+        try {
+            return inTransaction(connection -> {
+                try (CallableStatement stmt = connection.prepareCall(CREATE)) {
+                    stmt.setInt(1, grade.getGrade());
+                    stmt.setInt(2, grade.getEvaluation().getId());
+                    stmt.setInt(3, grade.getCriteria().getId());
+                    stmt.registerOutParameter(4, java.sql.Types.INTEGER);
+
+                    stmt.executeUpdate();
+
+                    int generatedId = stmt.getInt(4);
+                    grade.setId(generatedId);
+                    cache.put(generatedId, grade); // ✅ Ajouter au cache
+                    publishWrite(generatedId);
+                    return grade;
+                }
+            });
         } catch (SQLException e) {
             System.err.println("Erreur create Grade: " + e.getMessage());
-            try { connection.rollback(); } catch (SQLException r) {
-                System.err.println("Rollback échoué : " + r.getMessage());
-            }
             return null;
         }
     }
 
-    @Override
-    public boolean update(Grade grade) {
-        String sql = "UPDATE NOTES SET note = ?, fk_comm = ?, fk_crit = ? WHERE numero = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setInt(1, grade.getGrade());
-            stmt.setInt(2, grade.getEvaluation().getId());
-            stmt.setInt(3, grade.getCriteria().getId());
-            stmt.setInt(4, grade.getId());
-
-            int updated = stmt.executeUpdate();
-            if (!connection.getAutoCommit()) connection.commit();
-
-            // ✅ Synchroniser le cache
-            if (updated > 0) {
-                identityMap.put(grade.getId(), grade);
+    /**
+     * Insère toutes les notes en un seul batch JDBC, dans une seule transaction.
+     * Les identifiants sont réservés sur SEQ_NOTES avant l'insertion et affectés aux notes.
+     * @param grades les notes à insérer
+     * @return true si toutes les notes ont été insérées
+     */
+    public boolean createAll(Collection<Grade> grades) {
+        if (grades.isEmpty()) {
+            return true;
+        }
+        List<Grade> batch = new ArrayList<>(grades);
+        try {
+            inTransaction(connection -> {
+                insertBatch(connection, batch);
+                return null;
+            });
+        } catch (SQLException e) {
+            System.err.println("Erreur createAll Grade: " + e.getMessage());
+            for (Grade grade : batch) {
+                grade.setId(null);
             }
+            return false;
+        }
+        for (Grade grade : batch) {
+            cache.put(grade.getId(), grade); // ✅ Ajouter au cache
+        }
+        return true;
+    }
 
-            return updated > 0;
+    @Override
+    public boolean update(Grade grade) {
+        try {
+            return inTransaction(connection -> {
+                try (PreparedStatement stmt = connection.prepareStatement(UPDATE)) {
+                    stmt.setInt(1, grade.getGrade());
+                    stmt.setInt(2, grade.getEvaluation().getId());
+                    stmt.setInt(3, grade.getCriteria().getId());
+                    stmt.setInt(4, grade.getId());
+
+                    int updated = stmt.executeUpdate();
+
+                    // ✅ Synchroniser le cache
+                    if (updated > 0) {
+                        cache.put(grade.getId(), grade);
+                        publishWrite(grade.getId());
+                    }
+                    return updated > 0;
+                }
+            });
         } catch (SQLException ex) {
             System.err.println("Erreur update Grade : " + ex.getMessage());
             return false;
@@ -143,29 +227,74 @@ public class GradeMapper extends AbstractMapper<Grade> {
 
     @Override
     public boolean deleteById(int id) {
-        String sql = "DELETE FROM NOTES WHERE numero = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setInt(1, id);
-            int deleted = stmt.executeUpdate();
+        try {
+            return inTransaction(connection -> {
+                try (PreparedStatement stmt = connection.prepareStatement(DELETE_BY_ID)) {
+                    stmt.setInt(1, id);
+                    int deleted = stmt.executeUpdate();
+
+                    // ✅ Retirer du cache
+                    if (deleted > 0) {
+                        cache.remove(id);
+                        publishWrite(id);
+                    }
+                    return deleted > 0;
+                }
+            });
+        } catch (SQLException ex) {
+            System.err.println("Erreur deleteById Grade : " + ex.getMessage());
+            return false;
+        }
+    }
 
-            if (!connection.getAutoCommit()) connection.commit();
+    @Override
+    protected void insertBatch(Connection connection, List<Grade> grades) throws SQLException {
+        int[] ids = allocateIds(connection, grades.size());
+        try (PreparedStatement stmt = connection.prepareStatement(INSERT)) {
+            for (int i = 0; i < grades.size(); i++) {
+                Grade grade = grades.get(i);
+                grade.setId(ids[i]);
+                stmt.setInt(1, ids[i]);
+                stmt.setInt(2, grade.getGrade());
+                stmt.setInt(3, grade.getEvaluation().getId());
+                stmt.setInt(4, grade.getCriteria().getId());
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+        publishWrites(grades);
+    }
 
-            // ✅ Retirer du cache
-            if (deleted > 0) identityMap.remove(id);
+    @Override
+    protected void updateBatch(Connection connection, List<Grade> grades) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement(UPDATE)) {
+            for (Grade grade : grades) {
+                stmt.setInt(1, grade.getGrade());
+                stmt.setInt(2, grade.getEvaluation().getId());
+                stmt.setInt(3, grade.getCriteria().getId());
+                stmt.setInt(4, grade.getId());
+                stmt.addBatch();
+            }
+            checkBatch(stmt.executeBatch(), "Mise à jour Grade");
+        }
+        publishWrites(grades);
+    }
 
-            return deleted > 0;
-        } catch (SQLException ex) {
-            System.err.println("Erreur deleteById Grade : " + ex.getMessage());
-            try { connection.rollback(); } catch (SQLException e) {
-                System.err.println("Rollback échoué : " + e.getMessage());
+    @Override
+    protected void deleteBatch(Connection connection, List<Grade> grades) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement(DELETE_BY_ID)) {
+            for (Grade grade : grades) {
+                stmt.setInt(1, grade.getId());
+                stmt.addBatch();
             }
-            return false;
+            stmt.executeBatch();
         }
+        publishWrites(grades);
     }
 
     @Override
-    protected String getSequenceQuery() {
-        return "SELECT SEQ_NOTES.NEXTVAL FROM dual";
+    protected String getSequenceName() {
+        return "SEQ_NOTES";
     }
 
     @Override
@@ -181,18 +310,18 @@ public class GradeMapper extends AbstractMapper<Grade> {
     // 🔹 Utilitaires avec cache aussi
     public Set<Grade> findByCompleteEvaluation(CompleteEvaluation eval) {
         Set<Grade> grades = new HashSet<>();
-        String sql = "SELECT numero, note, fk_comm, fk_crit FROM NOTES WHERE fk_comm = ?";
 
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        try (Connection connection = getReadConnection();
+             PreparedStatement stmt = connection.prepareStatement(FIND_BY_COMPLETE_EVALUATION)) {
             stmt.setInt(1, eval.getId());
             try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
                     int id = rs.getInt("numero");
-                    Grade grade = identityMap.get(id);
+                    Grade grade = cache.get(id);
                     if (grade == null) {
                         EvaluationCriteria crit = criteriaMapper.findById(rs.getInt("fk_crit"));
                         grade = new Grade(id, rs.getInt("note"), eval, crit);
-                        identityMap.put(id, grade);
+                        cache.put(id, grade);
                     }
                     grades.add(grade);
                 }
@@ -205,41 +334,119 @@ public class GradeMapper extends AbstractMapper<Grade> {
     }
     public Set<Grade> findByEvaluation(CompleteEvaluation eval) {
         Set<Grade> grades = new LinkedHashSet<>();
-        String sql = "SELECT numero, note, fk_crit FROM NOTES WHERE fk_comm = ?";
 
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        try (Connection connection = getReadConnection();
+             PreparedStatement stmt = connection.prepareStatement(FIND_BY_EVALUATION)) {
             stmt.setInt(1, eval.getId());
             try (ResultSet rs = stmt.executeQuery()) {
-                EvaluationCriteriaMapper critMapper = new EvaluationCriteriaMapper();
-
                 while (rs.next()) {
-                    int gradeId = rs.getInt("numero");
+                    grades.add(mapGrade(rs, eval));
+                }
+            }
+        } catch (SQLException ex) {
+            logger.error("Erreur findByEvaluation GradeMapper : {}", ex.getMessage());
+        }
 
-                    // ✅ Vérifie le cache d'identité avant de créer un nouvel objet
-                    Grade grade = identityMap.get(gradeId);
-                    if (grade == null) {
-                        int noteValue = rs.getInt("note");
-                        int critId = rs.getInt("fk_crit");
-                        Grade newGrade = new Grade(
-                                gradeId,
-                                noteValue,
-                                eval,
-                                critMapper.findById(critId)
-                        );
-
-                        identityMap.put(gradeId, newGrade);
-                        grade = newGrade;
+        return grades;
+    }
+
+    /**
+     * Notes de toutes les évaluations d'un restaurant en une requête, rangées dans les évaluations
+     * qui n'ont pas encore les leurs (voir {@link RestaurantMapper#fetchDetail}).
+     * @param connection la connexion de la lecture du détail
+     * @param evaluations les évaluations complètes du restaurant, par identifiant
+     */
+    void loadByRestaurant(Connection connection, Restaurant restaurant,
+                          Map<Integer, CompleteEvaluation> evaluations) throws SQLException {
+        Map<Integer, List<Grade>> gradesByEvaluation = new HashMap<>();
+        try (PreparedStatement stmt = connection.prepareStatement(FIND_BY_RESTAURANT)) {
+            stmt.setInt(1, restaurant.getId());
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    CompleteEvaluation eval = evaluations.get(rs.getInt("fk_comm"));
+                    // évaluation créée depuis la lecture des évaluations, ou déjà notée
+                    if (eval != null && eval.getGrades().isEmpty()) {
+                        gradesByEvaluation.computeIfAbsent(eval.getId(), k -> new ArrayList<>()).add(mapGrade(rs, eval));
                     }
+                }
+            }
+        }
+        gradesByEvaluation.forEach((id, grades) -> evaluations.get(id).getGrades().addAll(grades));
+    }
 
-                    grades.add(grade);
+    /**
+     * Charge les notes d'un ensemble d'évaluations en une requête par paquet de 1000 (voir
+     * {@link InClause}) et les range dans leur évaluation. Seules les évaluations qui n'ont pas
+     * encore de notes sont lues.
+     * @param evaluations les évaluations complètes, déjà en cache
+     */
+    public void loadByEvaluations(Collection<CompleteEvaluation> evaluations) {
+        loadByEvaluations(evaluations, true);
+    }
+
+    /**
+     * Comme {@link #loadByEvaluations(Collection)} ; avec addToCache à false (parcours de
+     * {@link CompleteEvaluationMapper#streamAll()}), les notes lues ne sont pas mises en cache.
+     */
+    void loadByEvaluations(Collection<CompleteEvaluation> evaluations, boolean addToCache) {
+        Map<Integer, CompleteEvaluation> pending = new HashMap<>();
+        for (CompleteEvaluation eval : evaluations) {
+            if (eval.getId() != null && eval.getGrades().isEmpty()) {
+                pending.put(eval.getId(), eval);
+            }
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        Map<Integer, List<Grade>> gradesByEvaluation = new HashMap<>();
+        try (Connection connection = getReadConnection()) {
+            for (List<Integer> chunk : InClause.chunks(pending.keySet())) {
+                int size = InClause.bucketSize(chunk.size());
+                String sql = StatementRegistry.register("Grade.findByEvaluations[" + size + "]",
+                        FIND_BY_EVALUATIONS + " (" + InClause.placeholders(size) + ")");
+                try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+                    InClause.bind(stmt, 1, chunk, size);
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            CompleteEvaluation eval = pending.get(rs.getInt("fk_comm"));
+                            gradesByEvaluation.computeIfAbsent(eval.getId(), k -> new ArrayList<>()).add(mapGrade(rs, eval, addToCache));
+                        }
+                    }
                 }
             }
         } catch (SQLException ex) {
-            logger.error("Erreur findByEvaluation GradeMapper : {}", ex.getMessage());
+            logger.error("Erreur loadByEvaluations GradeMapper : {}", ex.getMessage());
+            return;
         }
+        // 🔹 Rangées seulement une fois tout lu : une erreur ne laisse pas d'évaluation à moitié notée
+        gradesByEvaluation.forEach((id, grades) -> pending.get(id).getGrades().addAll(grades));
+    }
 
-        return grades;
+    /**
+     * Note de la ligne courante, reprise du cache d'identité si elle y est ; le critère vient
+     * des données de référence ou du cache des critères
+     */
+    private Grade mapGrade(ResultSet rs, CompleteEvaluation eval) throws SQLException {
+        return mapGrade(rs, eval, true);
     }
 
+    private Grade mapGrade(ResultSet rs, CompleteEvaluation eval, boolean addToCache) throws SQLException {
+        int gradeId = rs.getInt("numero");
+
+        // ✅ Vérifie le cache d'identité avant de créer un nouvel objet
+        Grade grade = cache.get(gradeId);
+        if (grade == null) {
+            grade = new Grade(
+                    gradeId,
+                    rs.getInt("note"),
+                    eval,
+                    criteriaMapper.findById(rs.getInt("fk_crit"))
+            );
+            if (addToCache) {
+                cache.put(gradeId, grade);
+            }
+        }
+        return grade;
+    }
 }
-
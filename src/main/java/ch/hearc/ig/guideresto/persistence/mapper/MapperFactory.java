@@ -1,5 +1,8 @@
 package ch.hearc.ig.guideresto.persistence.mapper;
 
+import ch.hearc.ig.guideresto.business.*;
+import ch.hearc.ig.guideresto.persistence.UnitOfWork;
+
 public class MapperFactory {
 
     private final CityMapper cityMapper;
@@ -24,6 +27,9 @@ public class MapperFactory {
         // 🔹 Crée le mapper complete evaluation avec restaurantMapper et gradeMapper
         this.completeEvalMapper = new CompleteEvaluationMapper(restaurantMapper, gradeMapper);
 
+        // 🔹 Injecte dans gradeMapper les mappers de la factory pour lire évaluations et critères
+        this.gradeMapper.setDependencies(this.completeEvalMapper, this.criteriaMapper);
+
         // 🔹 Injecte le mapper completeEval et grade dans restaurantMapper pour les opérations "delete"
         this.restaurantMapper.setDependenciesEval(this.completeEvalMapper, this.gradeMapper, this.basicEvalMapper);
         this.restaurantMapper.setDependenciesCityType(this.cityMapper, this.typeMapper);
@@ -37,4 +43,18 @@ public class MapperFactory {
     public CompleteEvaluationMapper getCompleteEvalMapper() { return completeEvalMapper; }
     public EvaluationCriteriaMapper getCriteriaMapper() { return criteriaMapper; }
 
+    /**
+     * Crée une unité de travail avec tous les mappers, déclarés dans l'ordre des clés étrangères.
+     */
+    public UnitOfWork newUnitOfWork() {
+        return new UnitOfWork()
+                .map(City.class, cityMapper)
+                .map(RestaurantType.class, typeMapper)
+                .map(EvaluationCriteria.class, criteriaMapper)
+                .map(Restaurant.class, restaurantMapper)
+                .map(BasicEvaluation.class, basicEvalMapper)
+                .map(CompleteEvaluation.class, completeEvalMapper)
+                .map(Grade.class, gradeMapper);
+    }
+
 }
@@ -0,0 +1,218 @@
+package ch.hearc.ig.guideresto.persistence.mapper;
+
+import ch.hearc.ig.guideresto.business.City;
+import ch.hearc.ig.guideresto.business.EvaluationCriteria;
+import ch.hearc.ig.guideresto.business.IBusinessObject;
+import ch.hearc.ig.guideresto.business.RestaurantType;
+import ch.hearc.ig.guideresto.persistence.TransactionManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+/**
+ * Données de référence (villes, types gastronomiques, critères d'évaluation) gardées en mémoire.
+ * <p>
+ * Les trois tables sont petites et changent rarement : {@link #preload()} les lit entièrement
+ * au démarrage dans un {@link Snapshot} immuable, d'où les mappers servent ensuite findById,
+ * findAll et les recherches par nom sans aller en base.
+ * <p>
+ * Une écriture sur l'une de ces tables retire le snapshot (les lectures repassent par la base)
+ * et en charge un nouveau après le commit ; le remplacement est atomique pour les lecteurs.
+ */
+public final class ReferenceData {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReferenceData.class);
+
+    private static volatile Snapshot current;
+    private static volatile boolean enabled;
+    /** Incrémenté à chaque invalidation : un chargement commencé avant ne doit pas être publié */
+    private static long version;
+
+    private ReferenceData() {
+    }
+
+    /**
+     * Charge les données de référence et les sert depuis la mémoire à partir de maintenant.
+     * @return le snapshot chargé
+     */
+    public static Snapshot preload() {
+        enabled = true;
+        return refresh();
+    }
+
+    /**
+     * Relit les trois tables et remplace le snapshot courant.
+     * @return le nouveau snapshot
+     */
+    public static Snapshot refresh() {
+        long startVersion;
+        synchronized (ReferenceData.class) {
+            startVersion = version;
+        }
+        Snapshot snapshot = new Snapshot(
+                new CityMapper().loadAll(),
+                new RestaurantTypeMapper().loadAll(),
+                new EvaluationCriteriaMapper().loadAll());
+        synchronized (ReferenceData.class) {
+            if (version == startVersion) {
+                current = snapshot;
+            }
+        }
+        logger.info("Données de référence chargées : {} villes, {} types, {} critères",
+                snapshot.cities.size(), snapshot.types.size(), snapshot.criteria.size());
+        return snapshot;
+    }
+
+    /**
+     * @return le snapshot courant, ou null si les données de référence ne sont pas en mémoire
+     * (pas préchargées, ou modifiées dans une transaction pas encore validée)
+     */
+    public static Snapshot snapshot() {
+        Snapshot snapshot = current;
+        // rechargé à la demande après une transaction annulée, mais jamais depuis une transaction
+        // qui pourrait lire ses propres écritures pas encore validées
+        if (snapshot == null && enabled && !TransactionManager.isActive()) {
+            snapshot = refresh();
+        }
+        return snapshot;
+    }
+
+    /**
+     * Appelé par les mappers après une écriture sur VILLES, TYPES_GASTRONOMIQUES ou CRITERES_EVALUATION.
+     */
+    static void invalidate() {
+        synchronized (ReferenceData.class) {
+            version++;
+            current = null;
+        }
+        if (enabled) {
+            TransactionManager.afterCommit(ReferenceData::refresh);
+        }
+    }
+
+    /**
+     * Copie immuable des trois tables, chacune triée par identifiant.
+     */
+    public static final class Snapshot {
+
+        private final Table<City> cities;
+        private final Table<RestaurantType> types;
+        private final Table<EvaluationCriteria> criteria;
+        private final Map<String, City> citiesByName;
+        private final Map<String, City> citiesByZipCode;
+        private final Map<String, RestaurantType> typesByLabel;
+        private final Map<String, EvaluationCriteria> criteriaByName;
+
+        private Snapshot(Collection<City> cities, Collection<RestaurantType> types,
+                         Collection<EvaluationCriteria> criteria) {
+            this.cities = new Table<>(cities, City[]::new);
+            this.types = new Table<>(types, RestaurantType[]::new);
+            this.criteria = new Table<>(criteria, EvaluationCriteria[]::new);
+            this.citiesByName = index(cities, city -> normalize(city.getCityName()));
+            this.citiesByZipCode = index(cities, City::getZipCode);
+            this.typesByLabel = index(types, RestaurantType::getLabel);
+            this.criteriaByName = index(criteria, crit -> normalize(crit.getName()));
+        }
+
+        public City getCity(int id) {
+            return cities.get(id);
+        }
+
+        public RestaurantType getType(int id) {
+            return types.get(id);
+        }
+
+        public EvaluationCriteria getCriteria(int id) {
+            return criteria.get(id);
+        }
+
+        public List<City> getCities() {
+            return cities.list;
+        }
+
+        public List<RestaurantType> getTypes() {
+            return types.list;
+        }
+
+        public List<EvaluationCriteria> getCriteria() {
+            return criteria.list;
+        }
+
+        /**
+         * @return la ville de ce nom (sans tenir compte de la casse), ou null
+         */
+        public City findCityByName(String name) {
+            return name == null ? null : citiesByName.get(normalize(name));
+        }
+
+        public City findCityByZipCode(String zipCode) {
+            return zipCode == null ? null : citiesByZipCode.get(zipCode);
+        }
+
+        public RestaurantType findTypeByLabel(String label) {
+            return label == null ? null : typesByLabel.get(label);
+        }
+
+        /**
+         * @return le critère de ce nom (sans tenir compte de la casse), ou null
+         */
+        public EvaluationCriteria findCriteriaByName(String name) {
+            return name == null ? null : criteriaByName.get(normalize(name));
+        }
+
+        private static String normalize(String name) {
+            return name.toLowerCase(Locale.ROOT);
+        }
+
+        private static <T> Map<String, T> index(Collection<T> values, Function<T, String> key) {
+            Map<String, T> index = new HashMap<>();
+            for (T value : values) {
+                String k = key.apply(value);
+                if (k != null) {
+                    index.putIfAbsent(k, value);
+                }
+            }
+            return Map.copyOf(index);
+        }
+    }
+
+    /**
+     * Objets triés par identifiant, recherchés par dichotomie sur un tableau d'int.
+     */
+    private static final class Table<T extends IBusinessObject> {
+
+        private final int[] ids;
+        private final T[] values;
+        private final List<T> list;
+
+        private Table(Collection<T> source, IntFunction<T[]> newArray) {
+            T[] sorted = source.toArray(newArray.apply(0));
+            Arrays.sort(sorted, Comparator.comparing(IBusinessObject::getId));
+            this.values = sorted;
+            this.ids = new int[sorted.length];
+            for (int i = 0; i < sorted.length; i++) {
+                ids[i] = sorted[i].getId();
+            }
+            this.list = Collections.unmodifiableList(Arrays.asList(sorted));
+        }
+
+        private T get(int id) {
+            int i = Arrays.binarySearch(ids, id);
+            return i >= 0 ? values[i] : null;
+        }
+
+        private int size() {
+            return values.length;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package ch.hearc.ig.guideresto.persistence.mapper;
+
+import ch.hearc.ig.guideresto.business.BasicEvaluation;
+import ch.hearc.ig.guideresto.business.CompleteEvaluation;
+import ch.hearc.ig.guideresto.business.Restaurant;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Ce qu'affiche l'écran de détail d'un restaurant, lu d'un bloc par
+ * {@link RestaurantMapper#fetchDetail(Restaurant)} : les évaluations complètes avec leur
+ * commentaire, leurs notes et leurs critères, et les likes.
+ */
+public final class RestaurantDetail {
+
+    private final Restaurant restaurant;
+    private final Set<CompleteEvaluation> completeEvaluations;
+    private final Set<BasicEvaluation> basicEvaluations;
+    private final int likes;
+    private final int dislikes;
+
+    RestaurantDetail(Restaurant restaurant, Set<CompleteEvaluation> completeEvaluations,
+                     Set<BasicEvaluation> basicEvaluations) {
+        this.restaurant = restaurant;
+        this.completeEvaluations = Collections.unmodifiableSet(completeEvaluations);
+        this.basicEvaluations = Collections.unmodifiableSet(basicEvaluations);
+        int liked = 0;
+        int disliked = 0;
+        for (BasicEvaluation evaluation : basicEvaluations) {
+            if (Boolean.TRUE.equals(evaluation.getLikeRestaurant())) {
+                liked++;
+            } else if (Boolean.FALSE.equals(evaluation.getLikeRestaurant())) {
+                disliked++;
+            }
+        }
+        this.likes = liked;
+        this.dislikes = disliked;
+    }
+
+    public Restaurant getRestaurant() {
+        return restaurant;
+    }
+
+    public Set<CompleteEvaluation> getCompleteEvaluations() {
+        return completeEvaluations;
+    }
+
+    public Set<BasicEvaluation> getBasicEvaluations() {
+        return basicEvaluations;
+    }
+
+    public int getLikes() {
+        return likes;
+    }
+
+    public int getDislikes() {
+        return dislikes;
+    }
+}
@@ -2,25 +2,84 @@ package ch.hearc.ig.guideresto.persistence.mapper;
 
 import ch.hearc.ig.guideresto.business.*;
 import ch.hearc.ig.guideresto.persistence.AbstractMapper;
+import ch.hearc.ig.guideresto.persistence.BatchLoader;
+import ch.hearc.ig.guideresto.persistence.LobLoader;
+import ch.hearc.ig.guideresto.persistence.StatementRegistry;
+import ch.hearc.ig.guideresto.persistence.cache.IntObjectMap;
+import ch.hearc.ig.guideresto.persistence.cache.InvalidationBus;
+import ch.hearc.ig.guideresto.persistence.cache.QueryCache;
 import java.sql.*;
 import java.util.*;
-import static ch.hearc.ig.guideresto.persistence.ConnectionUtils.getConnection;
+import static ch.hearc.ig.guideresto.persistence.ConnectionUtils.getReadConnection;
+import static ch.hearc.ig.guideresto.persistence.TransactionManager.inTransaction;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class RestaurantMapper extends AbstractMapper<Restaurant> {
 
     private static final Logger logger = LoggerFactory.getLogger(RestaurantMapper.class);
-    private final Connection connection;
-    private static final Map<Integer, Restaurant> identityMap = new HashMap<>();
+    private static final String FIND_BY_ID = StatementRegistry.register("Restaurant.findById",
+            "SELECT numero, nom, description, site_web, adresse, fk_type, fk_vill, ORA_ROWSCN AS version FROM RESTAURANTS WHERE numero = ?");
+    /**
+     * Restaurants avec leur ville et leur type, en une seule lecture : findAll et les recherches
+     * y ajoutent leur condition (voir {@link #mapRow})
+     */
+    private static final String SELECT_GRAPH =
+            "SELECT r.numero, r.nom, r.site_web, r.adresse, r.fk_type, r.fk_vill, r.ORA_ROWSCN AS version, " +
+                    "v.code_postal, v.nom_ville, t.libelle, t.description AS type_description " +
+                    "FROM RESTAURANTS r " +
+                    "INNER JOIN VILLES v ON r.fk_vill = v.numero " +
+                    "INNER JOIN TYPES_GASTRONOMIQUES t ON r.fk_type = t.numero";
+    private static final String FIND_ALL = StatementRegistry.register("Restaurant.findAll", SELECT_GRAPH);
+    private static final String FIND_BY_IDS = SELECT_GRAPH + " WHERE r.numero IN";
+    private static final String CREATE = StatementRegistry.register("Restaurant.create",
+            "INSERT INTO RESTAURANTS (numero, nom, description, site_web, adresse, fk_type, fk_vill) VALUES (?, ?, ?, ?, ?, ?, ?)");
+    private static final String UPDATE = StatementRegistry.register("Restaurant.update",
+            "UPDATE RESTAURANTS SET nom = ?, description = ?, site_web = ?, fk_type = ? WHERE numero = ?");
+    private static final String DELETE_BY_ID = StatementRegistry.register("Restaurant.deleteById",
+            "DELETE FROM RESTAURANTS WHERE numero = ?");
+    private static final String UPDATE_ADDRESS = StatementRegistry.register("Restaurant.updateAddress",
+            "UPDATE RESTAURANTS SET adresse = ?, fk_vill = ? WHERE numero = ?");
+    private static final String FIND_BY_CITY = StatementRegistry.register("Restaurant.findByCity",
+            SELECT_GRAPH + " WHERE v.nom_ville = ?");
+    private static final String FIND_BY_RESTAURANT_TYPE = StatementRegistry.register("Restaurant.findByRestaurantType",
+            SELECT_GRAPH + " WHERE t.libelle = ?");
+    private static final String FIND_BY_NAME = StatementRegistry.register("Restaurant.findByName",
+            SELECT_GRAPH + " WHERE LOWER(r.nom) LIKE LOWER(?)");
+
+    /** Tables lues par chaque recherche, pour l'invalidation de leurs résultats en cache */
+    private static final String[] NAME_SEARCH_TABLES = {"RESTAURANTS"};
+    private static final String[] CITY_SEARCH_TABLES = {"RESTAURANTS", "VILLES"};
+    private static final String[] TYPE_SEARCH_TABLES = {"RESTAURANTS", "TYPES_GASTRONOMIQUES"};
+    private static final QueryCache searches = QueryCache.getInstance();
+
+    /**
+     * SCN de la dernière modification validée de chaque restaurant en cache (ORA_ROWSCN, suivi
+     * par ligne grâce à ROWDEPENDENCIES). Absent : version inconnue, par exemple juste après une
+     * écriture de ce mapper, dont le SCN n'est connu qu'au commit.
+     */
+    private static final IntObjectMap<Long> rowVersions = new IntObjectMap<>();
+
+    /** Les listes ne lisent pas la description (CLOB), elle est chargée au premier accès */
+    private static final LobLoader descriptions =
+            new LobLoader("Restaurant.description", "RESTAURANTS", "numero", "description");
+
+    static {
+        // 🔹 Restaurant écrit par une autre instance : version et recherches périmées
+        InvalidationBus.getInstance().addListener("Restaurant", id -> {
+            forgetVersion(id);
+            searches.invalidate("RESTAURANTS");
+        });
+    }
+
     private CompleteEvaluationMapper completeEvalMapper;
     private GradeMapper gradeMapper;
     private BasicEvaluationMapper basicEvalMapper;
-    private CityMapper cityMapper;
-    public RestaurantTypeMapper typeMapper;
+    private CityMapper cityMapper = new CityMapper();
+    public RestaurantTypeMapper typeMapper = new RestaurantTypeMapper();
 
     public RestaurantMapper() {
-        this.connection = getConnection();
+        super("Restaurant");
     }
 
     public void setDependenciesEval(CompleteEvaluationMapper completeEvalMapper,
@@ -38,14 +97,16 @@ public class RestaurantMapper extends AbstractMapper<Restaurant> {
 
     @Override
     public Restaurant findById(int id) {
-        // Vérifie le cache d'abord
-        if (identityMap.containsKey(id)) {
-            return identityMap.get(id);
-        }
-
-        String sql = "SELECT numero, nom, description, site_web, adresse, fk_type, fk_vill FROM RESTAURANTS WHERE numero = ?";
+        // Un seul chargement par identifiant, même si plusieurs threads le demandent
+        return findCached(id, this::loadById);
+    }
 
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+    /**
+     * Lit l'objet en base, appelé par le cache au premier accès à cet identifiant
+     */
+    private Restaurant loadById(int id) {
+        try (Connection connection = getReadConnection();
+             PreparedStatement stmt = connection.prepareStatement(FIND_BY_ID)) {
             stmt.setInt(1, id);
 
             try (ResultSet rs = stmt.executeQuery()) {
@@ -65,8 +126,10 @@ public class RestaurantMapper extends AbstractMapper<Restaurant> {
                             type
                     );
 
-                    identityMap.put(id, restaurant);
-
+                    long version = rs.getLong("version");
+                    if (!rs.wasNull()) {
+                        recordVersion(id, version);
+                    }
                     return restaurant;
                 }
             }
@@ -77,188 +140,256 @@ public class RestaurantMapper extends AbstractMapper<Restaurant> {
         return null;
     }
 
+    /**
+     * Liste tous les restaurants, avec leur ville et leur type, en une seule requête.
+     * Seules les lignes dont la version (ORA_ROWSCN) a changé depuis leur dernière lecture sont
+     * relues dans l'objet en cache ; les autres sont reprises telles quelles, avec leurs
+     * évaluations déjà chargées.
+     */
     @Override
     public Set<Restaurant> findAll() {
-        identityMap.clear(); // vider le cache pour recharger depuis la DB
         Set<Restaurant> restaurants = new LinkedHashSet<>();
-        String sql = "SELECT numero, nom, description, site_web, adresse, fk_type, fk_vill FROM RESTAURANTS";
+        int[] refreshed = new int[1];
 
-        try (PreparedStatement stmt = connection.prepareStatement(sql);
+        try (Connection connection = getReadConnection();
+             PreparedStatement stmt = connection.prepareStatement(FIND_ALL);
              ResultSet rs = stmt.executeQuery()) {
-
             while (rs.next()) {
-                int id = rs.getInt("numero");
-
-                // Création des objets associés
-                int typeId = rs.getInt("fk_type");
-                int cityId = rs.getInt("fk_vill");
-
-                RestaurantType type = this.typeMapper.findById(typeId);
-                City city = this.cityMapper.findById(cityId);
-
-                if (type == null) {
-                    logger.warn("⚠ Restaurant {} ignoré : type {} introuvable", id, typeId);
-                    continue;
-                }
-                if (city == null) {
-                    logger.warn("⚠ Restaurant {} ignoré : city {} introuvable", id, cityId);
-                    continue;
-                }
-
-                // Création de la localisation
-                Localisation address = new Localisation(rs.getString("adresse"), city);
-
-                // Création du restaurant sans ID
-                Restaurant restaurant = new Restaurant(
-                        rs.getString("nom"),
-                        rs.getString("description"),
-                        rs.getString("site_web"),
-                        address,
-                        type
-                );
-                // Assigner l'ID
-                restaurant.setId(id);
-
-                // Ajout au cache et au set
-                identityMap.put(id, restaurant);
-                restaurants.add(restaurant);
+                restaurants.add(mapRow(rs, refreshed));
             }
-
         } catch (SQLException e) {
             logger.error("Erreur findAll Restaurant: {}", e.getMessage());
         }
 
+        logger.debug("findAll : {} restaurants, {} relus", restaurants.size(), refreshed[0]);
         return restaurants;
     }
 
+    /**
+     * Restaurant de la ligne courante d'une requête sur SELECT_GRAPH. La ville et le type sont
+     * lus dans la même ligne et dédoublonnés par leurs caches : une ville partagée par cent
+     * restaurants reste un seul objet, sans requête par restaurant.
+     * @param refreshed compteur des restaurants en cache relus car modifiés
+     */
+    private Restaurant mapRow(ResultSet rs, int[] refreshed) throws SQLException {
+        return mapRow(rs, refreshed, true);
+    }
 
-    @Override
-    public Restaurant create(Restaurant restaurant) {
-        try {
-            // 🔹 Assure que le restaurant a un ID
-            if (restaurant.getId() == null) {
-                restaurant.setId(getSequenceValue()); // ta méthode qui récupère NEXTVAL
-            }
+    /**
+     * @param addToCache false pour ne pas mettre en cache (ni retenir la version d') un
+     * restaurant qui n'y est pas encore ; un restaurant en cache est toujours mis à jour
+     */
+    private Restaurant mapRow(ResultSet rs, int[] refreshed, boolean addToCache) throws SQLException {
+        int id = rs.getInt("numero");
+        long version = rs.getLong("version");
+        // null pour une ligne modifiée par la transaction courante, pas encore validée
+        boolean committed = !rs.wasNull();
+
+        Restaurant restaurant = cache.get(id);
+        if (restaurant != null && isCurrent(id, version, committed)) {
+            return restaurant;
+        }
 
-            // 🔹 Vérifie que le type et la ville ont un ID valide
-            if (restaurant.getType() == null || restaurant.getType().getId() == null) {
-                throw new IllegalStateException("RestaurantType non initialisé ou sans ID");
-            }
-            if (restaurant.getAddress() == null || restaurant.getAddress().getCity() == null ||
-                    restaurant.getAddress().getCity().getId() == null) {
-                throw new IllegalStateException("City non initialisée ou sans ID");
+        City city = cityMapper.resolve(rs.getInt("fk_vill"), rs.getString("code_postal"), rs.getString("nom_ville"));
+        RestaurantType type = typeMapper.resolve(rs.getInt("fk_type"), rs.getString("libelle"), rs.getString("type_description"));
+
+        boolean cached = restaurant != null || addToCache;
+        if (restaurant == null) {
+            restaurant = new Restaurant(
+                    id,
+                    rs.getString("nom"),
+                    null,
+                    rs.getString("site_web"),
+                    new Localisation(rs.getString("adresse"), city),
+                    type
+            );
+            if (addToCache) {
+                cache.put(id, restaurant);
             }
+        } else {
+            // 🔹 Ligne modifiée : mise à jour de l'objet existant, qui garde ses évaluations
+            restaurant.setName(rs.getString("nom"));
+            restaurant.setWebsite(rs.getString("site_web"));
+            restaurant.setType(type);
+            restaurant.getAddress().setStreet(rs.getString("adresse"));
+            restaurant.getAddress().setCity(city);
+            refreshed[0]++;
+        }
+        restaurant.setDescriptionLoader(() -> descriptions.load(id));
+        // 🔹 Version retenue seulement pour un restaurant gardé en cache
+        if (committed && cached) {
+            recordVersion(id, version);
+        }
+        return restaurant;
+    }
 
-            // 🔹 Insert dans la table
-            String sql = "INSERT INTO RESTAURANTS (numero, nom, description, site_web, adresse, fk_type, fk_vill) VALUES (?, ?, ?, ?, ?, ?, ?)";
-            try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-                stmt.setInt(1, restaurant.getId());
-                stmt.setString(2, restaurant.getName());
-                stmt.setString(3, restaurant.getDescription());
-                stmt.setString(4, restaurant.getWebsite());
-                stmt.setString(5, restaurant.getAddress().getStreet());
-                stmt.setInt(6, restaurant.getType().getId());
-                stmt.setInt(7, restaurant.getAddress().getCity().getId());
-                stmt.executeUpdate();
-            }
+    /**
+     * @return true si l'objet en cache correspond à la version lue en base
+     */
+    private static boolean isCurrent(int id, long version, boolean committed) {
+        if (!committed) {
+            // écrite par la transaction courante, donc par ce mapper : l'objet en cache est à jour
+            return true;
+        }
+        synchronized (rowVersions) {
+            // version inconnue (objet écrit par ce mapper ou lu sans sa version) : relu par prudence
+            Long known = rowVersions.get(id);
+            return known != null && known == version;
+        }
+    }
 
-            // 🔹 Commit si nécessaire
-            if (!connection.getAutoCommit()) connection.commit();
+    private static void recordVersion(int id, long version) {
+        synchronized (rowVersions) {
+            rowVersions.put(id, version);
+        }
+    }
 
-            // 🔹 Ajout au cache
-            identityMap.put(restaurant.getId(), restaurant);
+    private static void forgetVersion(int id) {
+        synchronized (rowVersions) {
+            rowVersions.remove(id);
+        }
+    }
 
-            return restaurant;
 
+    @Override
+    public Restaurant create(Restaurant restaurant) {
+        // 🔹 Vérifie que le type et la ville ont un ID valide
+        if (restaurant.getType() == null || restaurant.getType().getId() == null) {
+            throw new IllegalStateException("RestaurantType non initialisé ou sans ID");
+        }
+        if (restaurant.getAddress() == null || restaurant.getAddress().getCity() == null ||
+                restaurant.getAddress().getCity().getId() == null) {
+            throw new IllegalStateException("City non initialisée ou sans ID");
+        }
+
+        try {
+            return inTransaction(connection -> {
+                // 🔹 Assure que le restaurant a un ID
+                if (restaurant.getId() == null) {
+                    restaurant.setId(getSequenceAllocator().next()); // bloc réservé sur SEQ_RESTAURANTS
+                }
+
+                // 🔹 Insert dans la table
+                try (PreparedStatement stmt = connection.prepareStatement(CREATE)) {
+                    stmt.setInt(1, restaurant.getId());
+                    stmt.setString(2, restaurant.getName());
+                    stmt.setString(3, restaurant.getDescription());
+                    stmt.setString(4, restaurant.getWebsite());
+                    stmt.setString(5, restaurant.getAddress().getStreet());
+                    stmt.setInt(6, restaurant.getType().getId());
+                    stmt.setInt(7, restaurant.getAddress().getCity().getId());
+                    stmt.executeUpdate();
+                }
+
+                // 🔹 Ajout au cache
+                cache.put(restaurant.getId(), restaurant);
+                forgetVersion(restaurant.getId());
+                searches.invalidate("RESTAURANTS");
+                publishWrite(restaurant.getId());
+                return restaurant;
+            });
         } catch (SQLException e) {
             logger.error("Erreur create Restaurant: {}", e.getMessage());
-            try {
-                if (!connection.getAutoCommit()) connection.rollback();
-            } catch (SQLException ex) {
-                logger.error("Rollback failed: {}", ex.getMessage());
-            }
             return null;
         }
     }
 
     @Override
     public boolean update(Restaurant restaurant) {
-        String sql = "UPDATE RESTAURANTS SET nom = ?, description = ?, site_web = ?, fk_type = ? WHERE numero = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setString(1, restaurant.getName());
-            stmt.setString(2, restaurant.getDescription());
-            stmt.setString(3, restaurant.getWebsite());
-            stmt.setInt(4, restaurant.getType().getId());
-            stmt.setInt(5, restaurant.getId());
-
-            updateAddress(restaurant, restaurant.getAddress().getStreet(), restaurant.getAddress().getCity());
-
-            int rows = stmt.executeUpdate();
-            if (!connection.getAutoCommit()) connection.commit();
-
-            identityMap.put(restaurant.getId(), restaurant);
-            return rows > 0;
-
+        try {
+            return inTransaction(connection -> {
+                try (PreparedStatement stmt = connection.prepareStatement(UPDATE)) {
+                    stmt.setString(1, restaurant.getName());
+                    stmt.setString(2, restaurant.getDescription());
+                    stmt.setString(3, restaurant.getWebsite());
+                    stmt.setInt(4, restaurant.getType().getId());
+                    stmt.setInt(5, restaurant.getId());
+
+                    // 🔹 L'adresse est mise à jour dans la même transaction
+                    updateAddress(restaurant, restaurant.getAddress().getStreet(), restaurant.getAddress().getCity());
+
+                    int rows = stmt.executeUpdate();
+                    cache.put(restaurant.getId(), restaurant);
+                    forgetVersion(restaurant.getId());
+                    searches.invalidate("RESTAURANTS");
+                    publishWrite(restaurant.getId());
+                    return rows > 0;
+                }
+            });
         } catch (SQLException e) {
             logger.error("Erreur update Restaurant: {}", e.getMessage());
-            try { if (!connection.getAutoCommit()) connection.rollback(); } catch (SQLException ex) { logger.error("Rollback failed: {}", ex.getMessage()); }
             return false;
         }
     }
 
+    /**
+     * Supprime le restaurant avec ses évaluations, leurs notes et ses likes, en une transaction.
+     * @throws IllegalStateException si les mappers d'évaluations n'ont pas été injectés
+     */
     @Override
     public boolean delete(Restaurant restaurant) {
+        requireEvalDependencies("delete");
         try {
-            int restId = restaurant.getId();
-
-            // Supprimer les CompleteEvaluations et Grades associés
-            CompleteEvaluationMapper completeEvalMapper = new CompleteEvaluationMapper();
-            GradeMapper gradeMapper = new GradeMapper();
-            BasicEvaluationMapper basicEvalMapper = new BasicEvaluationMapper();
-
-            for (CompleteEvaluation eval : completeEvalMapper.findByRestaurant(restaurant)) {
-                for (Grade grade : gradeMapper.findByCompleteEvaluation(eval)) {
-                    gradeMapper.delete(grade);
+            // 🔹 Toute la suppression en cascade est validée (ou annulée) en une seule fois
+            return inTransaction(connection -> {
+                int restId = restaurant.getId();
+
+                // Supprimer les CompleteEvaluations et Grades associés, avec les mappers injectés
+                for (CompleteEvaluation eval : completeEvalMapper.findByRestaurant(restaurant)) {
+                    for (Grade grade : gradeMapper.findByCompleteEvaluation(eval)) {
+                        gradeMapper.delete(grade);
+                    }
+                    completeEvalMapper.delete(eval);
                 }
-                completeEvalMapper.delete(eval);
-            }
-
-            // Supprimer les Likes
-            for (BasicEvaluation like : basicEvalMapper.findByRestaurant(restaurant)) {
-                basicEvalMapper.delete(like);
-            }
 
-            boolean deleted = deleteById(restId);
-            if (deleted) removeFromCache(restId);
-            return deleted;
+                // Supprimer les Likes
+                for (BasicEvaluation like : basicEvalMapper.findByRestaurant(restaurant)) {
+                    basicEvalMapper.delete(like);
+                }
 
+                boolean deleted = deleteById(restId);
+                if (deleted) removeFromCache(restId);
+                return deleted;
+            });
         } catch (Exception e) {
             logger.error("Erreur delete Restaurant complet: {}", e.getMessage());
             return false;
         }
     }
 
+    /**
+     * @throws IllegalStateException si les mappers d'évaluations n'ont pas été injectés
+     * (mapper construit hors de {@link MapperFactory})
+     */
+    private void requireEvalDependencies(String operation) {
+        if (completeEvalMapper == null || gradeMapper == null || basicEvalMapper == null) {
+            throw new IllegalStateException(operation + " : mappers d'évaluations non injectés, "
+                    + "passer par MapperFactory ou setDependenciesEval");
+        }
+    }
+
     @Override
     public boolean deleteById(int id) {
-        String sql = "DELETE FROM RESTAURANTS WHERE numero = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setInt(1, id);
-            int rows = stmt.executeUpdate();
-            if (!connection.getAutoCommit()) connection.commit();
-
-            if (rows > 0) removeFromCache(id);
-            return rows > 0;
-
+        try {
+            return inTransaction(connection -> {
+                try (PreparedStatement stmt = connection.prepareStatement(DELETE_BY_ID)) {
+                    stmt.setInt(1, id);
+                    int rows = stmt.executeUpdate();
+                    if (rows > 0) removeFromCache(id);
+                    searches.invalidate("RESTAURANTS");
+                    publishWrite(id);
+                    return rows > 0;
+                }
+            });
         } catch (SQLException e) {
             logger.error("Erreur deleteById Restaurant: {}", e.getMessage());
-            try { if (!connection.getAutoCommit()) connection.rollback(); } catch (SQLException ex) { logger.error("Rollback failed: {}", ex.getMessage()); }
             return false;
         }
     }
 
     @Override
-    protected String getSequenceQuery() {
-        return "SELECT SEQ_RESTAURANTS.NEXTVAL FROM dual";
+    protected String getSequenceName() {
+        return "SEQ_RESTAURANTS";
     }
 
     @Override
@@ -271,6 +402,11 @@ public class RestaurantMapper extends AbstractMapper<Restaurant> {
         return "SELECT COUNT(*) FROM RESTAURANTS";
     }
 
+    @Override
+    protected String getIdsQuery() {
+        return "SELECT numero FROM RESTAURANTS";
+    }
+
     /**
      * Met à jour l'adresse et la ville d'un restaurant
      */
@@ -283,58 +419,133 @@ public class RestaurantMapper extends AbstractMapper<Restaurant> {
             newCity.getRestaurants().add(restaurant);
         }
 
-        String sql = "UPDATE RESTAURANTS SET adresse = ?, fk_vill = ? WHERE numero = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setString(1, restaurant.getAddress().getStreet());
-            stmt.setInt(2, restaurant.getAddress().getCity().getId());
-            stmt.setInt(3, restaurant.getId());
-            int rows = stmt.executeUpdate();
-            if (!connection.getAutoCommit()) connection.commit();
-
-            identityMap.put(restaurant.getId(), restaurant);
-            return rows > 0;
-        }
+        return inTransaction(connection -> {
+            try (PreparedStatement stmt = connection.prepareStatement(UPDATE_ADDRESS)) {
+                stmt.setString(1, restaurant.getAddress().getStreet());
+                stmt.setInt(2, restaurant.getAddress().getCity().getId());
+                stmt.setInt(3, restaurant.getId());
+                int rows = stmt.executeUpdate();
+
+                cache.put(restaurant.getId(), restaurant);
+                forgetVersion(restaurant.getId());
+                searches.invalidate("RESTAURANTS");
+                publishWrite(restaurant.getId());
+                return rows > 0;
+            }
+        });
     }
 
     public void removeFromCache(int id) {
-        identityMap.remove(id);
+        cache.remove(id);
+        forgetVersion(id);
+    }
+
+    /**
+     * Charge en une requête les descriptions pas encore chargées d'une liste de restaurants.
+     */
+    public void loadDescriptions(Collection<Restaurant> restaurants) {
+        Map<Integer, Restaurant> pending = new HashMap<>();
+        for (Restaurant restaurant : restaurants) {
+            if (!restaurant.isDescriptionLoaded()) {
+                pending.put(restaurant.getId(), restaurant);
+            }
+        }
+        Map<Integer, String> texts = descriptions.loadAll(pending.keySet());
+        pending.forEach((id, restaurant) -> restaurant.setDescription(texts.get(id)));
     }
 
     public void clearCache() {
-        identityMap.clear();
+        cache.clear();
     }
+
+    /**
+     * Lit d'un bloc ce qu'affiche le détail d'un restaurant : ses évaluations complètes avec
+     * leur commentaire, leurs notes et leurs critères, et ses likes. Trois requêtes sur une même
+     * connexion, quel que soit le nombre d'évaluations ; les critères viennent des données de
+     * référence. Les évaluations du restaurant sont remplacées par celles lues.
+     * @return le détail, ou null si la lecture a échoué
+     * @throws IllegalStateException si les mappers d'évaluations n'ont pas été injectés
+     * (mapper construit hors de {@link MapperFactory})
+     */
+    public RestaurantDetail fetchDetail(Restaurant restaurant) {
+        requireEvalDependencies("fetchDetail");
+        try (Connection connection = getReadConnection()) {
+            Map<Integer, CompleteEvaluation> completeEvals = completeEvalMapper.findDetailByRestaurant(connection, restaurant);
+            gradeMapper.loadByRestaurant(connection, restaurant, completeEvals);
+            Set<BasicEvaluation> basicEvals = basicEvalMapper.findByRestaurant(connection, restaurant);
+
+            restaurant.getEvaluations().clear();
+            restaurant.getEvaluations().addAll(completeEvals.values());
+            restaurant.getEvaluations().addAll(basicEvals);
+            return new RestaurantDetail(restaurant, new LinkedHashSet<>(completeEvals.values()), basicEvals);
+        } catch (SQLException e) {
+            logger.error("Erreur fetchDetail Restaurant: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    protected String getFindByIdsQuery() {
+        return FIND_BY_IDS;
+    }
+
+    @Override
+    protected String getStreamAllQuery() {
+        return FIND_ALL;
+    }
+
+    /**
+     * La ville et le type sont dans la ligne : rien à demander à batch. Un restaurant absent du
+     * cache n'y est pas mis (voir {@link #streamAll()}) ; findByIds l'y ajoute lui-même.
+     */
+    @Override
+    protected Restaurant mapRow(ResultSet rs, BatchLoader batch) throws SQLException {
+        return mapRow(rs, new int[1], false);
+    }
+
+    /**
+     * Reprend les restaurants d'un résultat de recherche en cache, dans l'ordre des identifiants.
+     * Ceux qui ont quitté le cache d'entités sont relus ensemble (voir {@link #findByIds}).
+     */
+    private Set<Restaurant> findAllById(int[] ids, Set<Restaurant> restaurants) {
+        List<Integer> idList = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            idList.add(id);
+        }
+        Map<Integer, Restaurant> found = findByIds(idList);
+        for (int id : ids) {
+            Restaurant restaurant = found.get(id);
+            if (restaurant != null) {
+                restaurants.add(restaurant);
+            }
+        }
+        return restaurants;
+    }
+
+    private static int[] idsOf(Collection<Restaurant> restaurants) {
+        return restaurants.stream().mapToInt(Restaurant::getId).toArray();
+    }
+
     /**
      * Retourne tous les restaurants situés dans une ville donnée
      */
     public Set<Restaurant> findByCity(String cityName) throws SQLException {
+        // 🔹 Résultat déjà connu : les restaurants sont repris du cache d'entités
+        QueryCache.Lookup lookup = searches.lookup(FIND_BY_CITY, CITY_SEARCH_TABLES, cityName);
+        int[] cachedIds = lookup.cached();
+        if (cachedIds != null) {
+            return findAllById(cachedIds, new HashSet<>());
+        }
+
         Set<Restaurant> restaurants = new HashSet<>();
-        String sql = "SELECT r.numero, r.nom, r.description, r.site_web, r.adresse, r.fk_type, r.fk_vill " +
-                "FROM RESTAURANTS r INNER JOIN VILLES v ON r.fk_vill = v.numero " +
-                "WHERE v.nom_ville = ?";
 
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        try (Connection connection = getReadConnection();
+             PreparedStatement stmt = connection.prepareStatement(FIND_BY_CITY)) {
             stmt.setString(1, cityName);
             try (ResultSet rs = stmt.executeQuery()) {
+                int[] refreshed = new int[1];
                 while (rs.next()) {
-                    int id = rs.getInt("numero");
-                    Restaurant restaurant = identityMap.get(id);
-
-                    if (restaurant == null) {
-                        RestaurantType type = new RestaurantTypeMapper().findById(rs.getInt("fk_type"));
-                        City city = new CityMapper().findById(rs.getInt("fk_vill"));
-                        restaurant = new Restaurant(
-                                id,
-                                rs.getString("nom"),
-                                rs.getString("description"),
-                                rs.getString("site_web"),
-                                rs.getString("adresse"),
-                                city,
-                                type
-                        );
-                        identityMap.put(id, restaurant);
-                    }
-
-                    restaurants.add(restaurant);
+                    restaurants.add(mapRow(rs, refreshed));
                 }
             }
         } catch (SQLException e) {
@@ -342,6 +553,7 @@ public class RestaurantMapper extends AbstractMapper<Restaurant> {
             throw e;
         }
 
+        lookup.store(idsOf(restaurants));
         return restaurants;
     }
 
@@ -349,34 +561,22 @@ public class RestaurantMapper extends AbstractMapper<Restaurant> {
      * Retourne tous les restaurants d'un type donné
      */
     public Set<Restaurant> findByRestaurantType(String typeLabel) throws SQLException {
+        // 🔹 Résultat déjà connu : les restaurants sont repris du cache d'entités
+        QueryCache.Lookup lookup = searches.lookup(FIND_BY_RESTAURANT_TYPE, TYPE_SEARCH_TABLES, typeLabel);
+        int[] cachedIds = lookup.cached();
+        if (cachedIds != null) {
+            return findAllById(cachedIds, new HashSet<>());
+        }
+
         Set<Restaurant> restaurants = new HashSet<>();
-        String sql = "SELECT r.numero, r.nom, r.description, r.site_web, r.adresse, r.fk_type, r.fk_vill " +
-                "FROM RESTAURANTS r INNER JOIN TYPES_GASTRONOMIQUES t ON r.fk_type = t.numero " +
-                "WHERE t.libelle = ?";
 
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        try (Connection connection = getReadConnection();
+             PreparedStatement stmt = connection.prepareStatement(FIND_BY_RESTAURANT_TYPE)) {
             stmt.setString(1, typeLabel);
             try (ResultSet rs = stmt.executeQuery()) {
+                int[] refreshed = new int[1];
                 while (rs.next()) {
-                    int id = rs.getInt("numero");
-                    Restaurant restaurant = identityMap.get(id);
-
-                    if (restaurant == null) {
-                        RestaurantType type = new RestaurantTypeMapper().findById(rs.getInt("fk_type"));
-                        City city = new CityMapper().findById(rs.getInt("fk_vill"));
-                        restaurant = new Restaurant(
-                                id,
-                                rs.getString("nom"),
-                                rs.getString("description"),
-                                rs.getString("site_web"),
-                                rs.getString("adresse"),
-                                city,
-                                type
-                        );
-                        identityMap.put(id, restaurant);
-                    }
-
-                    restaurants.add(restaurant);
+                    restaurants.add(mapRow(rs, refreshed));
                 }
             }
         } catch (SQLException e) {
@@ -384,40 +584,26 @@ public class RestaurantMapper extends AbstractMapper<Restaurant> {
             throw e;
         }
 
+        lookup.store(idsOf(restaurants));
         return restaurants;
     }
     public Set<Restaurant> findByName(String name) throws SQLException {
+        // 🔹 Résultat déjà connu : les restaurants sont repris du cache d'entités
+        QueryCache.Lookup lookup = searches.lookup(FIND_BY_NAME, NAME_SEARCH_TABLES, name);
+        int[] cachedIds = lookup.cached();
+        if (cachedIds != null) {
+            return findAllById(cachedIds, new LinkedHashSet<>());
+        }
+
         Set<Restaurant> restaurants = new LinkedHashSet<>();
-        String sql = "SELECT numero, nom, description, site_web, adresse, fk_type, fk_vill " +
-                "FROM RESTAURANTS WHERE LOWER(nom) LIKE LOWER(?)";
 
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        try (Connection connection = getReadConnection();
+             PreparedStatement stmt = connection.prepareStatement(FIND_BY_NAME)) {
             stmt.setString(1, "%" + name + "%");
-
             try (ResultSet rs = stmt.executeQuery()) {
+                int[] refreshed = new int[1];
                 while (rs.next()) {
-                    int id = rs.getInt("numero");
-
-                    // Vérifie le cache d'abord
-                    Restaurant restaurant = identityMap.get(id);
-                    if (restaurant == null) {
-                        City city = this.cityMapper.findById(rs.getInt("fk_vill"));
-                        RestaurantType type = this.typeMapper.findById(rs.getInt("fk_type"));
-                        Localisation address = new Localisation(rs.getString("adresse"), city);
-
-                        restaurant = new Restaurant(
-                                id,
-                                rs.getString("nom"),
-                                rs.getString("description"),
-                                rs.getString("site_web"),
-                                address,
-                                type
-                        );
-
-                        identityMap.put(id, restaurant);
-                    }
-
-                    restaurants.add(restaurant);
+                    restaurants.add(mapRow(rs, refreshed));
                 }
             }
         } catch (SQLException e) {
@@ -425,6 +611,7 @@ public class RestaurantMapper extends AbstractMapper<Restaurant> {
             throw e;
         }
 
+        lookup.store(idsOf(restaurants));
         return restaurants;
     }
 }
@@ -2,10 +2,14 @@ package ch.hearc.ig.guideresto.persistence.mapper;
 
 import ch.hearc.ig.guideresto.business.RestaurantType;
 import ch.hearc.ig.guideresto.persistence.AbstractMapper;
+import ch.hearc.ig.guideresto.persistence.StatementRegistry;
+import ch.hearc.ig.guideresto.persistence.cache.InvalidationBus;
+import ch.hearc.ig.guideresto.persistence.cache.QueryCache;
 import java.sql.*;
 import java.util.HashSet;
 import java.util.Set;
-import static ch.hearc.ig.guideresto.persistence.ConnectionUtils.getConnection;
+import static ch.hearc.ig.guideresto.persistence.ConnectionUtils.getReadConnection;
+import static ch.hearc.ig.guideresto.persistence.TransactionManager.inTransaction;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import java.sql.*;
@@ -14,23 +18,52 @@ import java.util.*;
 public class RestaurantTypeMapper extends AbstractMapper<RestaurantType> {
 
     private static final Logger logger = LoggerFactory.getLogger(RestaurantTypeMapper.class);
-    private final Connection connection;
-    private final Map<Integer, RestaurantType> identityMap = new HashMap<>();
+    private static final String FIND_BY_ID = StatementRegistry.register("RestaurantType.findById",
+            "SELECT numero, libelle, description FROM TYPES_GASTRONOMIQUES WHERE numero = ?");
+    private static final String FIND_BY_LABEL = StatementRegistry.register("RestaurantType.findByLabel",
+            "SELECT numero, libelle, description FROM TYPES_GASTRONOMIQUES WHERE libelle = ?");
+    private static final String FIND_ALL = StatementRegistry.register("RestaurantType.findAll",
+            "SELECT numero, libelle, description FROM TYPES_GASTRONOMIQUES");
+    private static final String CREATE = StatementRegistry.register("RestaurantType.create",
+            "INSERT INTO TYPES_GASTRONOMIQUES (numero, libelle, description) VALUES (?, ?, ?)");
+    private static final String UPDATE = StatementRegistry.register("RestaurantType.update",
+            "UPDATE TYPES_GASTRONOMIQUES SET libelle = ?, description = ? WHERE numero = ?");
+    private static final String DELETE_BY_ID = StatementRegistry.register("RestaurantType.deleteById",
+            "DELETE FROM TYPES_GASTRONOMIQUES WHERE numero = ?");
+    private static final String FIND_BY_NAME = StatementRegistry.register("RestaurantType.findByName",
+            "SELECT numero, libelle, description FROM TYPES_GASTRONOMIQUES WHERE libelle = ?");
+    private static final String EXISTS_BY_NAME = StatementRegistry.register("RestaurantType.existsByName",
+            "SELECT 1 FROM TYPES_GASTRONOMIQUES WHERE libelle = ?");
+
+    static {
+        // 🔹 Type écrit par une autre instance : recherches et données de référence périmées
+        InvalidationBus.getInstance().addListener("RestaurantType", id -> {
+            QueryCache.getInstance().invalidate("TYPES_GASTRONOMIQUES");
+            ReferenceData.invalidate();
+        });
+    }
 
     public RestaurantTypeMapper() {
-        this.connection = getConnection();
+        super("RestaurantType");
     }
 
     @Override
     public RestaurantType findById(int id) {
-        // 🔹 Vérifie d'abord dans le cache
-        if (identityMap.containsKey(id)) {
-
-            return identityMap.get(id);
+        ReferenceData.Snapshot reference = ReferenceData.snapshot();
+        RestaurantType known = reference == null ? null : reference.getType(id);
+        if (known != null) {
+            return known;
         }
+        // Un seul chargement par identifiant, même si plusieurs threads le demandent
+        return findCached(id, this::loadById);
+    }
 
-        String sql = "SELECT numero, libelle, description FROM TYPES_GASTRONOMIQUES WHERE numero = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+    /**
+     * Lit l'objet en base, appelé par le cache au premier accès à cet identifiant
+     */
+    private RestaurantType loadById(int id) {
+        try (Connection connection = getReadConnection();
+             PreparedStatement stmt = connection.prepareStatement(FIND_BY_ID)) {
             stmt.setInt(1, id);
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
@@ -40,8 +73,6 @@ public class RestaurantTypeMapper extends AbstractMapper<RestaurantType> {
                             rs.getString("description")
                     );
 
-                    // Ajout dans le cache
-                    identityMap.put(type.getId(), type);
                     return type;
                 }
             }
@@ -52,17 +83,23 @@ public class RestaurantTypeMapper extends AbstractMapper<RestaurantType> {
     }
 
     public RestaurantType findByLabel(String label) {
-        String sql = "SELECT numero, libelle, description FROM TYPES_GASTRONOMIQUES WHERE libelle = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        ReferenceData.Snapshot reference = ReferenceData.snapshot();
+        RestaurantType known = reference == null ? null : reference.findTypeByLabel(label);
+        if (known != null) {
+            return known;
+        }
+
+        try (Connection connection = getReadConnection();
+             PreparedStatement stmt = connection.prepareStatement(FIND_BY_LABEL)) {
             stmt.setString(1, label);
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
                     int id = rs.getInt("numero");
 
                     // 🔹 Vérifie le cache avant de créer un nouvel objet
-                    if (identityMap.containsKey(id)) {
+                    if (cache.containsKey(id)) {
 
-                        return identityMap.get(id);
+                        return cache.get(id);
                     }
 
                     RestaurantType type = new RestaurantType(
@@ -71,7 +108,7 @@ public class RestaurantTypeMapper extends AbstractMapper<RestaurantType> {
                             rs.getString("description")
                     );
 
-                    identityMap.put(id, type);
+                    cache.put(id, type);
                     return type;
                 }
             }
@@ -81,24 +118,54 @@ public class RestaurantTypeMapper extends AbstractMapper<RestaurantType> {
         return null;
     }
 
+    /**
+     * Type lu dans une jointure d'une autre table : l'objet déjà connu (données de référence
+     * ou cache) est repris, sinon il est créé à partir des colonnes lues et mis en cache.
+     */
+    RestaurantType resolve(int id, String label, String description) {
+        ReferenceData.Snapshot reference = ReferenceData.snapshot();
+        RestaurantType known = reference == null ? null : reference.getType(id);
+        if (known != null) {
+            return known;
+        }
+        RestaurantType type = cache.get(id);
+        if (type == null) {
+            type = new RestaurantType(id, label, description);
+            cache.put(id, type);
+        }
+        return type;
+    }
+
     @Override
     public Set<RestaurantType> findAll() {
+        // 🔹 Servi depuis les données de référence en mémoire si elles sont chargées
+        ReferenceData.Snapshot reference = ReferenceData.snapshot();
+        if (reference != null) {
+            return new HashSet<>(reference.getTypes());
+        }
+        return loadAll();
+    }
+
+    /**
+     * Lit toute la table, sans passer par les données de référence (voir {@link ReferenceData})
+     */
+    Set<RestaurantType> loadAll() {
         Set<RestaurantType> types = new HashSet<>();
-        String sql = "SELECT numero, libelle, description FROM TYPES_GASTRONOMIQUES";
 
-        try (PreparedStatement stmt = connection.prepareStatement(sql);
+        try (Connection connection = getReadConnection();
+             PreparedStatement stmt = connection.prepareStatement(FIND_ALL);
              ResultSet rs = stmt.executeQuery()) {
             while (rs.next()) {
                 int id = rs.getInt("numero");
 
-                RestaurantType type = identityMap.get(id);
+                RestaurantType type = cache.get(id);
                 if (type == null) {
                     type = new RestaurantType(
                             id,
                             rs.getString("libelle"),
                             rs.getString("description")
                     );
-                    identityMap.put(id, type);
+                    cache.put(id, type);
                 }
 
                 types.add(type);
@@ -112,67 +179,56 @@ public class RestaurantTypeMapper extends AbstractMapper<RestaurantType> {
     @Override
     public RestaurantType create(RestaurantType type) {
         try {
-            // 🔹 Vérifie si le type existe déjà pour éviter doublon inutile
-            RestaurantType existing = findByName(type.getLabel());
-            if (existing != null) {
-                return existing;
-            }
-
-            // 🔹 Génération de l'ID via la séquence
-            int id;
-            try (PreparedStatement seqStmt = connection.prepareStatement(
-                    "SELECT SEQ_TYPES_GASTRONOMIQUES.NEXTVAL FROM dual"
-            )) {
-                try (ResultSet rs = seqStmt.executeQuery()) {
-                    if (!rs.next()) throw new SQLException("Impossible de récupérer NEXTVAL pour SEQ_TYPES_GASTRONOMIQUES");
-                    id = rs.getInt(1);
+            return inTransaction(connection -> {
+                // 🔹 Vérifie si le type existe déjà pour éviter doublon inutile
+                RestaurantType existing = findByName(type.getLabel());
+                if (existing != null) {
+                    return existing;
                 }
-            }
-            type.setId(id);
-
-            // 🔹 Insert dans la table
-            String sql = "INSERT INTO TYPES_GASTRONOMIQUES (numero, libelle, description) VALUES (?, ?, ?)";
-            try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-                stmt.setInt(1, type.getId());
-                stmt.setString(2, type.getLabel());
-                stmt.setString(3, type.getDescription());
-                stmt.executeUpdate();
-            }
 
-            // 🔹 Commit si nécessaire
-            if (!connection.getAutoCommit()) connection.commit();
+                // 🔹 Génération de l'ID via le bloc réservé sur la séquence
+                type.setId(getSequenceAllocator().next());
 
-            // 🔹 Ajout au cache
-            identityMap.put(type.getId(), type);
-
-            return type;
+                // 🔹 Insert dans la table
+                try (PreparedStatement stmt = connection.prepareStatement(CREATE)) {
+                    stmt.setInt(1, type.getId());
+                    stmt.setString(2, type.getLabel());
+                    stmt.setString(3, type.getDescription());
+                    stmt.executeUpdate();
+                }
 
+                // 🔹 Ajout au cache
+                cache.put(type.getId(), type);
+                QueryCache.getInstance().invalidate("TYPES_GASTRONOMIQUES");
+                ReferenceData.invalidate();
+                publishWrite(type.getId());
+                return type;
+            });
         } catch (SQLException e) {
             logger.error("Erreur create RestaurantType: {}", e.getMessage());
-            try {
-                if (!connection.getAutoCommit()) connection.rollback();
-            } catch (SQLException r) {
-                logger.error("Rollback failed: {}", r.getMessage());
-            }
             return null;
         }
     }
 
     @Override
     public boolean update(RestaurantType object) {
-        String sql = "UPDATE TYPES_GASTRONOMIQUES SET libelle = ?, description = ? WHERE numero = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setString(1, object.getLabel());
-            stmt.setString(2, object.getDescription());
-            stmt.setInt(3, object.getId());
-            int affected = stmt.executeUpdate();
-
-            if (affected > 0) {
-                identityMap.put(object.getId(), object); // 🔹 Mise à jour du cache
-            }
-
-            if (!connection.getAutoCommit()) connection.commit();
-            return affected > 0;
+        try {
+            return inTransaction(connection -> {
+                try (PreparedStatement stmt = connection.prepareStatement(UPDATE)) {
+                    stmt.setString(1, object.getLabel());
+                    stmt.setString(2, object.getDescription());
+                    stmt.setInt(3, object.getId());
+                    int affected = stmt.executeUpdate();
+
+                    if (affected > 0) {
+                        cache.put(object.getId(), object); // 🔹 Mise à jour du cache
+                    }
+                    QueryCache.getInstance().invalidate("TYPES_GASTRONOMIQUES");
+                    ReferenceData.invalidate();
+                    publishWrite(object.getId());
+                    return affected > 0;
+                }
+            });
         } catch (SQLException ex) {
             logger.error("update SQLException: {}", ex.getMessage());
             return false;
@@ -186,17 +242,21 @@ public class RestaurantTypeMapper extends AbstractMapper<RestaurantType> {
 
     @Override
     public boolean deleteById(int id) {
-        String sql = "DELETE FROM TYPES_GASTRONOMIQUES WHERE numero = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setInt(1, id);
-            int affected = stmt.executeUpdate();
-
-            if (affected > 0) {
-                identityMap.remove(id); // 🔹 Supprimer du cache
-            }
+        try {
+            return inTransaction(connection -> {
+                try (PreparedStatement stmt = connection.prepareStatement(DELETE_BY_ID)) {
+                    stmt.setInt(1, id);
+                    int affected = stmt.executeUpdate();
 
-            if (!connection.getAutoCommit()) connection.commit();
-            return affected > 0;
+                    if (affected > 0) {
+                        cache.remove(id); // 🔹 Supprimer du cache
+                    }
+                    QueryCache.getInstance().invalidate("TYPES_GASTRONOMIQUES");
+                    ReferenceData.invalidate();
+                    publishWrite(id);
+                    return affected > 0;
+                }
+            });
         } catch (SQLException ex) {
             logger.error("deleteById SQLException: {}", ex.getMessage());
             return false;
@@ -204,8 +264,8 @@ public class RestaurantTypeMapper extends AbstractMapper<RestaurantType> {
     }
 
     @Override
-    protected String getSequenceQuery() {
-        return "SELECT SEQ_TYPES_GASTRONOMIQUES.NEXTVAL FROM dual";
+    protected String getSequenceName() {
+        return "SEQ_TYPES_GASTRONOMIQUES";
     }
 
     @Override
@@ -219,15 +279,21 @@ public class RestaurantTypeMapper extends AbstractMapper<RestaurantType> {
     }
 
     public RestaurantType findByName(String name) throws SQLException {
-        String sql = "SELECT numero, libelle, description FROM TYPES_GASTRONOMIQUES WHERE libelle = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        ReferenceData.Snapshot reference = ReferenceData.snapshot();
+        RestaurantType known = reference == null ? null : reference.findTypeByLabel(name);
+        if (known != null) {
+            return known;
+        }
+
+        try (Connection connection = getReadConnection();
+             PreparedStatement stmt = connection.prepareStatement(FIND_BY_NAME)) {
             stmt.setString(1, name);
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
                     int id = rs.getInt("numero");
 
-                    if (identityMap.containsKey(id)) {
-                        return identityMap.get(id);
+                    if (cache.containsKey(id)) {
+                        return cache.get(id);
                     }
 
                     RestaurantType type = new RestaurantType(
@@ -236,7 +302,7 @@ public class RestaurantTypeMapper extends AbstractMapper<RestaurantType> {
                             rs.getString("description")
                     );
 
-                    identityMap.put(id, type);
+                    cache.put(id, type);
                     return type;
                 }
             }
@@ -248,8 +314,8 @@ public class RestaurantTypeMapper extends AbstractMapper<RestaurantType> {
     }
 
     public boolean existsByName(String name) throws SQLException {
-        String sql = "SELECT 1 FROM TYPES_GASTRONOMIQUES WHERE libelle = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        try (Connection connection = getReadConnection();
+             PreparedStatement stmt = connection.prepareStatement(EXISTS_BY_NAME)) {
             stmt.setString(1, name);
             try (ResultSet rs = stmt.executeQuery()) {
                 return rs.next();
@@ -22,6 +22,9 @@ public class Application {
 
         scanner = new Scanner(System.in);
 
+        // Villes, types et critères servis depuis la mémoire pendant toute la session
+        ReferenceData.preload();
+
         System.out.println("Bienvenue dans GuideResto ! Que souhaitez-vous faire ?");
         int choice;
         do {
@@ -309,15 +312,13 @@ public class Application {
             System.out.println();
 
 
-            Set<CompleteEvaluation> completeEvals = userService.getCompleteEvaluations(restaurant);
+            // 🔹 Évaluations, notes et likes lus d'un bloc, quel que soit leur nombre
+            RestaurantDetail detail = userService.getRestaurantDetail(restaurant);
+            Set<CompleteEvaluation> completeEvals = detail != null ? detail.getCompleteEvaluations() : Set.of();
 
             // 🔹 Likes / Dislikes
-            // Récupérer BasicEvaluation depuis le service
-            userService.getBasicEvaluations(restaurant);
-
-            // Maintenant countLikes donnera les vrais résultats
-            System.out.println("Likes : " + userService.countLikes(restaurant, true));
-            System.out.println("Dislikes : " + userService.countLikes(restaurant, false));
+            System.out.println("Likes : " + (detail != null ? detail.getLikes() : 0));
+            System.out.println("Dislikes : " + (detail != null ? detail.getDislikes() : 0));
 
             System.out.println();
 
@@ -466,7 +467,7 @@ public class Application {
 
         // Lire les notes pour chaque critère
         Map<EvaluationCriteria, Integer> notes = new HashMap<>();
-        Set<EvaluationCriteria> criteres = new EvaluationCriteriaMapper().findAll();
+        Set<EvaluationCriteria> criteres = userService.getAllCriteria();
         for (EvaluationCriteria crit : criteres) {
             int note;
             do {
@@ -10,13 +10,12 @@ import ch.hearc.ig.guideresto.persistence.mapper.CityMapper;
 import java.net.Inet4Address;
 import java.net.UnknownHostException;
 import java.util.*;
-import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.Set;
-import static ch.hearc.ig.guideresto.persistence.ConnectionUtils.getConnection;
+import ch.hearc.ig.guideresto.persistence.UnitOfWork;
+import static ch.hearc.ig.guideresto.persistence.TransactionManager.inTransaction;
 
 public class UserService {
-    private Connection connection;
     private final CityMapper cityMapper;
     private final RestaurantTypeMapper typeMapper;
     private final GradeMapper gradeMapper;
@@ -24,9 +23,10 @@ public class UserService {
     private final EvaluationCriteriaMapper evaluationCriteriaMapper;
     private final BasicEvaluationMapper basicEvaluation;
     private final CompleteEvaluationMapper completeEvaluationMapper;
+    private final MapperFactory mapperFactory;
 
     public UserService() {
-        MapperFactory mapperFactory = new MapperFactory();
+        mapperFactory = new MapperFactory();
         cityMapper = mapperFactory.getCityMapper();
         typeMapper = mapperFactory.getTypeMapper();
         gradeMapper = mapperFactory.getGradeMapper();
@@ -67,6 +67,11 @@ public class UserService {
     public RestaurantType findByLabel(String label) {
         return typeMapper.findByLabel(label);
     }
+
+    // Récupère tous les critères d'évaluation, dans l'ordre de leur identifiant
+    public Set<EvaluationCriteria> getAllCriteria() {
+        return evaluationCriteriaMapper.findAll();
+    }
     public Set<Restaurant> getAllRestaurants() {
         return restaurantMapper.findAll();
     }
@@ -89,23 +94,13 @@ public class UserService {
                                     String street, City city, RestaurantType type) {
         Restaurant restaurant = new Restaurant(null, name, description, website, street, city, type);
 
-        // Gestion transactionnelle simple
-        Connection conn = getConnection();
-        boolean autoCommit = true;
+        // Une seule transaction, validée à la fin par TransactionManager
         try {
-            autoCommit = conn.getAutoCommit();
-            conn.setAutoCommit(false);
-
-            restaurantMapper.create(restaurant);
-
-            conn.commit();
+            return inTransaction(connection -> restaurantMapper.create(restaurant));
         } catch (SQLException e) {
-            try { conn.rollback(); } catch (SQLException ex) { ex.printStackTrace(); }
+            e.printStackTrace();
             return null;
-        } finally {
-            try { conn.setAutoCommit(autoCommit); } catch (SQLException ignored) {}
         }
-        return restaurant;
     }
 
     public boolean updateRestaurant(Restaurant restaurant) {
@@ -117,7 +112,12 @@ public class UserService {
     }
 
     public boolean deleteRestaurantService(Restaurant restaurant) {
-        return restaurantMapper.delete(restaurant);
+        try {
+            return inTransaction(connection -> restaurantMapper.delete(restaurant));
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return false;
+        }
     }
 
 
@@ -173,13 +173,17 @@ public class UserService {
             eval.getGrades().add(grade);
         }
 
-        // Persistance
-        CompleteEvaluationMapper evalMapper = new CompleteEvaluationMapper();
-        evalMapper.create(eval);
-
-        GradeMapper gradeMapper = new GradeMapper();
+        // Persistance : le commentaire et toutes ses notes en un lot, un seul commit
+        UnitOfWork unitOfWork = mapperFactory.newUnitOfWork();
+        unitOfWork.registerNew(eval);
         for (Grade g : eval.getGrades()) {
-            gradeMapper.create(g);
+            unitOfWork.registerNew(g);
+        }
+        try {
+            unitOfWork.commit();
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return null;
         }
 
         // Ajouter à l'objet restaurant
@@ -203,7 +207,12 @@ public class UserService {
         restaurant.getAddress().setCity(newCity);
 
         // Persistance
-        return restaurantMapper.update(restaurant);
+        try {
+            return inTransaction(connection -> restaurantMapper.update(restaurant));
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return false;
+        }
     }
 
     public City addOrGetCity(String cityName, String postalCode) throws SQLException{
@@ -226,11 +235,22 @@ public class UserService {
 
         return basicEvals;
     }
+    /**
+     * Évaluations complètes (commentaires, notes, critères) et likes d'un restaurant, lus d'un bloc
+     * pour l'écran de détail
+     */
+    public RestaurantDetail getRestaurantDetail(Restaurant restaurant) {
+        if (restaurant == null) return null;
+        return restaurantMapper.fetchDetail(restaurant);
+    }
+
     public Set<CompleteEvaluation> getCompleteEvaluations(Restaurant restaurant) {
         if (restaurant == null) return Set.of();
 
         // 🔹 Récupère depuis le mapper
         Set<CompleteEvaluation> completeEvalsFromDB = completeEvaluationMapper.findByRestaurant(restaurant);
+        // 🔹 Les commentaires sont tous affichés : un seul aller-retour pour tous les CLOB
+        completeEvaluationMapper.loadComments(completeEvalsFromDB);
 
         // 🔹 Ajoute au restaurant pour que la méthode fonctionne ensuite
         restaurant.getEvaluations().removeIf(e -> e instanceof CompleteEvaluation);
@@ -0,0 +1,16 @@
+package ch.hearc.ig.guideresto.persistence;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchLoaderTest {
+
+    @Test
+    void missingMapperIsRejectedWhenRequested() {
+        BatchLoader batch = new BatchLoader();
+
+        assertThrows(IllegalArgumentException.class, () -> batch.load(null, 1, object -> fail("jamais appelé")));
+        assertTrue(batch.isEmpty());
+    }
+}
@@ -0,0 +1,158 @@
+package ch.hearc.ig.guideresto.persistence;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConnectionPoolTest {
+
+    private final List<StubConnection> opened = new ArrayList<>();
+    private ConnectionPool pool;
+
+    @AfterEach
+    void closePool() {
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    private ConnectionPool newPool(int minSize, int maxSize) {
+        PoolConfig config = new PoolConfig("jdbc:stub", "user", "secret");
+        config.setMaxSize(maxSize);
+        config.setMinSize(minSize);
+        config.setBorrowTimeoutMillis(100);
+        config.setKeepAliveIntervalMillis(0);
+        config.setStatementCacheSize(10);
+        pool = new ConnectionPool(config, () -> {
+            StubConnection stub = new StubConnection();
+            opened.add(stub);
+            return stub.connection();
+        });
+        return pool;
+    }
+
+    @Test
+    void opensMinimumConnectionsAtStartup() {
+        newPool(2, 5);
+
+        assertEquals(2, opened.size());
+        assertEquals(2, pool.getIdleCount());
+        assertEquals(0, pool.getActiveCount());
+    }
+
+    @Test
+    void closedHandleReturnsPhysicalConnectionToPool() throws SQLException {
+        newPool(0, 2);
+
+        try (Connection connection = pool.borrow()) {
+            assertEquals(1, pool.getActiveCount());
+        }
+        try (Connection connection = pool.borrow()) {
+            assertFalse(connection.isClosed());
+        }
+
+        assertEquals(1, opened.size(), "la connexion rendue doit être réutilisée");
+        assertEquals(1, pool.getIdleCount());
+        assertEquals(0, pool.getActiveCount());
+        assertFalse(opened.get(0).isClosed());
+    }
+
+    @Test
+    void returnedConnectionIsRolledBack() throws SQLException {
+        newPool(0, 1);
+
+        pool.borrow().close();
+
+        assertEquals(1, opened.get(0).rollbacks());
+    }
+
+    @Test
+    void closedHandleCannotBeUsedAnymore() throws SQLException {
+        newPool(0, 1);
+
+        Connection connection = pool.borrow();
+        connection.close();
+        // second close sans effet : la connexion n'est pas rendue deux fois
+        connection.close();
+
+        assertTrue(connection.isClosed());
+        assertThrows(SQLException.class, () -> connection.prepareStatement("SELECT 1 FROM DUAL"));
+        assertEquals(1, pool.getIdleCount());
+    }
+
+    @Test
+    void borrowTimesOutWhenPoolIsExhausted() throws SQLException {
+        newPool(0, 1);
+
+        try (Connection held = pool.borrow()) {
+            assertThrows(SQLTimeoutException.class, pool::borrow);
+        }
+        try (Connection again = pool.borrow()) {
+            assertNotNull(again);
+        }
+    }
+
+    @Test
+    void invalidIdleConnectionIsReplacedOnBorrow() throws SQLException {
+        newPool(1, 2);
+        opened.get(0).setValid(false);
+
+        try (Connection connection = pool.borrow()) {
+            assertNotNull(connection);
+        }
+
+        assertEquals(2, opened.size());
+        assertTrue(opened.get(0).isClosed());
+        assertEquals(1, pool.getMetrics().getReconnectCount());
+    }
+
+    @Test
+    void brokenConnectionIsDiscardedOnRelease() throws SQLException {
+        newPool(0, 1);
+
+        try (Connection connection = pool.borrow()) {
+            opened.get(0).failNextPrepare("08006");
+            assertThrows(SQLException.class, () -> connection.prepareStatement("SELECT 1 FROM DUAL"));
+        }
+
+        assertTrue(opened.get(0).isClosed());
+        assertEquals(0, pool.getIdleCount());
+        try (Connection connection = pool.borrow()) {
+            assertEquals(2, opened.size());
+        }
+    }
+
+    @Test
+    void preparedStatementsAreCachedPerConnection() throws SQLException {
+        newPool(0, 1);
+        String sql = "SELECT numero FROM VILLES WHERE numero = ?";
+
+        try (Connection connection = pool.borrow()) {
+            connection.prepareStatement(sql).close();
+        }
+        try (Connection connection = pool.borrow();
+             PreparedStatement stmt = connection.prepareStatement(sql)) {
+            assertFalse(stmt.isClosed());
+        }
+
+        assertEquals(1, opened.get(0).statements().size());
+    }
+
+    @Test
+    void closedPoolRejectsBorrowAndClosesIdleConnections() {
+        newPool(1, 1);
+
+        pool.close();
+
+        assertTrue(opened.get(0).isClosed());
+        assertThrows(SQLException.class, pool::borrow);
+    }
+}
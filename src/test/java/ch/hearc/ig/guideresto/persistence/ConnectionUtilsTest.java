@@ -0,0 +1,137 @@
+package ch.hearc.ig.guideresto.persistence;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Routage des lectures entre le primaire et le réplica, sur deux pools de connexions simulées.
+ */
+class ConnectionUtilsTest {
+
+    private ConnectionPool primary;
+    private ConnectionPool replica;
+
+    @BeforeEach
+    void useStubPools() {
+        // pas de relecture sur le primaire après les commits, sauf dans le test qui la vérifie
+        ConnectionUtils.setReadYourWritesMillis(0);
+        primary = stubPool();
+        replica = stubPool();
+        ConnectionUtils.setPool(primary);
+        ConnectionUtils.setReplicaPool(replica);
+    }
+
+    @AfterEach
+    void closePools() {
+        ConnectionUtils.setReadYourWritesMillis(2_000);
+        ConnectionUtils.setReplicaPool(null);
+        ConnectionUtils.closeConnection();
+    }
+
+    private static ConnectionPool stubPool() {
+        PoolConfig config = new PoolConfig("jdbc:stub", "user", "secret");
+        config.setMinSize(0);
+        config.setMaxSize(2);
+        config.setBorrowTimeoutMillis(100);
+        config.setKeepAliveIntervalMillis(0);
+        return new ConnectionPool(config, () -> new StubConnection().connection());
+    }
+
+    /**
+     * @return le pool qui a fourni la connexion de lecture
+     */
+    private ConnectionPool readPool() throws SQLException {
+        try (Connection connection = ConnectionUtils.getReadConnection()) {
+            assertNotNull(connection);
+            if (replica.getActiveCount() == 1) {
+                return replica;
+            }
+            assertEquals(1, primary.getActiveCount());
+            return primary;
+        }
+    }
+
+    @Test
+    void readsGoToReplica() throws SQLException {
+        assertSame(replica, readPool());
+    }
+
+    @Test
+    void writesAlwaysUsePrimary() throws SQLException {
+        try (Connection connection = ConnectionUtils.getConnection()) {
+            assertEquals(1, primary.getActiveCount());
+            assertEquals(0, replica.getActiveCount());
+        }
+    }
+
+    @Test
+    void primaryReadsBlockReadsFromPrimary() throws SQLException {
+        ConnectionPool used = ConnectionUtils.withPrimaryReads(this::readPool);
+
+        assertSame(primary, used);
+        assertSame(replica, readPool(), "le bloc terminé, les lectures repartent sur le réplica");
+    }
+
+    @Test
+    void readsInTransactionUseTransactionConnection() throws SQLException {
+        TransactionManager.inTransaction(connection -> {
+            assertSame(connection, ConnectionUtils.getReadConnection());
+            assertEquals(0, replica.getActiveCount());
+            return null;
+        });
+    }
+
+    @Test
+    void readsFollowWritesOnPrimaryForAWhile() throws SQLException, InterruptedException {
+        ConnectionUtils.setReadYourWritesMillis(50);
+
+        ConnectionUtils.markWritten();
+        assertSame(primary, readPool());
+
+        Thread.sleep(80);
+        assertSame(replica, readPool());
+    }
+
+    @Test
+    void readOnlyTransactionLeavesReadsOnReplica() throws SQLException {
+        ConnectionUtils.setReadYourWritesMillis(50);
+
+        TransactionManager.inTransaction(connection -> null);
+
+        assertSame(replica, readPool());
+    }
+
+    @Test
+    void writingTransactionKeepsReadsOnPrimary() throws SQLException, InterruptedException {
+        ConnectionUtils.setReadYourWritesMillis(50);
+
+        TransactionManager.inTransaction(connection -> {
+            TransactionManager.recordWrite();
+            return null;
+        });
+
+        assertSame(primary, readPool());
+        Thread.sleep(80);
+        assertSame(replica, readPool());
+    }
+
+    @Test
+    void unavailableReplicaFallsBackToPrimary() throws SQLException {
+        replica.close();
+
+        assertSame(primary, readPool());
+    }
+
+    @Test
+    void withoutReplicaReadsGoToPrimary() throws SQLException {
+        ConnectionUtils.setReplicaPool(null);
+
+        assertSame(primary, readPool());
+    }
+}
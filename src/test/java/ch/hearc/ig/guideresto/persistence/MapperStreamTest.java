@@ -0,0 +1,117 @@
+package ch.hearc.ig.guideresto.persistence;
+
+import ch.hearc.ig.guideresto.business.CompleteEvaluation;
+import ch.hearc.ig.guideresto.business.Grade;
+import ch.hearc.ig.guideresto.business.IBusinessObject;
+import ch.hearc.ig.guideresto.persistence.cache.Caches;
+import ch.hearc.ig.guideresto.persistence.mapper.CompleteEvaluationMapper;
+import ch.hearc.ig.guideresto.persistence.mapper.GradeMapper;
+import ch.hearc.ig.guideresto.persistence.mapper.MapperFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * streamAll de chaque mapper de la {@link MapperFactory}, sur une base simulée en mémoire
+ * de plus d'un paquet de lignes.
+ */
+class MapperStreamTest {
+
+    private static final int RESTAURANTS = 3;
+    private static final int EVALUATIONS = 600;
+    private static final int LIKES = 700;
+
+    private ConnectionPool pool;
+    private MapperFactory factory;
+
+    @BeforeEach
+    void useStubDatabase() {
+        ConnectionUtils.setReadYourWritesMillis(0);
+        pool = new StubDatabase().fill(RESTAURANTS, EVALUATIONS, LIKES).newPool(4);
+        ConnectionUtils.setPool(pool);
+        ConnectionUtils.setReplicaPool(null);
+        Caches.clearAll();
+        factory = new MapperFactory();
+    }
+
+    @AfterEach
+    void closePool() {
+        Caches.clearAll();
+        ConnectionUtils.setReadYourWritesMillis(2_000);
+        ConnectionUtils.closeConnection();
+    }
+
+    @Test
+    void everyMapperStreamsItsWholeTable() {
+        assertEquals(2, streamed(factory.getCityMapper()).size());
+        assertEquals(2, streamed(factory.getTypeMapper()).size());
+        assertEquals(2, streamed(factory.getCriteriaMapper()).size());
+        assertEquals(RESTAURANTS, streamed(factory.getRestaurantMapper()).size());
+        assertEquals(EVALUATIONS, streamed(factory.getCompleteEvalMapper()).size());
+        assertEquals(LIKES, streamed(factory.getBasicEvalMapper()).size());
+        assertEquals(EVALUATIONS * 2, streamed(factory.getGradeMapper()).size());
+    }
+
+    @Test
+    void streamedGradesHaveTheirEvaluationAndCriteria() {
+        for (Grade grade : streamed(factory.getGradeMapper())) {
+            assertNotNull(grade.getEvaluation(), "note " + grade.getId() + " sans évaluation");
+            assertNotNull(grade.getEvaluation().getRestaurant(), "évaluation de la note " + grade.getId() + " sans restaurant");
+            assertNotNull(grade.getCriteria(), "note " + grade.getId() + " sans critère");
+        }
+    }
+
+    @Test
+    void gradeMapperBuiltAloneStreamsToo() {
+        List<Grade> grades = streamed(new GradeMapper());
+
+        assertEquals(EVALUATIONS * 2, grades.size());
+        assertNotNull(grades.get(0).getEvaluation().getRestaurant());
+    }
+
+    @Test
+    void evaluationMapperWithoutItsMappersIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new CompleteEvaluationMapper(null, new GradeMapper()));
+        assertThrows(IllegalArgumentException.class, () -> new CompleteEvaluationMapper(factory.getRestaurantMapper(), null));
+    }
+
+    @Test
+    void streamedObjectsAreNotCached() {
+        streamed(factory.getRestaurantMapper());
+        assertEquals(0, Caches.forEntity("Restaurant").size());
+
+        List<CompleteEvaluation> evaluations = streamed(factory.getCompleteEvalMapper());
+        for (CompleteEvaluation evaluation : evaluations) {
+            assertEquals(2, evaluation.getGrades().size());
+            assertNotNull(evaluation.getRestaurant());
+        }
+        assertEquals(0, Caches.forEntity("CompleteEvaluation").size());
+        assertEquals(0, Caches.forEntity("Grade").size());
+        // les restaurants, relations partagées par les évaluations, passent par findByIds
+        assertEquals(RESTAURANTS, Caches.forEntity("Restaurant").size());
+    }
+
+    @Test
+    void cachedObjectIsReusedByTheStream() {
+        CompleteEvaluation cached = factory.getCompleteEvalMapper().findById(1);
+        assertNotNull(cached);
+
+        List<CompleteEvaluation> evaluations = streamed(factory.getCompleteEvalMapper());
+
+        assertSame(cached, evaluations.get(0));
+    }
+
+    private <T extends IBusinessObject> List<T> streamed(AbstractMapper<T> mapper) {
+        List<T> objects;
+        try (Stream<T> stream = mapper.streamAll()) {
+            objects = stream.toList();
+        }
+        assertEquals(0, pool.getActiveCount(), "connexion non rendue après streamAll");
+        return objects;
+    }
+}
@@ -0,0 +1,90 @@
+package ch.hearc.ig.guideresto.persistence;
+
+import ch.hearc.ig.guideresto.business.Restaurant;
+import ch.hearc.ig.guideresto.persistence.cache.Caches;
+import ch.hearc.ig.guideresto.persistence.cache.NegativeCache;
+import ch.hearc.ig.guideresto.persistence.mapper.MapperFactory;
+import ch.hearc.ig.guideresto.persistence.mapper.RestaurantMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Suppression en cascade d'un restaurant par {@link RestaurantMapper#delete}, sur une base simulée.
+ */
+class RestaurantDeleteTest {
+
+    private StubDatabase database;
+    private ConnectionPool pool;
+    private MapperFactory factory;
+
+    @BeforeEach
+    void useStubDatabase() {
+        ConnectionUtils.setReadYourWritesMillis(0);
+        // restaurant 1 sans évaluation ; 2 et 3 avec évaluations, notes et likes
+        database = new StubDatabase().fill(3, 4, 4);
+        database.rows("COMMENTAIRES", "fk_rest", 1).forEach(row -> row.put("fk_rest", 2));
+        database.rows("LIKES", "fk_rest", 1).forEach(row -> row.put("fk_rest", 2));
+        pool = database.newPool(4);
+        ConnectionUtils.setPool(pool);
+        ConnectionUtils.setReplicaPool(null);
+        clearCaches();
+        factory = new MapperFactory();
+    }
+
+    @AfterEach
+    void closePool() {
+        // les absences constatées après suppression ne doivent pas fuir vers les autres tests
+        clearCaches();
+        ConnectionUtils.setReadYourWritesMillis(2_000);
+        ConnectionUtils.closeConnection();
+    }
+
+    private static void clearCaches() {
+        Caches.clearAll();
+        for (String entity : new String[]{"Restaurant", "CompleteEvaluation", "BasicEvaluation", "Grade"}) {
+            NegativeCache.forEntity(entity).clear();
+        }
+    }
+
+    @Test
+    void restaurantIsDeletedWithItsEvaluationsGradesAndLikes() {
+        RestaurantMapper mapper = factory.getRestaurantMapper();
+        Restaurant restaurant = mapper.findById(2);
+        assertNotNull(restaurant);
+        int evaluations = database.rows("COMMENTAIRES", "fk_rest", 2).size();
+        assertTrue(evaluations > 0);
+
+        assertTrue(mapper.delete(restaurant));
+
+        assertTrue(database.rows("RESTAURANTS", "numero", 2).isEmpty());
+        assertTrue(database.rows("COMMENTAIRES", "fk_rest", 2).isEmpty());
+        assertTrue(database.rows("LIKES", "fk_rest", 2).isEmpty());
+        assertEquals(2 * (4 - evaluations), database.count("NOTES"));
+        assertEquals(2, database.count("RESTAURANTS"));
+        assertEquals(0, pool.getActiveCount());
+        assertNull(mapper.findById(2));
+    }
+
+    @Test
+    void restaurantWithoutEvaluationIsDeleted() {
+        RestaurantMapper mapper = factory.getRestaurantMapper();
+        Restaurant restaurant = mapper.findById(1);
+        assertNotNull(restaurant);
+
+        assertTrue(mapper.delete(restaurant));
+
+        assertTrue(database.rows("RESTAURANTS", "numero", 1).isEmpty());
+        assertEquals(4, database.count("COMMENTAIRES"));
+    }
+
+    @Test
+    void mapperWithoutEvaluationMappersRefusesToDelete() {
+        Restaurant restaurant = factory.getRestaurantMapper().findById(1);
+
+        assertThrows(IllegalStateException.class, () -> new RestaurantMapper().delete(restaurant));
+        assertEquals(3, database.count("RESTAURANTS"));
+    }
+}
@@ -0,0 +1,122 @@
+package ch.hearc.ig.guideresto.persistence;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.CallableStatement;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StatementCacheTest {
+
+    private static final String SQL_A = "SELECT numero FROM VILLES WHERE numero = ?";
+    private static final String SQL_B = "SELECT numero FROM RESTAURANTS WHERE numero = ?";
+
+    private final StubConnection stub = new StubConnection();
+
+    @Test
+    void closedStatementIsReusedForSameSql() throws SQLException {
+        StatementCache cache = new StatementCache(10);
+
+        cache.prepareStatement(stub.connection(), SQL_A).close();
+        cache.prepareStatement(stub.connection(), SQL_A).close();
+
+        assertEquals(1, stub.statements().size());
+        assertFalse(stub.statements().get(0).isClosed(), "close() rend la requête au cache sans la fermer");
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void nestedSameSqlGetsItsOwnStatement() throws SQLException {
+        StatementCache cache = new StatementCache(10);
+
+        try (PreparedStatement outer = cache.prepareStatement(stub.connection(), SQL_A)) {
+            try (PreparedStatement inner = cache.prepareStatement(stub.connection(), SQL_A)) {
+                assertNotSame(outer, inner);
+                assertEquals(2, stub.statements().size());
+            }
+            // la requête imbriquée, hors cache, est fermée physiquement
+            assertTrue(stub.statements().get(1).isClosed());
+            assertFalse(stub.statements().get(0).isClosed());
+            assertFalse(outer.isClosed());
+        }
+
+        assertEquals(1, cache.size());
+        cache.prepareStatement(stub.connection(), SQL_A).close();
+        assertEquals(2, stub.statements().size(), "la requête en cache est reprise après l'appel imbriqué");
+    }
+
+    @Test
+    void evictedStatementInUseIsClosedOnlyOnRelease() throws SQLException {
+        StatementCache cache = new StatementCache(1);
+
+        PreparedStatement inUse = cache.prepareStatement(stub.connection(), SQL_A);
+        cache.prepareStatement(stub.connection(), SQL_B).close();
+
+        assertEquals(1, cache.size());
+        assertFalse(stub.statements().get(0).isClosed(), "évincée mais encore utilisée : pas fermée");
+        assertFalse(inUse.isClosed());
+
+        inUse.close();
+        assertTrue(stub.statements().get(0).isClosed());
+        assertFalse(stub.statements().get(1).isClosed());
+    }
+
+    @Test
+    void evictedIdleStatementIsClosedImmediately() throws SQLException {
+        StatementCache cache = new StatementCache(1);
+
+        cache.prepareStatement(stub.connection(), SQL_A).close();
+        cache.prepareStatement(stub.connection(), SQL_B).close();
+
+        assertTrue(stub.statements().get(0).isClosed());
+        assertFalse(stub.statements().get(1).isClosed());
+    }
+
+    @Test
+    void disabledCacheClosesStatementsAfterUse() throws SQLException {
+        StatementCache cache = new StatementCache(0);
+
+        cache.prepareStatement(stub.connection(), SQL_A).close();
+
+        assertTrue(stub.statements().get(0).isClosed());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void closedHandleRejectsFurtherCalls() throws SQLException {
+        StatementCache cache = new StatementCache(10);
+
+        PreparedStatement stmt = cache.prepareStatement(stub.connection(), SQL_A);
+        stmt.close();
+
+        assertTrue(stmt.isClosed());
+        assertThrows(SQLException.class, () -> stmt.setInt(1, 42));
+    }
+
+    @Test
+    void callsAndStatementsAreCachedSeparately() throws SQLException {
+        StatementCache cache = new StatementCache(10);
+        String block = "BEGIN NULL; END;";
+
+        CallableStatement call = cache.prepareCall(stub.connection(), block);
+        call.close();
+        cache.prepareStatement(stub.connection(), block).close();
+
+        assertEquals(2, stub.statements().size());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    void closeAllClosesEveryCachedStatement() throws SQLException {
+        StatementCache cache = new StatementCache(10);
+        cache.prepareStatement(stub.connection(), SQL_A).close();
+        cache.prepareStatement(stub.connection(), SQL_B).close();
+
+        cache.closeAll();
+
+        assertEquals(0, cache.size());
+        assertTrue(stub.statements().stream().allMatch(StubConnection.StubStatement::isClosed));
+    }
+}
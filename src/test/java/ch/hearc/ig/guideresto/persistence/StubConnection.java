@@ -0,0 +1,242 @@
+package ch.hearc.ig.guideresto.persistence;
+
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Connexion JDBC simulée pour les tests du pool et du cache de requêtes : elle enregistre
+ * les requêtes préparées, les rollbacks et les fermetures, sans base derrière. Les lectures
+ * sont servies par un {@link QueryHandler}, s'il y en a un.
+ */
+final class StubConnection {
+
+    /**
+     * Répond aux requêtes exécutées par executeQuery.
+     */
+    @FunctionalInterface
+    interface QueryHandler {
+
+        /**
+         * @param sql la requête
+         * @param params ses paramètres, dans l'ordre
+         * @return les lignes, par nom de colonne en minuscules
+         */
+        List<Map<String, Object>> rows(String sql, List<Object> params);
+
+        /**
+         * @return le nombre de lignes touchées par executeUpdate
+         */
+        default int update(String sql, List<Object> params) throws SQLException {
+            throw new UnsupportedOperationException("executeUpdate : " + sql);
+        }
+    }
+
+    private final Connection proxy;
+    private final QueryHandler queries;
+    private final List<StubStatement> statements = new ArrayList<>();
+    private boolean autoCommit = true;
+    private boolean closed;
+    private boolean valid = true;
+    private boolean readOnly;
+    private int rollbacks;
+    /** SQLState levé par la prochaine préparation de requête, null pour aucune erreur */
+    private String failWithState;
+
+    StubConnection() {
+        this(null);
+    }
+
+    StubConnection(QueryHandler queries) {
+        this.queries = queries;
+        this.proxy = (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class},
+                (p, method, args) -> switch (method.getName()) {
+                    case "prepareStatement", "prepareCall" -> prepare((String) args[0], method.getName().equals("prepareCall"));
+                    case "setAutoCommit" -> {
+                        autoCommit = (Boolean) args[0];
+                        yield null;
+                    }
+                    case "getAutoCommit" -> autoCommit;
+                    case "setReadOnly" -> {
+                        readOnly = (Boolean) args[0];
+                        yield null;
+                    }
+                    case "isReadOnly" -> readOnly;
+                    case "rollback" -> {
+                        rollbacks++;
+                        yield null;
+                    }
+                    case "commit", "clearWarnings" -> null;
+                    case "close" -> {
+                        closed = true;
+                        yield null;
+                    }
+                    case "isClosed" -> closed;
+                    case "isValid" -> valid && !closed;
+                    case "equals" -> p == args[0];
+                    case "hashCode" -> System.identityHashCode(p);
+                    case "toString" -> "StubConnection@" + Integer.toHexString(System.identityHashCode(p));
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    private Object prepare(String sql, boolean callable) throws SQLException {
+        if (closed) {
+            throw new SQLException("Connexion fermée");
+        }
+        if (failWithState != null) {
+            String state = failWithState;
+            failWithState = null;
+            throw new SQLException("Erreur simulée", state);
+        }
+        StubStatement statement = new StubStatement(sql, callable, queries);
+        statements.add(statement);
+        return statement.proxy();
+    }
+
+    Connection connection() {
+        return proxy;
+    }
+
+    List<StubStatement> statements() {
+        return statements;
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    boolean isReadOnly() {
+        return readOnly;
+    }
+
+    int rollbacks() {
+        return rollbacks;
+    }
+
+    void setValid(boolean valid) {
+        this.valid = valid;
+    }
+
+    void failNextPrepare(String sqlState) {
+        this.failWithState = sqlState;
+    }
+
+    /**
+     * Requête préparée simulée.
+     */
+    static final class StubStatement {
+
+        private final String sql;
+        private final PreparedStatement proxy;
+        private final Map<Integer, Object> params = new TreeMap<>();
+        private boolean closed;
+
+        private StubStatement(String sql, boolean callable, QueryHandler queries) {
+            this.sql = sql;
+            Class<?> type = callable ? CallableStatement.class : PreparedStatement.class;
+            this.proxy = (PreparedStatement) Proxy.newProxyInstance(
+                    type.getClassLoader(),
+                    new Class<?>[]{type},
+                    (p, method, args) -> switch (method.getName()) {
+                        case "close" -> {
+                            closed = true;
+                            yield null;
+                        }
+                        case "isClosed" -> closed;
+                        case "setInt", "setString" -> {
+                            params.put((Integer) args[0], args[1]);
+                            yield null;
+                        }
+                        case "clearParameters" -> {
+                            params.clear();
+                            yield null;
+                        }
+                        case "executeQuery" -> {
+                            if (queries == null) {
+                                throw new UnsupportedOperationException("executeQuery sans QueryHandler");
+                            }
+                            yield resultSet(queries.rows(sql, new ArrayList<>(params.values())));
+                        }
+                        case "executeUpdate" -> {
+                            if (queries == null) {
+                                throw new UnsupportedOperationException("executeUpdate sans QueryHandler");
+                            }
+                            yield queries.update(sql, new ArrayList<>(params.values()));
+                        }
+                        case "clearBatch", "clearWarnings", "setFetchSize", "setMaxRows" -> null;
+                        case "isWrapperFor" -> false;
+                        case "equals" -> p == args[0];
+                        case "hashCode" -> System.identityHashCode(p);
+                        case "toString" -> "StubStatement[" + sql + "]";
+                        default -> throw new UnsupportedOperationException(method.getName());
+                    });
+        }
+
+        PreparedStatement proxy() {
+            return proxy;
+        }
+
+        String sql() {
+            return sql;
+        }
+
+        boolean isClosed() {
+            return closed;
+        }
+    }
+
+    /**
+     * Résultat simulé sur une liste de lignes : next, get* par nom de colonne, wasNull et close.
+     */
+    private static ResultSet resultSet(List<Map<String, Object>> rows) {
+        Iterator<Map<String, Object>> cursor = rows.iterator();
+        Object[] state = new Object[2]; // ligne courante, dernière valeur lue
+        boolean[] closed = new boolean[1];
+        return (ResultSet) Proxy.newProxyInstance(
+                ResultSet.class.getClassLoader(),
+                new Class<?>[]{ResultSet.class},
+                (p, method, args) -> switch (method.getName()) {
+                    case "next" -> {
+                        state[0] = cursor.hasNext() ? cursor.next() : null;
+                        yield state[0] != null;
+                    }
+                    case "getInt", "getLong", "getString", "getDate" -> {
+                        @SuppressWarnings("unchecked")
+                        Map<String, Object> row = (Map<String, Object>) state[0];
+                        if (row == null) {
+                            throw new SQLException("Aucune ligne courante");
+                        }
+                        Object value = args[0] instanceof Integer index
+                                ? row.values().toArray()[index - 1]
+                                : row.get(((String) args[0]).toLowerCase());
+                        state[1] = value;
+                        yield switch (method.getName()) {
+                            case "getInt" -> value == null ? 0 : ((Number) value).intValue();
+                            case "getLong" -> value == null ? 0L : ((Number) value).longValue();
+                            default -> value;
+                        };
+                    }
+                    case "wasNull" -> state[1] == null;
+                    case "close" -> {
+                        closed[0] = true;
+                        yield null;
+                    }
+                    case "isClosed" -> closed[0];
+                    case "equals" -> p == args[0];
+                    case "hashCode" -> System.identityHashCode(p);
+                    case "toString" -> "StubResultSet";
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+}
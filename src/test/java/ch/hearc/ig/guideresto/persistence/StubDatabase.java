@@ -0,0 +1,156 @@
+package ch.hearc.ig.guideresto.persistence;
+
+import java.sql.Date;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Base simulée en mémoire pour les tests des mappers : les tables sont des listes de lignes,
+ * les SELECT et DELETE sont filtrés sur la colonne de leur condition WHERE s'il y en a une.
+ */
+final class StubDatabase implements StubConnection.QueryHandler {
+
+    private static final Pattern FROM = Pattern.compile("FROM (\\w+)");
+    private static final Pattern WHERE = Pattern.compile("WHERE (?:\\w+\\.)?(\\w+) (?:IN|=)");
+
+    private final Map<String, List<Map<String, Object>>> tables = new HashMap<>();
+    /** SQLState levé par la prochaine écriture, null pour aucune erreur */
+    private String failNextUpdate;
+
+    /**
+     * Remplit les tables de l'application : deux villes, deux types et deux critères,
+     * des restaurants, des évaluations de deux notes chacune et des likes.
+     */
+    StubDatabase fill(int restaurants, int evaluations, int likes) {
+        Date date = Date.valueOf("2024-05-01");
+        for (String table : List.of("VILLES", "TYPES_GASTRONOMIQUES", "CRITERES_EVALUATION",
+                "RESTAURANTS", "COMMENTAIRES", "NOTES", "LIKES")) {
+            tables.computeIfAbsent(table, k -> new ArrayList<>());
+        }
+        for (int id = 1; id <= 2; id++) {
+            add("VILLES", "numero", id, "code_postal", "200" + id, "nom_ville", "Ville " + id);
+            add("TYPES_GASTRONOMIQUES", "numero", id, "libelle", "Type " + id, "description", "Cuisine " + id);
+            add("CRITERES_EVALUATION", "numero", id, "nom", "Critère " + id, "description", "Description " + id);
+        }
+        for (int id = 1; id <= restaurants; id++) {
+            int fk = id % 2 + 1;
+            add("RESTAURANTS", "numero", id, "nom", "Restaurant " + id, "description", "Restaurant numéro " + id,
+                    "site_web", "http://r" + id, "adresse", "Rue " + id, "fk_type", fk, "fk_vill", fk,
+                    "version", 100L + id, "code_postal", "200" + fk, "nom_ville", "Ville " + fk,
+                    "libelle", "Type " + fk, "type_description", "Cuisine " + fk);
+        }
+        for (int id = 1; id <= evaluations; id++) {
+            add("COMMENTAIRES", "numero", id, "date_eval", date, "commentaire", "Commentaire " + id,
+                    "nom_utilisateur", "user" + id, "fk_rest", id % restaurants + 1);
+            add("NOTES", "numero", 2 * id - 1, "note", 4, "fk_comm", id, "fk_crit", 1);
+            add("NOTES", "numero", 2 * id, "note", 3, "fk_comm", id, "fk_crit", 2);
+        }
+        for (int id = 1; id <= likes; id++) {
+            add("LIKES", "numero", id, "date_eval", date, "appreciation", id % 2 == 0 ? "Y" : "N",
+                    "adresse_ip", "10.0.0." + id % 256, "fk_rest", id % restaurants + 1);
+        }
+        return this;
+    }
+
+    /**
+     * @param columns les noms de colonnes suivis de leur valeur
+     */
+    void add(String table, Object... columns) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        for (int i = 0; i < columns.length; i += 2) {
+            row.put((String) columns[i], columns[i + 1]);
+        }
+        tables.computeIfAbsent(table, k -> new ArrayList<>()).add(row);
+    }
+
+    /**
+     * @return les lignes de la table dont la colonne vaut value
+     */
+    List<Map<String, Object>> rows(String table, String column, Object value) {
+        List<Map<String, Object>> matching = new ArrayList<>();
+        for (Map<String, Object> row : table(table)) {
+            if (value.equals(row.get(column))) {
+                matching.add(row);
+            }
+        }
+        return matching;
+    }
+
+    /**
+     * La prochaine écriture échoue avec une SQLException de cet état.
+     */
+    synchronized void failNextUpdate(String sqlState) {
+        this.failNextUpdate = sqlState;
+    }
+
+    int count(String table) {
+        return table(table).size();
+    }
+
+    /**
+     * @return un pool de connexions simulées branchées sur cette base
+     */
+    ConnectionPool newPool(int maxSize) {
+        PoolConfig config = new PoolConfig("jdbc:stub", "user", "secret");
+        config.setMinSize(0);
+        config.setMaxSize(maxSize);
+        config.setBorrowTimeoutMillis(100);
+        config.setKeepAliveIntervalMillis(0);
+        return new ConnectionPool(config, () -> new StubConnection(this).connection());
+    }
+
+    @Override
+    public synchronized List<Map<String, Object>> rows(String sql, List<Object> params) {
+        return matching(sql, params, false);
+    }
+
+    @Override
+    public synchronized int update(String sql, List<Object> params) throws SQLException {
+        if (failNextUpdate != null) {
+            String state = failNextUpdate;
+            failNextUpdate = null;
+            throw new SQLException("Erreur simulée", state);
+        }
+        if (!sql.startsWith("DELETE")) {
+            throw new UnsupportedOperationException("executeUpdate : " + sql);
+        }
+        return matching(sql, params, true).size();
+    }
+
+    private List<Map<String, Object>> matching(String sql, List<Object> params, boolean remove) {
+        Matcher from = FROM.matcher(sql);
+        if (!from.find()) {
+            throw new IllegalArgumentException("Requête sans FROM : " + sql);
+        }
+        List<Map<String, Object>> rows = table(from.group(1));
+        Matcher where = WHERE.matcher(sql);
+        if (!where.find()) {
+            return new ArrayList<>(rows);
+        }
+        String column = where.group(1).toLowerCase();
+        List<Map<String, Object>> matching = new ArrayList<>();
+        for (Map<String, Object> row : rows) {
+            if (params.contains(row.get(column))) {
+                matching.add(row);
+            }
+        }
+        if (remove) {
+            rows.removeAll(matching);
+        }
+        return matching;
+    }
+
+    private List<Map<String, Object>> table(String name) {
+        List<Map<String, Object>> rows = tables.get(name);
+        if (rows == null) {
+            throw new IllegalArgumentException("Table inconnue : " + name);
+        }
+        return rows;
+    }
+}
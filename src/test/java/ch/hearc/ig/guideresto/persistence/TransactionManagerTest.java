@@ -0,0 +1,67 @@
+package ch.hearc.ig.guideresto.persistence;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TransactionManagerTest {
+
+    @BeforeEach
+    void useStubPool() {
+        // le commit ne doit pas router les lectures des tests suivants sur le primaire
+        ConnectionUtils.setReadYourWritesMillis(0);
+        PoolConfig config = new PoolConfig("jdbc:stub", "user", "secret");
+        config.setMinSize(0);
+        config.setMaxSize(2);
+        config.setBorrowTimeoutMillis(100);
+        config.setKeepAliveIntervalMillis(0);
+        ConnectionUtils.setPool(new ConnectionPool(config, () -> new StubConnection().connection()));
+    }
+
+    @AfterEach
+    void closePool() {
+        ConnectionUtils.setReadYourWritesMillis(2_000);
+        ConnectionUtils.closeConnection();
+    }
+
+    @Test
+    void afterCommitActionsRunOutsideTheCommittedTransaction() throws SQLException {
+        List<String> events = new ArrayList<>();
+
+        TransactionManager.inTransaction(connection -> {
+            TransactionManager.afterCommit(() -> {
+                events.add("after:" + TransactionManager.isActive());
+                // une action qui en enregistre une autre, ou qui ouvre une transaction
+                TransactionManager.afterCommit(() -> events.add("nested"));
+                try {
+                    TransactionManager.inTransaction(c -> events.add("tx:" + TransactionManager.isActive()));
+                } catch (SQLException e) {
+                    fail(e);
+                }
+            });
+            return null;
+        });
+
+        assertEquals(List.of("after:false", "nested", "tx:true"), events);
+        assertFalse(TransactionManager.isActive());
+    }
+
+    @Test
+    void afterCommitActionsOfRolledBackTransactionDoNotRun() {
+        List<String> events = new ArrayList<>();
+
+        assertThrows(SQLException.class, () -> TransactionManager.inTransaction(connection -> {
+            TransactionManager.afterCommit(() -> events.add("after"));
+            throw new SQLException("échec simulé");
+        }));
+
+        assertTrue(events.isEmpty());
+        assertFalse(TransactionManager.isActive());
+    }
+}
@@ -0,0 +1,87 @@
+package ch.hearc.ig.guideresto.persistence;
+
+import ch.hearc.ig.guideresto.business.BasicEvaluation;
+import ch.hearc.ig.guideresto.persistence.cache.Caches;
+import ch.hearc.ig.guideresto.persistence.cache.NegativeCache;
+import ch.hearc.ig.guideresto.persistence.mapper.MapperFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Suppressions d'une {@link UnitOfWork} par un mapper sans batch JDBC (les likes), écrites
+ * objet par objet par le deleteBatch par défaut.
+ */
+class UnitOfWorkTest {
+
+    private StubDatabase database;
+    private MapperFactory factory;
+
+    @BeforeEach
+    void useStubDatabase() {
+        ConnectionUtils.setReadYourWritesMillis(0);
+        database = new StubDatabase().fill(2, 0, 3);
+        ConnectionUtils.setPool(database.newPool(4));
+        ConnectionUtils.setReplicaPool(null);
+        clearCaches();
+        factory = new MapperFactory();
+    }
+
+    @AfterEach
+    void closePool() {
+        clearCaches();
+        ConnectionUtils.setReadYourWritesMillis(2_000);
+        ConnectionUtils.closeConnection();
+    }
+
+    private static void clearCaches() {
+        Caches.clearAll();
+        NegativeCache.forEntity("BasicEvaluation").clear();
+    }
+
+    @Test
+    void removedObjectsAreDeletedOneByOne() throws SQLException {
+        UnitOfWork work = factory.newUnitOfWork();
+        work.registerRemoved(like(1));
+        work.registerRemoved(like(2));
+
+        work.commit();
+
+        assertEquals(1, database.count("LIKES"));
+        assertFalse(TransactionManager.isActive());
+    }
+
+    @Test
+    void alreadyDeletedObjectDoesNotFailTheCommit() throws SQLException {
+        BasicEvaluation like = like(1);
+        database.rows("LIKES", "numero", 1).forEach(row -> row.put("numero", -1));
+
+        UnitOfWork work = factory.newUnitOfWork();
+        work.registerRemoved(like);
+        work.commit();
+
+        assertEquals(3, database.count("LIKES"));
+    }
+
+    @Test
+    void failedDeleteIsNotReportedAsAlreadyDeleted() {
+        UnitOfWork work = factory.newUnitOfWork();
+        work.registerRemoved(like(1));
+        database.failNextUpdate("08006");
+
+        SQLException failure = assertThrows(SQLException.class, work::commit);
+
+        assertTrue(failure.getMessage().startsWith("Suppression impossible"), failure.getMessage());
+        assertEquals(3, database.count("LIKES"));
+    }
+
+    private BasicEvaluation like(int id) {
+        BasicEvaluation like = factory.getBasicEvalMapper().findById(id);
+        assertNotNull(like);
+        return like;
+    }
+}
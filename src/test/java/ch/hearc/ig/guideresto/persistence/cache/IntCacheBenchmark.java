@@ -0,0 +1,117 @@
+package ch.hearc.ig.guideresto.persistence.cache;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lecture d'un cache d'entités (le chemin findById en cas de succès) : index int primitif
+ * contre les structures à clés Integer utilisées avant.
+ * <ul>
+ *     <li>hashMap : l'ancien findById, containsKey puis get sur une HashMap à clés Integer
+ *     (deux recherches, deux conversions de l'int en Integer)</li>
+ *     <li>intObjectMap : l'index int primitif seul</li>
+ *     <li>linkedHashMapLru : un LinkedHashMap en ordre d'accès synchronisé, LRU à clés Integer</li>
+ *     <li>tinyLfu / striped : les caches actuels des mappers</li>
+ * </ul>
+ * Lancer après "mvn test-compile" avec {@link #main}, classpath de test ; ce n'est pas un test
+ * exécuté par surefire.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IntCacheBenchmark {
+
+    private static final int LOOKUPS = 1 << 12;
+
+    @Param({"1000", "100000"})
+    private int size;
+
+    private final Map<Integer, Object> hashMap = new HashMap<>();
+    private Map<Integer, Object> linkedHashMapLru;
+    private IntObjectMap<Object> intObjectMap;
+    private TinyLfuCache<Object> tinyLfu;
+    private StripedCache<Object> striped;
+    private int[] keys;
+    private int next;
+
+    @Setup
+    public void fill() {
+        linkedHashMapLru = new LinkedHashMap<>(16, 0.75f, true);
+        intObjectMap = new IntObjectMap<>(size);
+        tinyLfu = new TinyLfuCache<>(size);
+        striped = new StripedCache<>(size, Runtime.getRuntime().availableProcessors() * 2, TinyLfuCache::new);
+        for (int id = 1; id <= size; id++) {
+            Object value = new Object();
+            hashMap.put(id, value);
+            linkedHashMapLru.put(id, value);
+            intObjectMap.put(id, value);
+            tinyLfu.put(id, value);
+            striped.put(id, value);
+        }
+        Random random = new Random(42);
+        keys = new int[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            keys[i] = 1 + random.nextInt(size);
+        }
+    }
+
+    private int nextKey() {
+        return keys[next++ & (LOOKUPS - 1)];
+    }
+
+    @Benchmark
+    public Object hashMap() {
+        int id = nextKey();
+        if (hashMap.containsKey(id)) {
+            return hashMap.get(id);
+        }
+        return null;
+    }
+
+    @Benchmark
+    public Object linkedHashMapLru() {
+        synchronized (linkedHashMapLru) {
+            return linkedHashMapLru.get(nextKey());
+        }
+    }
+
+    @Benchmark
+    public Object intObjectMap() {
+        return intObjectMap.get(nextKey());
+    }
+
+    @Benchmark
+    public Object tinyLfu() {
+        return tinyLfu.get(nextKey());
+    }
+
+    @Benchmark
+    public Object striped() {
+        return striped.get(nextKey());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(IntCacheBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,98 @@
+package ch.hearc.ig.guideresto.persistence.cache;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Deux « instances » dans la JVM, chacune avec son bus, ses caches et ses absences : une
+ * écriture publiée par l'une retire l'objet des caches de l'autre.
+ */
+class InvalidationBusTest {
+
+    private final List<InvalidationBus> buses = new ArrayList<>();
+    private Path file;
+
+    @AfterEach
+    void closeBuses() throws IOException {
+        buses.forEach(InvalidationBus::close);
+        if (file != null) {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void writeEvictsOtherInstanceOverMemoryTransport() throws InterruptedException {
+        String channel = "test-" + UUID.randomUUID();
+        checkDelivery(new InMemoryTransport(channel), new InMemoryTransport(channel));
+    }
+
+    @Test
+    void writeEvictsOtherInstanceOverFileTransport() throws IOException, InterruptedException {
+        file = Files.createTempFile("guideresto-invalidations", ".log");
+        checkDelivery(new FileTransport(file, 10), new FileTransport(file, 10));
+    }
+
+    private void checkDelivery(InvalidationTransport first, InvalidationTransport second) throws InterruptedException {
+        Node a = new Node("a", first);
+        Node b = new Node("b", second);
+        a.restaurants.put(1, "Restaurant 1");
+        b.restaurants.put(1, "Restaurant 1");
+        b.restaurants.put(2, "Restaurant 2");
+        b.absent.recordAbsent(3, b.absent.stamp());
+        assertTrue(b.absent.isAbsent(3));
+
+        // hors transaction : publié tout de suite
+        a.bus.publish("Restaurant", 1);
+        a.bus.publish("Restaurant", 3);
+
+        assertTrue(b.delivered.await(5, TimeUnit.SECONDS), "invalidations non reçues");
+        assertEquals(List.of(1, 3), b.invalidated);
+        assertFalse(b.restaurants.containsKey(1));
+        assertTrue(b.restaurants.containsKey(2));
+        assertFalse(b.absent.isAbsent(3));
+        assertEquals(2, b.bus.getReceived());
+        // l'instance qui a écrit ignore ses propres messages
+        assertTrue(a.restaurants.containsKey(1));
+        assertEquals(0, a.bus.getReceived());
+        assertEquals(2, a.bus.getPublished());
+    }
+
+    /**
+     * Une instance simulée : son bus n'invalide que ses propres caches.
+     */
+    private final class Node {
+
+        private final IntCache<String> restaurants = new TinyLfuCache<>(100);
+        private final NegativeCache absent = new NegativeCache("Restaurant", 100, 60_000, false, 600_000);
+        private final List<Integer> invalidated = new CopyOnWriteArrayList<>();
+        private final CountDownLatch delivered = new CountDownLatch(2);
+        private final InvalidationBus bus;
+
+        private Node(String nodeId, InvalidationTransport transport) {
+            Map<String, IntCache<?>> caches = new HashMap<>();
+            caches.put("Restaurant", restaurants);
+            Map<String, NegativeCache> absences = new HashMap<>();
+            absences.put("Restaurant", absent);
+            bus = new InvalidationBus(nodeId, transport, caches::get, absences::get);
+            bus.addListener("Restaurant", id -> {
+                invalidated.add(id);
+                delivered.countDown();
+            });
+            buses.add(bus);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package ch.hearc.ig.guideresto.persistence.cache;
+
+import ch.hearc.ig.guideresto.business.CompleteEvaluation;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Le cache des évaluations tel que configuré (CompleteEvaluation.references=weak) : un objet
+ * que plus personne ne tient en sort quand le GC le récupère, ce que signalent des références
+ * faibles témoins sur les mêmes objets.
+ */
+class ReferenceCacheTest {
+
+    private static final String ENTITY = "CompleteEvaluation";
+    private static final int GC_ATTEMPTS = 50;
+
+    private final IntCache<CompleteEvaluation> cache = Caches.forEntity(ENTITY);
+
+    @AfterEach
+    void clearCache() {
+        cache.clear();
+    }
+
+    @Test
+    void collectedEvaluationLeavesTheCache() throws InterruptedException {
+        // plus d'évaluations que le cache borné n'en garde : les autres ne tiennent qu'à l'index
+        int evaluations = cache.getMaximumSize() * 3 / 2;
+        ReferenceQueue<CompleteEvaluation> queue = new ReferenceQueue<>();
+        List<Sentinel> sentinels = new ArrayList<>(evaluations);
+        // seule l'évaluation 1 reste tenue par l'application
+        CompleteEvaluation held = null;
+        for (int id = 1; id <= evaluations; id++) {
+            CompleteEvaluation evaluation = newEvaluation(id);
+            cache.put(id, evaluation);
+            sentinels.add(new Sentinel(id, evaluation, queue));
+            if (id == 1) {
+                held = evaluation;
+            }
+        }
+
+        Sentinel collected = awaitCollected(queue);
+
+        // les références faibles d'un même objet sont vidées ensemble : celle du cache aussi
+        assertNull(cache.get(collected.id), "évaluation " + collected.id + " récupérée mais encore en cache");
+        assertFalse(cache.containsKey(collected.id));
+        assertSame(held, cache.get(1), "une évaluation encore tenue garde son identité");
+        // un témoin lui-même récupéré ne serait jamais mis en file
+        Reference.reachabilityFence(sentinels);
+    }
+
+    @Test
+    void strongStrengthIsRejected() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new ReferenceCache<>(new TinyLfuCache<>(10), ReferenceCache.Strength.STRONG));
+    }
+
+    /**
+     * @return le premier témoin dont l'objet a été récupéré par le GC
+     */
+    private static Sentinel awaitCollected(ReferenceQueue<CompleteEvaluation> queue) throws InterruptedException {
+        for (int i = 0; i < GC_ATTEMPTS; i++) {
+            System.gc();
+            Reference<? extends CompleteEvaluation> ref = queue.remove(100);
+            if (ref != null) {
+                return (Sentinel) ref;
+            }
+        }
+        return fail("aucune évaluation récupérée par le GC après " + GC_ATTEMPTS + " tentatives");
+    }
+
+    private static CompleteEvaluation newEvaluation(int id) {
+        return new CompleteEvaluation(id, new Date(), null, "Commentaire de l'évaluation " + id, "user" + id);
+    }
+
+    private static final class Sentinel extends WeakReference<CompleteEvaluation> {
+
+        private final int id;
+
+        private Sentinel(int id, CompleteEvaluation evaluation, ReferenceQueue<CompleteEvaluation> queue) {
+            super(evaluation, queue);
+            this.id = id;
+        }
+    }
+}